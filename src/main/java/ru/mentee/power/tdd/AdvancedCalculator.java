@@ -1,23 +1,198 @@
 package ru.mentee.power.tdd;
 
+import java.nio.IntBuffer;
 import java.util.List;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
 
 /**
  * Суммирует числа в списке, игнорируя значения > 1000.
  */
 public class AdvancedCalculator {
 
+    /** Числа больше этого значения в сумму не попадают. */
+    static final int LIMIT = 1000;
+
+    /** Минимальная длина массива, начиная с которой имеет смысл параллельное суммирование. */
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Суммирует числа из списка, пропуская null и значения > 1000.
+     *
+     * @param numbers Список чисел (может быть null).
+     * @return Сумма подходящих чисел.
+     * @throws ArithmeticException если сумма не помещается в int.
+     */
     public int sumIgnoringOver1000(List<Integer> numbers) {
         if (numbers == null) { // Обработка null списка
             return 0;
         }
-        int sum = 0;
+        long sum = 0;
         for (Integer number : numbers) {
-            if (number != null && number <= 1000) {
+            if (number != null && number <= LIMIT) {
                 sum += number;
             }
         }
-        // (В данном случае int достаточно, но это пример возможной проблемы)
+        // Считаем в long и не даем int молча переполниться
+        return Math.toIntExact(sum);
+    }
+
+    /**
+     * Суммирует числа из массива, пропуская значения > 1000.
+     * Сумма считается в long, поэтому переполнение невозможно при любой длине массива.
+     *
+     * @param numbers Массив чисел (может быть null).
+     * @return Сумма подходящих чисел.
+     */
+    public long sumIgnoringOver1000(int[] numbers) {
+        if (numbers == null) {
+            return 0;
+        }
+        return sumRange(numbers, 0, numbers.length);
+    }
+
+    /**
+     * Суммирует оставшиеся элементы буфера (от position до limit), пропуская значения > 1000.
+     * Позиция буфера не меняется.
+     *
+     * @param numbers Буфер чисел (может быть null).
+     * @return Сумма подходящих чисел.
+     */
+    public long sumIgnoringOver1000(IntBuffer numbers) {
+        if (numbers == null) {
+            return 0;
+        }
+        int from = numbers.position();
+        int to = numbers.limit();
+        if (numbers.hasArray()) {
+            int offset = numbers.arrayOffset();
+            return sumRange(numbers.array(), offset + from, offset + to);
+        }
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            int value = numbers.get(i);
+            sum += value <= LIMIT ? value : 0;
+        }
+        return sum;
+    }
+
+    /**
+     * То же, что {@link #sumIgnoringOver1000(int[])}, но большие массивы
+     * (не короче {@link #PARALLEL_THRESHOLD}) делятся на части и суммируются параллельно.
+     *
+     * @param numbers Массив чисел (может быть null).
+     * @return Сумма подходящих чисел.
+     */
+    public long sumIgnoringOver1000Parallel(int[] numbers) {
+        if (numbers == null) {
+            return 0;
+        }
+        if (numbers.length < PARALLEL_THRESHOLD) {
+            return sumRange(numbers, 0, numbers.length);
+        }
+        int chunks = (numbers.length + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD;
+        return IntStream.range(0, chunks)
+                .parallel()
+                .mapToLong(chunk -> {
+                    int from = chunk * PARALLEL_THRESHOLD;
+                    int to = Math.min(from + PARALLEL_THRESHOLD, numbers.length);
+                    return sumRange(numbers, from, to);
+                })
+                .sum();
+    }
+
+    /**
+     * Суммирует числа из списка, отобранные правилом filter. null пропускаются.
+     *
+     * @param numbers Список чисел (может быть null).
+     * @param filter Правило отбора.
+     * @return Сумма подходящих чисел.
+     */
+    public long sumMatching(List<Integer> numbers, SumFilter filter) {
+        if (numbers == null) {
+            return 0;
+        }
+        long sum = 0;
+        for (Integer number : numbers) {
+            if (number != null && filter.test(number)) {
+                sum += number;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Суммирует числа из массива, отобранные правилом filter.
+     *
+     * @param numbers Массив чисел (может быть null).
+     * @param filter Правило отбора.
+     * @return Сумма подходящих чисел.
+     */
+    public long sumMatching(int[] numbers, SumFilter filter) {
+        return filter.sum(numbers);
+    }
+
+    /**
+     * То же, что {@link #sumMatching(int[], SumFilter)}, но большие массивы суммируются параллельно.
+     *
+     * @param numbers Массив чисел (может быть null).
+     * @param filter Правило отбора.
+     * @return Сумма подходящих чисел.
+     */
+    public long sumMatchingParallel(int[] numbers, SumFilter filter) {
+        if (numbers == null) {
+            return 0;
+        }
+        if (numbers.length < PARALLEL_THRESHOLD) {
+            return filter.sum(numbers, 0, numbers.length);
+        }
+        int chunks = (numbers.length + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD;
+        return IntStream.range(0, chunks)
+                .parallel()
+                .mapToLong(chunk -> {
+                    int from = chunk * PARALLEL_THRESHOLD;
+                    int to = Math.min(from + PARALLEL_THRESHOLD, numbers.length);
+                    return filter.sum(numbers, from, to);
+                })
+                .sum();
+    }
+
+    /**
+     * Суммирует числа из потока, не собирая их в коллекцию.
+     *
+     * @param numbers Поток чисел (может быть null).
+     * @return Сумма подходящих чисел.
+     */
+    public long sumIgnoringOver1000(IntStream numbers) {
+        if (numbers == null) {
+            return 0;
+        }
+        return numbers.collect(FilteredSumAccumulator::new, FilteredSumAccumulator::accept,
+                FilteredSumAccumulator::merge).getSum();
+    }
+
+    /**
+     * Коллектор для Stream&lt;Integer&gt;: суммирует элементы, пропуская null и значения > 1000.
+     * Подходит и для параллельных потоков.
+     *
+     * @return Коллектор, возвращающий сумму в long.
+     */
+    public static Collector<Integer, ?, Long> summingIgnoringOver1000() {
+        return Collector.of(FilteredSumAccumulator::new,
+                (FilteredSumAccumulator acc, Integer value) -> acc.accept(value),
+                FilteredSumAccumulator::merge,
+                FilteredSumAccumulator::getSum);
+    }
+
+    // Простой цикл без ветвлений в теле (сравнение превращается в условную пересылку):
+    // такой цикл JIT разворачивает и векторизует сам, а ручная развертка на четыре аккумулятора
+    // ему мешает и в filterBenchmark медленнее (см. сравнение там).
+    static long sumRange(int[] numbers, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            int value = numbers[i];
+            sum += value <= LIMIT ? value : 0;
+        }
         return sum;
     }
-}
\ No newline at end of file
+}
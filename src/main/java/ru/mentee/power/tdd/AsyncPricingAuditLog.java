@@ -0,0 +1,95 @@
+package ru.mentee.power.tdd;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Асинхронный журнал расчетов: записи складываются в ограниченную очередь,
+ * а печатает их отдельный фоновый поток. Поток расчета никогда не ждет вывода:
+ * если очередь переполнена, запись отбрасывается и учитывается в {@link #getDroppedCount()}.
+ */
+public class AsyncPricingAuditLog implements PricingAuditListener, AutoCloseable {
+
+    private static final int DRAIN_BATCH = 256;
+
+    private record Entry(long amountMinor, int rate, long finalPriceMinor) {
+    }
+
+    private final BlockingQueue<Entry> queue;
+    private final PrintStream out;
+    private final Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param out Куда печатать записи.
+     * @param capacity Максимальное число ожидающих записей.
+     */
+    public AsyncPricingAuditLog(PrintStream out, int capacity) {
+        if (out == null) throw new IllegalArgumentException("Output must not be null");
+        this.out = out;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drainLoop, "pricing-audit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void onPriced(long amountMinor, int rate, long finalPriceMinor) {
+        if (!running || !queue.offer(new Entry(amountMinor, rate, finalPriceMinor))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Сколько записей было отброшено из-за переполнения очереди или после закрытия.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Останавливает фоновый поток, предварительно напечатав все ожидающие записи.
+     * Если вызывающий поток прерван во время ожидания, флаг прерывания восстанавливается,
+     * а ненапечатанные записи учитываются как отброшенные.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Записи, успевшие попасть в очередь уже после остановки потока
+        dropped.addAndGet(queue.size());
+        queue.clear();
+    }
+
+    private void drainLoop() {
+        List<Entry> batch = new ArrayList<>(DRAIN_BATCH);
+        try {
+            while (running || !queue.isEmpty()) {
+                Entry first = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, DRAIN_BATCH - 1);
+                for (Entry entry : batch) {
+                    out.printf("Сумма: %.2f, Скидка: %.0f%%, Итого: %.2f%n",
+                            entry.amountMinor() / 100.0, entry.rate() / 100.0, entry.finalPriceMinor() / 100.0);
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
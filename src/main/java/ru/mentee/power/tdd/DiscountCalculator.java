@@ -1,46 +1,158 @@
 package ru.mentee.power.tdd;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Калькулятор скидок.
  * Должен рассчитывать финальную стоимость с учетом скидки.
  */
 public class DiscountCalculator {
 
+    // Таблица читается один раз за расчет, поэтому замена таблицы
+    // не блокирует расчеты и не дает им увидеть "половину" новой таблицы.
+    private final AtomicReference<DiscountTierTable> tierTable;
+
+    // null — аудит выключен, расчет не имеет побочных эффектов
+    private volatile PricingAuditListener auditListener;
+
+    public DiscountCalculator() {
+        this(DiscountTierTable.DEFAULT);
+    }
+
+    /**
+     * @param tierTable Таблица уровней скидок.
+     */
+    public DiscountCalculator(DiscountTierTable tierTable) {
+        if (tierTable == null) throw new IllegalArgumentException("Tier table must not be null");
+        this.tierTable = new AtomicReference<>(tierTable);
+    }
+
     /**
      * Рассчитывает стоимость с учетом скидки.
-     * Скидка 10% при сумме > 1000.
-     * Скидка 20% при сумме > 5000.
+     * По умолчанию: скидка 10% при сумме > 1000, скидка 20% при сумме > 5000.
      * Скидки не суммируются, применяется максимальная.
+     * Сумма округляется до копеек, расчет ведется в копейках.
+     * Метод не печатает ничего сам; для журнала расчетов см. {@link #setAuditListener}.
      *
      * @param amount Сумма покупки.
      * @return Стоимость после применения скидки.
      */
     public double calculateDiscountedPrice(double amount) {
-        double discountRate = 0.0;
+        DiscountTierTable table = tierTable.get();
+        long amountMinor = Math.round(amount * 100);
+        int rate = table.rateFor(amountMinor);
+        long finalPriceMinor = DiscountTierTable.applyRate(amountMinor, rate);
+        audit(amountMinor, rate, finalPriceMinor);
+        return finalPriceMinor / 100.0;
+    }
 
-        if (amount > 5000) {
-            discountRate = 0.20; // 20%
+    /**
+     * Рассчитывает стоимость с учетом скидки в копейках, без округлений double.
+     *
+     * @param amountMinor Сумма покупки в копейках.
+     * @return Стоимость после применения скидки в копейках.
+     */
+    public long calculateDiscountedPriceMinor(long amountMinor) {
+        DiscountTierTable table = tierTable.get();
+        int rate = table.rateFor(amountMinor);
+        long finalPriceMinor = DiscountTierTable.applyRate(amountMinor, rate);
+        audit(amountMinor, rate, finalPriceMinor);
+        return finalPriceMinor;
+    }
+
+    /**
+     * Рассчитывает стоимость со скидкой для целого массива сумм без выделения памяти на элемент.
+     * Весь массив считается по одной и той же таблице уровней.
+     *
+     * @param amounts Суммы покупок.
+     * @param out Массив для результатов, не короче amounts (может совпадать с amounts).
+     */
+    public void calculateDiscountedPrices(double[] amounts, double[] out) {
+        checkBatch(amounts.length, out.length);
+        DiscountTierTable table = tierTable.get();
+        PricingAuditListener listener = auditListener;
+        for (int i = 0; i < amounts.length; i++) {
+            long amountMinor = Math.round(amounts[i] * 100);
+            int rate = table.rateFor(amountMinor);
+            long finalPriceMinor = DiscountTierTable.applyRate(amountMinor, rate);
+            if (listener != null) {
+                listener.onPriced(amountMinor, rate, finalPriceMinor);
+            }
+            out[i] = finalPriceMinor / 100.0;
         }
-        else if (amount > 1000) {
-            discountRate = 0.10; // 10%
+    }
+
+    /**
+     * То же, что {@link #calculateDiscountedPrices(double[], double[])}, но в копейках.
+     *
+     * @param amountsMinor Суммы покупок в копейках.
+     * @param out Массив для результатов, не короче amountsMinor (может совпадать с amountsMinor).
+     */
+    public void calculateDiscountedPrices(long[] amountsMinor, long[] out) {
+        checkBatch(amountsMinor.length, out.length);
+        DiscountTierTable table = tierTable.get();
+        PricingAuditListener listener = auditListener;
+        for (int i = 0; i < amountsMinor.length; i++) {
+            long amountMinor = amountsMinor[i];
+            int rate = table.rateFor(amountMinor);
+            long finalPriceMinor = DiscountTierTable.applyRate(amountMinor, rate);
+            if (listener != null) {
+                listener.onPriced(amountMinor, rate, finalPriceMinor);
+            }
+            out[i] = finalPriceMinor;
         }
+    }
+
+    /**
+     * Подключает аудит расчетов (например, {@link AsyncPricingAuditLog}).
+     *
+     * @param listener Получатель записей аудита или null, чтобы выключить аудит.
+     */
+    public void setAuditListener(PricingAuditListener listener) {
+        this.auditListener = listener;
+    }
+
+    /**
+     * @return Текущая таблица уровней скидок.
+     */
+    public DiscountTierTable getTierTable() {
+        return tierTable.get();
+    }
 
-        double discountValue = amount * discountRate;
-        double finalPrice = amount - discountValue;
+    /**
+     * Атомарно подменяет таблицу уровней. Уже начатые расчеты доработают со старой таблицей.
+     *
+     * @param newTable Новая таблица.
+     * @return Предыдущая таблица.
+     */
+    public DiscountTierTable replaceTierTable(DiscountTierTable newTable) {
+        if (newTable == null) throw new IllegalArgumentException("Tier table must not be null");
+        return tierTable.getAndSet(newTable);
+    }
 
-        System.out.printf("Сумма: %.2f, Скидка: %.0f%%, Итого: %.2f%n",
-                amount, discountRate * 100, finalPrice);
+    private void audit(long amountMinor, int rate, long finalPriceMinor) {
+        PricingAuditListener listener = auditListener;
+        if (listener != null) {
+            listener.onPriced(amountMinor, rate, finalPriceMinor);
+        }
+    }
 
-        return finalPrice;
+    private static void checkBatch(int amountsLength, int outLength) {
+        if (outLength < amountsLength) {
+            throw new IllegalArgumentException("Output array is shorter than input: " + outLength + " < " + amountsLength);
+        }
     }
 
     public static void main(String[] args) {
         DiscountCalculator calculator = new DiscountCalculator();
 
         System.out.println("Тестируем калькулятор:");
-        calculator.calculateDiscountedPrice(800);    // Ожидаем: 800.00 (скидка 0%)
-        calculator.calculateDiscountedPrice(1200);   // Ожидаем: 1080.00 (скидка 10%)
-        calculator.calculateDiscountedPrice(5500);   // Ожидаем: 4400.00 (скидка 20%) - Тут проблема!
-        calculator.calculateDiscountedPrice(6000);   // Ожидаем: 4800.00 (скидка 20%) - И тут!
+        try (AsyncPricingAuditLog auditLog = new AsyncPricingAuditLog(System.out, 1024)) {
+            calculator.setAuditListener(auditLog);
+            calculator.calculateDiscountedPrice(800);    // Ожидаем: 800.00 (скидка 0%)
+            calculator.calculateDiscountedPrice(1200);   // Ожидаем: 1080.00 (скидка 10%)
+            calculator.calculateDiscountedPrice(5500);   // Ожидаем: 4400.00 (скидка 20%)
+            calculator.calculateDiscountedPrice(6000);   // Ожидаем: 4800.00 (скидка 20%)
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+package ru.mentee.power.tdd;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Неизменяемая таблица уровней скидок: отсортированные пороги и ставки.
+ * Суммы хранятся в копейках (long), ставки — в сотых долях процента (1000 = 10%),
+ * поэтому расчет точный и не зависит от ошибок округления double.
+ * Ставка уровня применяется к сумме, строго большей его порога; из подходящих уровней
+ * выбирается уровень с наибольшим порогом.
+ */
+public final class DiscountTierTable {
+
+    /** 100% в сотых долях процента. */
+    public static final int FULL_RATE = 10_000;
+
+    /** Таблица по умолчанию: 10% при сумме > 1000, 20% при сумме > 5000. */
+    public static final DiscountTierTable DEFAULT = new DiscountTierTable(
+            new long[]{1000_00L, 5000_00L},
+            new int[]{1000, 2000});
+
+    private final long[] thresholds;
+    private final int[] rates;
+
+    /**
+     * @param thresholds Пороги в копейках, строго по возрастанию, неотрицательные.
+     * @param rates Ставки в сотых долях процента (0..10000), по одной на порог.
+     */
+    public DiscountTierTable(long[] thresholds, int[] rates) {
+        if (thresholds == null || rates == null || thresholds.length != rates.length) {
+            throw new IllegalArgumentException("Thresholds and rates must be non-null arrays of the same length");
+        }
+        for (int i = 0; i < thresholds.length; i++) {
+            if (thresholds[i] < 0 || (i > 0 && thresholds[i] <= thresholds[i - 1])) {
+                throw new IllegalArgumentException("Thresholds must be non-negative and strictly increasing: "
+                        + Arrays.toString(thresholds));
+            }
+            if (rates[i] < 0 || rates[i] > FULL_RATE) {
+                throw new IllegalArgumentException("Rate out of range [0, " + FULL_RATE + "]: " + rates[i]);
+            }
+        }
+        this.thresholds = thresholds.clone();
+        this.rates = rates.clone();
+    }
+
+    /**
+     * Читает таблицу из текста: по одному уровню в строке, "порог ставка%",
+     * например "1000.00 10" или "5000 12.5". Пустые строки и строки с # пропускаются.
+     * Уровни могут идти в любом порядке.
+     *
+     * @param reader Источник текста.
+     * @return Таблица уровней.
+     * @throws IOException при ошибке чтения.
+     */
+    public static DiscountTierTable load(Reader reader) throws IOException {
+        List<long[]> tiers = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected '<threshold> <rate%>': " + line);
+            }
+            try {
+                long threshold = toMinorUnits(new BigDecimal(parts[0]));
+                long rate = new BigDecimal(parts[1].endsWith("%") ? parts[1].substring(0, parts[1].length() - 1) : parts[1])
+                        .movePointRight(2).intValueExact();
+                tiers.add(new long[]{threshold, rate});
+            } catch (ArithmeticException | NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": invalid tier: " + line, e);
+            }
+        }
+        tiers.sort((a, b) -> Long.compare(a[0], b[0]));
+        long[] thresholds = new long[tiers.size()];
+        int[] rates = new int[tiers.size()];
+        for (int i = 0; i < tiers.size(); i++) {
+            thresholds[i] = tiers.get(i)[0];
+            rates[i] = (int) tiers.get(i)[1];
+        }
+        return new DiscountTierTable(thresholds, rates);
+    }
+
+    /**
+     * Находит ставку для суммы двоичным поиском.
+     * @param amountMinor Сумма в копейках.
+     * @return Ставка в сотых долях процента (0, если ни один уровень не подходит).
+     */
+    public int rateFor(long amountMinor) {
+        // Ищем число порогов, строго меньших суммы
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (thresholds[mid] < amountMinor) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == 0 ? 0 : rates[low - 1];
+    }
+
+    /**
+     * Рассчитывает цену со скидкой. Скидка округляется до копейки по правилу "половина вверх".
+     * @param amountMinor Сумма в копейках.
+     * @return Сумма после скидки в копейках.
+     */
+    public long apply(long amountMinor) {
+        return applyRate(amountMinor, rateFor(amountMinor));
+    }
+
+    static long applyRate(long amountMinor, int rate) {
+        if (rate == 0) {
+            return amountMinor;
+        }
+        long discount = Math.floorDiv(Math.multiplyExact(amountMinor, rate) + FULL_RATE / 2, FULL_RATE);
+        return amountMinor - discount;
+    }
+
+    /**
+     * @return Число уровней в таблице.
+     */
+    public int size() {
+        return thresholds.length;
+    }
+
+    static long toMinorUnits(BigDecimal amount) {
+        return amount.movePointRight(2).longValueExact();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DiscountTierTable table)) return false;
+        return Arrays.equals(thresholds, table.thresholds) && Arrays.equals(rates, table.rates);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(thresholds) + Arrays.hashCode(rates);
+    }
+}
@@ -0,0 +1,131 @@
+package ru.mentee.power.tdd;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Накопитель суммы для потока чисел. По умолчанию числа > 1000 игнорируются,
+ * как в {@link AdvancedCalculator#sumIgnoringOver1000(java.util.List)}; можно задать свое {@link SumFilter}.
+ * Значения можно добавлять по одному или пачками, а текущую сумму запрашивать в любой момент.
+ * Экземпляр не потокобезопасен: каждый поток накапливает свой, затем они объединяются через {@link #merge}.
+ */
+public class FilteredSumAccumulator implements IntConsumer {
+
+    private final SumFilter filter;
+    private long sum;
+    private long accepted;
+    private long ignored;
+
+    public FilteredSumAccumulator() {
+        this(SumFilter.DEFAULT);
+    }
+
+    /**
+     * @param filter Правило отбора чисел.
+     */
+    public FilteredSumAccumulator(SumFilter filter) {
+        if (filter == null) throw new IllegalArgumentException("Filter must not be null");
+        this.filter = filter;
+    }
+
+    /**
+     * Добавляет одно число.
+     * @param value Число.
+     */
+    @Override
+    public void accept(int value) {
+        if (filter.test(value)) {
+            sum += value;
+            accepted++;
+        } else {
+            ignored++;
+        }
+    }
+
+    /**
+     * Добавляет число, пропуская null.
+     * @param value Число (может быть null).
+     */
+    public void accept(Integer value) {
+        if (value != null) {
+            accept(value.intValue());
+        }
+    }
+
+    /**
+     * Добавляет пачку чисел.
+     * @param chunk Массив чисел (может быть null).
+     */
+    public void acceptAll(int[] chunk) {
+        if (chunk != null) {
+            acceptAll(chunk, 0, chunk.length);
+        }
+    }
+
+    /**
+     * Добавляет часть массива [from, to).
+     * @param chunk Массив чисел.
+     * @param from Индекс начала (включительно).
+     * @param to Индекс конца (не включительно).
+     */
+    public void acceptAll(int[] chunk, int from, int to) {
+        if (from < 0 || to > chunk.length || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for length " + chunk.length);
+        }
+        long chunkSum = 0;
+        long chunkAccepted = 0;
+        for (int i = from; i < to; i++) {
+            int value = chunk[i];
+            boolean fits = filter.test(value);
+            chunkSum += fits ? value : 0;
+            chunkAccepted += fits ? 1 : 0;
+        }
+        sum += chunkSum;
+        accepted += chunkAccepted;
+        ignored += (to - from) - chunkAccepted;
+    }
+
+    /**
+     * Добавляет к этому накопителю данные другого (например, собранные в другом потоке).
+     * @param other Другой накопитель с тем же правилом отбора.
+     * @return Этот накопитель.
+     */
+    public FilteredSumAccumulator merge(FilteredSumAccumulator other) {
+        if (!filter.equals(other.filter)) {
+            throw new IllegalArgumentException("Cannot merge accumulators with different filters: " + filter + " and " + other.filter);
+        }
+        sum += other.sum;
+        accepted += other.accepted;
+        ignored += other.ignored;
+        return this;
+    }
+
+    /**
+     * @return Текущая сумма учтенных чисел.
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return Сколько чисел попало в сумму.
+     */
+    public long getAcceptedCount() {
+        return accepted;
+    }
+
+    /**
+     * @return Сколько чисел было отброшено правилом отбора.
+     */
+    public long getIgnoredCount() {
+        return ignored;
+    }
+
+    /**
+     * Сбрасывает накопитель в начальное состояние.
+     */
+    public void reset() {
+        sum = 0;
+        accepted = 0;
+        ignored = 0;
+    }
+}
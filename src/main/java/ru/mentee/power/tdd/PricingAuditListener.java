@@ -0,0 +1,17 @@
+package ru.mentee.power.tdd;
+
+/**
+ * Получатель записей аудита расчета цен. Вызывается прямо в потоке расчета,
+ * поэтому реализация должна быть быстрой и не делать ввод-вывод синхронно
+ * (см. {@link AsyncPricingAuditLog}).
+ */
+@FunctionalInterface
+public interface PricingAuditListener {
+
+    /**
+     * @param amountMinor Исходная сумма в копейках.
+     * @param rate Примененная ставка в сотых долях процента.
+     * @param finalPriceMinor Итоговая сумма в копейках.
+     */
+    void onPriced(long amountMinor, int rate, long finalPriceMinor);
+}
@@ -1,12 +1,34 @@
 package ru.mentee.power.tdd;
 
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * Утилитарный класс для работы со строками.
  */
 public class StringUtils {
 
+    /** Размер окна, которым файл отображается в память при развороте. */
+    static final int FILE_CHUNK_SIZE = 1 << 20;
+
+    // \X — расширенный кластер графем (буква с диакритикой, эмодзи с модификаторами и т.п.)
+    private static final Pattern GRAPHEME = Pattern.compile("\\X");
+
     /**
-     * Переворачивает переданную строку.
+     * Переворачивает переданную строку. Суррогатные пары (символы вне BMP) сохраняются.
+     * Кодировка строки определяется до выделения памяти, так что буфер выделяется один:
+     * byte[] для строки из символов Latin-1, char[] для остальных.
      *
      * @param str Строка для переворота.
      * @return Перевернутая строка, или null если на входе был null.
@@ -15,6 +37,179 @@ public class StringUtils {
         if (str == null) {
             return null;
         }
-        return new StringBuilder(str).reverse().toString(); // Пример возможной реализации
+        int length = str.length();
+        if (length < 2) {
+            return str;
+        }
+        if (!isLatin1(str)) {
+            char[] chars = new char[length];
+            reverseInto(str, chars, 0);
+            return new String(chars);
+        }
+        byte[] latin1 = new byte[length];
+        for (int i = 0; i < length; i++) {
+            latin1[length - 1 - i] = (byte) str.charAt(i);
+        }
+        return new String(latin1, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isLatin1(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Переворачивает последовательность символов в заранее выделенный массив.
+     *
+     * @param source Исходные символы.
+     * @param dest Массив для результата.
+     * @param offset С какой позиции писать в dest.
+     * @return Число записанных символов (равно длине source).
+     * @throws IndexOutOfBoundsException если результат не помещается в dest.
+     */
+    public int reverse(CharSequence source, char[] dest, int offset) {
+        int length = source.length();
+        if (offset < 0 || offset > dest.length - length) {
+            throw new IndexOutOfBoundsException("Cannot write " + length + " chars at offset " + offset
+                    + " into array of length " + dest.length);
+        }
+        reverseInto(source, dest, offset);
+        return length;
+    }
+
+    /**
+     * Переворачивает последовательность символов в буфер, начиная с его текущей позиции.
+     * Позиция буфера сдвигается на длину source.
+     *
+     * @param source Исходные символы.
+     * @param dest Буфер для результата.
+     * @throws BufferOverflowException если в буфере недостаточно места.
+     */
+    public void reverse(CharSequence source, CharBuffer dest) {
+        int length = source.length();
+        if (dest.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        int position = dest.position();
+        if (dest.hasArray()) {
+            reverseInto(source, dest.array(), dest.arrayOffset() + position);
+        } else {
+            for (int i = 0; i < length; i++) {
+                char c = source.charAt(i);
+                int target = position + length - 1 - i;
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(source.charAt(i + 1))) {
+                    dest.put(target - 1, c);
+                    dest.put(target, source.charAt(i + 1));
+                    i++;
+                } else {
+                    dest.put(target, c);
+                }
+            }
+        }
+        dest.position(position + length);
+    }
+
+    /**
+     * Переворачивает строку по кластерам графем: буква с комбинируемыми знаками,
+     * флаги и эмодзи-последовательности остаются целыми.
+     *
+     * @param str Строка для переворота.
+     * @return Перевернутая строка, или null если на входе был null.
+     */
+    public String reverseGraphemes(String str) {
+        if (str == null) {
+            return null;
+        }
+        List<int[]> clusters = new ArrayList<>();
+        Matcher matcher = GRAPHEME.matcher(str);
+        while (matcher.find()) {
+            clusters.add(new int[]{matcher.start(), matcher.end()});
+        }
+        StringBuilder result = new StringBuilder(str.length());
+        for (int i = clusters.size() - 1; i >= 0; i--) {
+            int[] cluster = clusters.get(i);
+            result.append(str, cluster[0], cluster[1]);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Переворачивает текстовый файл в кодировке UTF-8 по кодовым точкам, не загружая его в память целиком:
+     * исходный файл отображается в память окнами по {@link #FILE_CHUNK_SIZE} байт с конца.
+     * Кластеры графем в этом режиме не учитываются.
+     *
+     * @param source Исходный файл.
+     * @param target Файл для результата (будет перезаписан).
+     * @throws IOException при ошибке ввода-вывода.
+     */
+    public void reverseUtf8File(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer output = ByteBuffer.allocateDirect(FILE_CHUNK_SIZE);
+            long end = in.size();
+            while (end > 0) {
+                long start = Math.max(0, end - FILE_CHUNK_SIZE);
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                int from = 0;
+                if (start > 0) {
+                    // Начало окна выравнивается на начало кодовой точки, хвост уйдет в следующее окно
+                    while (from < window.limit() && isUtf8Continuation(window.get(from))) {
+                        from++;
+                    }
+                    if (from == window.limit()) {
+                        from = 0; // некорректный UTF-8: копируем байты как есть
+                    }
+                }
+                int i = window.limit();
+                while (i > from) {
+                    int codePointStart = i - 1;
+                    while (codePointStart > from && isUtf8Continuation(window.get(codePointStart))) {
+                        codePointStart--;
+                    }
+                    if (output.remaining() < i - codePointStart) {
+                        flush(output, out);
+                    }
+                    for (int k = codePointStart; k < i; k++) {
+                        output.put(window.get(k));
+                    }
+                    i = codePointStart;
+                }
+                end = start + from;
+            }
+            flush(output, out);
+        }
+    }
+
+    private static boolean isUtf8Continuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Пишет source задом наперед в dest[offset, offset + length), не разрывая суррогатные пары
+    private static void reverseInto(CharSequence source, char[] dest, int offset) {
+        int length = source.length();
+        int last = offset + length - 1;
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(source.charAt(i + 1))) {
+                dest[last - i - 1] = c;
+                dest[last - i] = source.charAt(i + 1);
+                i++;
+            } else {
+                dest[last - i] = c;
+            }
+        }
     }
-}
\ No newline at end of file
+}
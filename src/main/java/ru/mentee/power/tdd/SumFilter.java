@@ -0,0 +1,131 @@
+package ru.mentee.power.tdd;
+
+import java.util.List;
+
+/**
+ * Правило отбора чисел для суммирования (например, свое для каждого арендатора).
+ * Все условия (нижняя и верхняя граница, исключение отрицательных) при создании
+ * сводятся к одному отрезку [min, max], а суммирование массива выполняется специализированным
+ * циклом для этого вида отрезка — без ветвлений, виртуальных вызовов и упаковки на элемент.
+ * Экземпляр неизменяемый, его стоит создать один раз и переиспользовать.
+ */
+public final class SumFilter {
+
+    /** Правило по умолчанию: как в {@link AdvancedCalculator#sumIgnoringOver1000(List)}. */
+    public static final SumFilter DEFAULT = atMost(AdvancedCalculator.LIMIT);
+
+    private final int min;
+    private final int max;
+
+    private SumFilter(int min, int max) {
+        if (min > max) {
+            throw new IllegalArgumentException("Empty range: min " + min + " > max " + max);
+        }
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @param max Максимальное учитываемое значение (включительно).
+     * @return Правило, пропускающее все числа не больше max.
+     */
+    public static SumFilter atMost(int max) {
+        return new SumFilter(Integer.MIN_VALUE, max);
+    }
+
+    /**
+     * @param min Минимальное учитываемое значение (включительно).
+     * @param max Максимальное учитываемое значение (включительно).
+     * @return Правило, пропускающее числа из отрезка [min, max].
+     */
+    public static SumFilter between(int min, int max) {
+        return new SumFilter(min, max);
+    }
+
+    /**
+     * @return Такое же правило, но без отрицательных чисел.
+     */
+    public SumFilter excludingNegatives() {
+        return min >= 0 ? this : new SumFilter(0, max);
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @param value Число.
+     * @return true, если число попадает в сумму.
+     */
+    public boolean test(int value) {
+        // & вместо &&: оба сравнения вычисляются всегда, и JIT обходится без условного перехода
+        return value >= min & value <= max;
+    }
+
+    /**
+     * Суммирует подходящие числа массива.
+     * @param numbers Массив чисел (может быть null).
+     * @return Сумма подходящих чисел.
+     */
+    public long sum(int[] numbers) {
+        if (numbers == null) {
+            return 0;
+        }
+        return sum(numbers, 0, numbers.length);
+    }
+
+    /**
+     * Суммирует подходящие числа части массива [from, to).
+     * @param numbers Массив чисел.
+     * @param from Индекс начала (включительно).
+     * @param to Индекс конца (не включительно).
+     * @return Сумма подходящих чисел.
+     */
+    public long sum(int[] numbers, int from, int to) {
+        // Вид правила выбирается один раз на вызов, а не на каждый элемент
+        if (min == Integer.MIN_VALUE) {
+            return sumAtMost(numbers, from, to, max);
+        }
+        return sumBetween(numbers, from, to, min, max);
+    }
+
+    // Вместо условного выражения используется маска из знакового бита разности:
+    // так скорость не зависит от профиля ветвлений, собранного JIT на других данных.
+    private static long sumAtMost(int[] numbers, int from, int to, long hi) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            long value = numbers[i];
+            sum += value & ~((hi - value) >> 63);
+        }
+        return sum;
+    }
+
+    private static long sumBetween(int[] numbers, int from, int to, long lo, long hi) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            long value = numbers[i];
+            sum += value & ~(((value - lo) | (hi - value)) >> 63);
+        }
+        return sum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SumFilter filter)) return false;
+        return min == filter.min && max == filter.max;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * min + max;
+    }
+
+    @Override
+    public String toString() {
+        return "SumFilter[" + min + ", " + max + "]";
+    }
+}
@@ -0,0 +1,138 @@
+package ru.mentee.power.tdd.notes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Автомат Ахо-Корасик: за один проход по тексту находит все вхождения сразу нескольких шаблонов.
+ * После построения переходы хранятся в отсортированных массивах, поэтому сканирование
+ * не выделяет память.
+ */
+final class AhoCorasick {
+
+    private final int patternCount;
+    private final char[][] keys; // символы переходов из каждого состояния, по возрастанию
+    private final int[][] targets; // состояния, в которые ведут переходы keys
+    private final int[] fail; // суффиксные ссылки
+    private final int[][] outputs; // номера шаблонов, заканчивающихся в состоянии (с учетом суффиксов)
+
+    /**
+     * @param patterns Непустые, уже нормализованные шаблоны; номер шаблона — его индекс в списке.
+     */
+    AhoCorasick(List<String> patterns) {
+        this.patternCount = patterns.size();
+        List<TreeMap<Character, Integer>> edges = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        edges.add(new TreeMap<>());
+        out.add(new ArrayList<>());
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            if (pattern.isEmpty()) throw new IllegalArgumentException("Pattern must not be empty");
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = edges.get(state).get(pattern.charAt(i));
+                if (next == null) {
+                    next = edges.size();
+                    edges.add(new TreeMap<>());
+                    out.add(new ArrayList<>());
+                    edges.get(state).put(pattern.charAt(i), next);
+                }
+                state = next;
+            }
+            out.get(state).add(p);
+        }
+
+        int size = edges.size();
+        this.keys = new char[size][];
+        this.targets = new int[size][];
+        this.fail = new int[size];
+        for (int state = 0; state < size; state++) {
+            TreeMap<Character, Integer> stateEdges = edges.get(state);
+            keys[state] = new char[stateEdges.size()];
+            targets[state] = new int[stateEdges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : stateEdges.entrySet()) {
+                keys[state][i] = edge.getKey();
+                targets[state][i] = edge.getValue();
+                i++;
+            }
+        }
+
+        // Суффиксные ссылки строятся обходом в ширину, выходы наследуются по ним
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < keys[state].length; i++) {
+                int child = targets[state][i];
+                int f = fail[state];
+                int link;
+                while ((link = step(f, keys[state][i])) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = link < 0 || link == child ? 0 : link;
+                out.get(child).addAll(out.get(fail[child]));
+                queue.add(child);
+            }
+        }
+        this.outputs = new int[size][];
+        for (int state = 0; state < size; state++) {
+            outputs[state] = out.get(state).stream().mapToInt(Integer::intValue).distinct().toArray();
+        }
+    }
+
+    /**
+     * @return Число шаблонов в автомате.
+     */
+    int patternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Отмечает в found номера всех шаблонов, встретившихся в тексте.
+     * Если найдены уже все шаблоны, сканирование прекращается досрочно.
+     *
+     * @param normalizedText Уже нормализованный текст.
+     * @param found Найденные шаблоны (дополняется).
+     */
+    void scan(String normalizedText, BitSet found) {
+        scan(normalizedText, 0, normalizedText.length(), found);
+    }
+
+    /**
+     * То же, что {@link #scan(String, BitSet)}, для участка текста [from, to).
+     */
+    void scan(CharSequence normalizedText, int from, int to, BitSet found) {
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            char c = normalizedText.charAt(i);
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+            int[] matched = outputs[state];
+            if (matched.length > 0) {
+                for (int pattern : matched) {
+                    found.set(pattern);
+                }
+                if (found.cardinality() == patternCount) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int step(int state, char c) {
+        int index = Arrays.binarySearch(keys[state], c);
+        return index < 0 ? -1 : targets[state][index];
+    }
+}
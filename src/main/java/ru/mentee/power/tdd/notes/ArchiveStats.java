@@ -0,0 +1,13 @@
+package ru.mentee.power.tdd.notes;
+
+/**
+ * Сводка по архиву {@link NoteService}: старым заметкам, упакованным в сегменты по месяцам создания.
+ *
+ * @param segments Число сегментов.
+ * @param notes Сколько заметок в архиве.
+ * @param deletedNotes Сколько заметок удалено или перенесено в голову, но еще занимает место в сегментах
+ *                     (освобождается при следующей архивации их месяца).
+ * @param bytes Оценка памяти сегментов.
+ */
+public record ArchiveStats(int segments, int notes, int deletedNotes, long bytes) {
+}
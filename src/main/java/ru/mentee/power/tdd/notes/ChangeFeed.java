@@ -0,0 +1,230 @@
+package ru.mentee.power.tdd.notes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+/**
+ * Лента изменений заметок на кольцевом буфере без блокировок.
+ * Писатель получает номер события атомарным инкрементом и кладет событие в ячейку номер & mask;
+ * читатель по номеру внутри события понимает, опубликовано ли оно, не перезаписано ли
+ * более новым и не отстал ли он сам. Буфер хранит последние capacity событий, но не больше
+ * maxBytes по оценке их размера: самые старые события сверх этого объема вытесняются раньше,
+ * чем их перезапишет кольцо. Лента емкостью 0 выключена: номера событий выделяются,
+ * но сами события не создаются и не хранятся.
+ */
+public final class ChangeFeed {
+
+    private final int mask;
+    private final long maxBytes;
+    private final AtomicReferenceArray<NoteEvent> slots;
+    private final AtomicLong lastClaimed = new AtomicLong();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    // События с меньшими номерами вытеснены по объему; меняется только под trimLock
+    private volatile long oldestRetained = 1;
+    private final Object trimLock = new Object();
+
+    /**
+     * @param capacity Сколько последних событий хранить (степень двойки или 0, чтобы выключить ленту).
+     */
+    public ChangeFeed(int capacity) {
+        this(capacity, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param capacity Сколько последних событий хранить (степень двойки или 0, чтобы выключить ленту).
+     * @param maxBytes Сколько байт самое большее занимают хранимые события.
+     */
+    public ChangeFeed(int capacity, long maxBytes) {
+        if (capacity < 0 || capacity > 0 && Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be zero or a power of two: " + capacity);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Byte limit must be positive: " + maxBytes);
+        }
+        this.mask = capacity - 1;
+        this.maxBytes = maxBytes;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Публикует событие. В выключенной ленте только выделяет номер, не вызывая factory.
+     * @param factory Создает событие по выделенному ему номеру.
+     */
+    void publish(LongFunction<NoteEvent> factory) {
+        long sequence = lastClaimed.incrementAndGet();
+        if (!isEnabled()) {
+            return;
+        }
+        NoteEvent event = factory.apply(sequence);
+        retainedBytes.addAndGet(event.estimatedBytes());
+        NoteEvent overwritten = slots.getAndSet((int) (sequence & mask), event);
+        if (overwritten != null) {
+            retainedBytes.addAndGet(-overwritten.estimatedBytes());
+        }
+        if (retainedBytes.get() > maxBytes) {
+            trim(sequence);
+        }
+    }
+
+    // Вытесняет самые старые события, пока объем больше maxBytes; последнее событие остается всегда
+    private void trim(long newest) {
+        synchronized (trimLock) {
+            long oldest = Math.max(oldestRetained, newest - mask);
+            while (retainedBytes.get() > maxBytes && oldest < newest) {
+                int index = (int) (oldest & mask);
+                NoteEvent event = slots.get(index);
+                if (event == null || event.sequence() < oldest) {
+                    break; // номер выделен, но событие еще не записано: вытесним при следующей публикации
+                }
+                // Граница сдвигается до очистки ячейки, чтобы читатель пустой ячейки понял, что отстал
+                oldestRetained = oldest + 1;
+                if (event.sequence() == oldest && slots.compareAndSet(index, event, null)) {
+                    retainedBytes.addAndGet(-event.estimatedBytes());
+                }
+                oldest++;
+            }
+        }
+    }
+
+    /**
+     * @return false, если лента выключена (емкость 0).
+     */
+    public boolean isEnabled() {
+        return mask >= 0;
+    }
+
+    /**
+     * @return Оценка памяти, которую занимают хранимые события.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * @return Номер последнего выделенного события (0, если событий не было).
+     */
+    public long getLastSequence() {
+        return lastClaimed.get();
+    }
+
+    /**
+     * @return Номер самого старого события, которое еще хранится в буфере.
+     */
+    public long getOldestAvailableSequence() {
+        return Math.max(oldestRetained, lastClaimed.get() - mask);
+    }
+
+    /**
+     * @return Сколько последних событий хранит буфер (0, если лента выключена).
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return Сколько байт самое большее занимают хранимые события.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Подписывается на ленту, начиная с указанного события (например, последнего обработанного + 1).
+     * @param fromSequence Номер первого события, которое нужно получить.
+     * @return Подписка.
+     * @throws IllegalStateException если нужные события уже вытеснены из буфера или лента выключена.
+     */
+    public Subscription subscribe(long fromSequence) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Change feed is disabled");
+        }
+        long last = lastClaimed.get();
+        if (fromSequence < 1 || fromSequence > last + 1) {
+            throw new IllegalArgumentException("Sequence " + fromSequence + " is outside [1, " + (last + 1) + "]");
+        }
+        if (fromSequence < getOldestAvailableSequence()) {
+            throw new IllegalStateException("Events from " + fromSequence + " are no longer retained, oldest is "
+                    + getOldestAvailableSequence());
+        }
+        return new Subscription(fromSequence);
+    }
+
+    /**
+     * Подписка на ленту: читает события пачками, по порядку номеров.
+     * Экземпляр предназначен для одного потока-читателя; читателей может быть сколько угодно.
+     */
+    public final class Subscription {
+
+        private long next;
+
+        private Subscription(long fromSequence) {
+            this.next = fromSequence;
+        }
+
+        /**
+         * @return Номер следующего события, которое вернет {@link #poll}.
+         */
+        public long position() {
+            return next;
+        }
+
+        /**
+         * @return Сколько событий опубликовано, но еще не прочитано.
+         */
+        public long lag() {
+            return lastClaimed.get() - next + 1;
+        }
+
+        /**
+         * Забирает доступные события, не дожидаясь новых.
+         * @param maxBatch Максимальный размер пачки.
+         * @return События по порядку (пустой список, если новых нет).
+         * @throws IllegalStateException если читатель отстал больше чем на емкость буфера
+         *                               или нужное событие вытеснено по объему.
+         */
+        public List<NoteEvent> poll(int maxBatch) {
+            List<NoteEvent> batch = new ArrayList<>(Math.min(maxBatch, 64));
+            while (batch.size() < maxBatch) {
+                NoteEvent event = slots.get((int) (next & mask));
+                if (event == null || event.sequence() < next) {
+                    if (next < oldestRetained) {
+                        throw new IllegalStateException("Subscriber fell behind: event " + next
+                                + " was evicted by the byte limit");
+                    }
+                    break; // номер выделен, но событие еще не записано
+                }
+                if (event.sequence() > next) {
+                    throw new IllegalStateException("Subscriber fell behind: event " + next
+                            + " was overwritten by " + event.sequence());
+                }
+                batch.add(event);
+                next++;
+            }
+            return batch;
+        }
+
+        /**
+         * Как {@link #poll(int)}, но ждет хотя бы одно событие не дольше timeout.
+         * @param maxBatch Максимальный размер пачки.
+         * @param timeout Сколько ждать.
+         * @param unit Единица измерения timeout.
+         * @return События по порядку (пустой список, если за timeout ничего не пришло).
+         */
+        public List<NoteEvent> poll(int maxBatch, long timeout, TimeUnit unit) {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            long backoff = 1_000;
+            List<NoteEvent> batch = poll(maxBatch);
+            while (batch.isEmpty() && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(backoff);
+                backoff = Math.min(backoff * 2, 1_000_000);
+                batch = poll(maxBatch);
+            }
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ru.mentee.power.tdd.notes;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Канал репликации внутри одного процесса на ограниченной очереди: удобен для тестов
+ * и для реплик, которые обслуживают чтение в том же JVM. Когда очередь заполнена,
+ * отправитель ждет, пока реплика не заберет кадры.
+ */
+public final class InProcessTransport implements ReplicationTransport {
+
+    private final BlockingQueue<byte[]> queue;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity Сколько кадров может ждать в очереди.
+     */
+    public InProcessTransport(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public void send(byte[] frame) throws IOException {
+        try {
+            while (!queue.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+                checkOpen();
+            }
+            checkOpen();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending a replication frame", e);
+        }
+    }
+
+    @Override
+    public byte[] receive(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        byte[] frame = queue.poll();
+        if (frame == null) {
+            checkOpen();
+            frame = queue.poll(timeout, unit);
+        }
+        return frame;
+    }
+
+    /**
+     * @return Сколько кадров ждет в очереди.
+     */
+    public int getPendingFrames() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.mentee.power.tdd.notes;
+
+/**
+ * Сводка по памяти {@link NoteService} и вытеснению текстов на диск.
+ * Счетчики накапливаются с создания сервиса; частоту вытеснений и загрузок можно получить,
+ * сравнив два снимка сводки.
+ *
+ * @param budgetBytes Бюджет памяти (Long.MAX_VALUE, если не ограничен).
+ * @param residentBytes Оценка памяти, которую занимают заметки, индексы и лента изменений сейчас.
+ * @param metadataBytes Из нее: заметки без текстов (заголовки, теги, служебные объекты).
+ * @param textBytes Из нее: тексты, находящиеся в памяти, кэш распакованных текстов и ссылки на вытесненные тексты.
+ * @param archiveBytes Из нее: архивные сегменты со старыми заметками (см. {@link ArchiveStats}).
+ * @param indexBytes Из нее: индексы автодополнения и статистика тегов.
+ * @param changeFeedBytes Из нее: события, которые хранит лента изменений.
+ * @param notes Число заметок в изменяемой части (без архива).
+ * @param spilledNotes Сколько заметок держат текст на диске.
+ * @param spillFileBytes Размер файла вытеснения.
+ * @param spillGarbageBytes Сколько байт файла занято уже ненужными записями.
+ * @param spills Сколько раз текст вытеснялся на диск.
+ * @param reloads Сколько раз вытесненный текст загружался обратно в память.
+ * @param diskReads Сколько раз текст читался с диска без загрузки в память (при поиске).
+ * @param compactions Сколько раз файл вытеснения переписывался без мусора.
+ * @param spillFailures Сколько раз вытеснение не удалось из-за ошибки ввода-вывода.
+ */
+public record MemoryStats(long budgetBytes, long residentBytes, long metadataBytes, long textBytes, long archiveBytes,
+                          long indexBytes, long changeFeedBytes, int notes, int spilledNotes, long spillFileBytes, long spillGarbageBytes,
+                          long spills, long reloads, long diskReads, long compactions, long spillFailures) {
+}
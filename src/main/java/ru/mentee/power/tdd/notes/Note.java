@@ -1,27 +1,63 @@
 package ru.mentee.power.tdd.notes;
 
 import java.time.LocalDate;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Objects;
 
 public class Note {
 
+    // Объект заметки, дата создания, пустой набор тегов, ключ и запись в HashMap сервиса
+    private static final int METADATA_OVERHEAD = 160;
+    // Ссылка на тег в наборе и строка без содержимого
+    private static final int TAG_OVERHEAD = 8 + NoteBody.STRING_OVERHEAD;
+
+    // Поля volatile: заметку читают потоки поиска, пока сервис меняет ее под блокировкой записи
     private final int id; // Уникальный ID
-    private String title; // Заголовок
-    private String text; // Текст заметки
+    private volatile String title; // Заголовок
+    private volatile NoteBody body; // Текст заметки (как есть или сжатый) и его форма для поиска
     private final LocalDate creationDate; // Дата создания
-    private Set<String> tags; // Набор тегов (уникальные строки)
+    private volatile Set<String> tags; // Набор тегов (неизменяемый, заменяется целиком при изменении)
+    private volatile TextStorage storage; // Как хранить текст и готовить его к поиску
+    private volatile String normalizedTitle; // Заголовок в форме для поиска, считается при записи
+    private volatile boolean referenced; // Текст читали с прошлой проверки в очереди вытеснения (см. NoteService)
+    private volatile boolean queued; // Заметка стоит в очереди вытеснения сервиса
+    private volatile long version = 1; // Растет при каждом изменении через сервис; меняется под его блокировкой записи
 
 
     public Note(int id, String title, String text) {
+        this(id, title, text, TextNormalizer.CASE_INSENSITIVE);
+    }
+
+    Note(int id, String title, String text, TextNormalizer normalizer) {
+        this(id, title, text, TextStorage.plain(normalizer), LocalDate.now());
+    }
+
+    Note(int id, String title, String text, TextStorage storage, LocalDate creationDate) {
         if (title == null || text == null) throw new IllegalArgumentException("Title and text must not be null");
         this.id = id;
+        this.storage = storage;
+        this.title = title;
+        this.body = storage.store(text);
+        this.normalizedTitle = storage.normalizer().normalize(title);
+        this.creationDate = creationDate;
+        this.tags = Set.of();
+    }
+
+    /**
+     * Заметка из образа ({@link NoteImage}): текст, нормализованный заголовок и теги уже готовы, ничего не пересчитывается.
+     */
+    Note(int id, String title, String normalizedTitle, NoteBody body, TextStorage storage, LocalDate creationDate,
+         Set<String> tags) {
+        this.id = id;
+        this.storage = storage;
         this.title = title;
-        this.text = text;
-        this.creationDate = LocalDate.now();
-        this.tags = new HashSet<>();
+        this.body = body;
+        this.normalizedTitle = normalizedTitle;
+        this.creationDate = creationDate;
+        this.tags = tags;
     }
 
     public int getId() {
@@ -32,8 +68,11 @@ public class Note {
         return title;
     }
 
+    /**
+     * @return Текст заметки; сжатый текст распаковывается, а вытесненный на диск загружается при обращении.
+     */
     public String getText() {
-        return text;
+        return load().text();
     }
 
     public LocalDate getCreationDate() {
@@ -41,33 +80,237 @@ public class Note {
     }
 
     public Set<String> getTags() {
-        return Collections.unmodifiableSet(tags);
+        return tags;
+    }
+
+    /**
+     * @return Версия заметки: 1 у новой заметки, увеличивается при каждом изменении заголовка, текста или тегов
+     * через {@link NoteService}. Передается в условные методы сервиса, чтобы не затереть чужое изменение.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    void nextVersion() {
+        version++;
+    }
+
+    /**
+     * Возвращает версию, которую заметка имела до переноса в архив (см. {@link NoteSegment})
+     * или имеет на первичном сервисе (см. {@link NoteEvent#version()}).
+     */
+    void restoreVersion(long version) {
+        this.version = version;
+    }
+
+    String getNormalizedTitle() {
+        return normalizedTitle;
+    }
+
+    /**
+     * Текст в форме для поиска; вытесненный текст читается с диска, но в памяти не остается.
+     */
+    String getNormalizedText() {
+        NoteBody current = body;
+        if (current.isSpilled()) {
+            // Под монитором: файл вытеснения не переписывается посреди чтения
+            synchronized (this) {
+                return body.normalizedText();
+            }
+        }
+        return current.normalizedText();
+    }
+
+    /**
+     * @return true, если текст в форме для поиска содержит шаблон; сжатый текст при этом
+     * распаковывается в буфер потока, а не в новые строки.
+     */
+    boolean textMatches(TextPattern pattern) {
+        NoteBody current = body;
+        if (current.isSpilled()) {
+            synchronized (this) {
+                return body.matches(pattern);
+            }
+        }
+        return current.matches(pattern);
+    }
+
+    /**
+     * Отмечает слова автомата, найденные в тексте в форме для поиска (см. {@link #textMatches(TextPattern)}).
+     */
+    void scanText(AhoCorasick automaton, BitSet found) {
+        NoteBody current = body;
+        if (current.isSpilled()) {
+            synchronized (this) {
+                body.scan(automaton, found);
+                return;
+            }
+        }
+        current.scan(automaton, found);
+    }
+
+    /**
+     * Текст без загрузки в память и без отметки об обращении (для снимков и обучения словаря).
+     */
+    String peekText() {
+        NoteBody current = body;
+        if (current.isSpilled()) {
+            synchronized (this) {
+                return body.text();
+            }
+        }
+        return current.text();
+    }
+
+    NoteBody body() {
+        return body;
+    }
+
+    /**
+     * Отмечает, что заметка поставлена в очередь вытеснения.
+     * @return false, если она уже там стоит.
+     */
+    boolean markQueued() {
+        if (queued) {
+            return false;
+        }
+        synchronized (this) {
+            if (queued) {
+                return false;
+            }
+            queued = true;
+            return true;
+        }
+    }
+
+    /**
+     * Отмечает, что заметка вышла из очереди вытеснения.
+     */
+    synchronized void unqueue() {
+        queued = false;
+    }
+
+    /**
+     * Снимает отметку об обращении.
+     * @return true, если к тексту обращались с прошлого вызова.
+     */
+    boolean clearReferenced() {
+        boolean wasReferenced = referenced;
+        referenced = false;
+        return wasReferenced;
+    }
+
+    /**
+     * Отмечает обращение к заметке и возвращает ее текст в память, если он был вытеснен.
+     */
+    NoteBody load() {
+        referenced = true;
+        NoteBody current = body;
+        if (current.isSpilled()) {
+            synchronized (this) {
+                body = storage.reload(body);
+                return body;
+            }
+        }
+        return current;
+    }
+
+    synchronized void spill() {
+        body = storage.spill(body);
+    }
+
+    synchronized void relocate(SpillFile target) {
+        body = storage.relocate(body, target);
+    }
+
+    /**
+     * Отвязывает заметку от хранилища сервиса при удалении: текст загружается в память,
+     * дальше заметка живет сама по себе и в учете памяти сервиса не участвует.
+     */
+    synchronized void detach() {
+        TextStorage detached = TextStorage.plain(storage.normalizer());
+        body = storage.detach(body);
+        storage = detached;
+    }
+
+    /**
+     * @return Оценка памяти заметки без текста: объект, заголовок, теги, дата и запись в таблице сервиса.
+     */
+    long metadataBytes() {
+        String currentTitle = title;
+        String currentNormalizedTitle = normalizedTitle;
+        long bytes = METADATA_OVERHEAD + NoteBody.STRING_OVERHEAD + NoteBody.payloadBytes(currentTitle);
+        if (currentNormalizedTitle != currentTitle) {
+            bytes += NoteBody.STRING_OVERHEAD + NoteBody.payloadBytes(currentNormalizedTitle);
+        }
+        for (String tag : tags) {
+            bytes += tagBytes(tag);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return На сколько меняется {@link #metadataBytes()} при добавлении или снятии тега.
+     */
+    static long tagBytes(String tag) {
+        return TAG_OVERHEAD + NoteBody.payloadBytes(tag);
     }
 
     public void setTitle(String title) {
         if (title == null) throw new IllegalArgumentException("Title must not be null");
         this.title = title;
+        this.normalizedTitle = storage.normalizer().normalize(title);
     }
 
-    public void setText(String text) {
+    public synchronized void setText(String text) {
         if (text == null) throw new IllegalArgumentException("Text must not be null");
-        this.text = text;
+        NoteBody previous = body;
+        this.body = storage.store(text);
+        storage.forget(previous);
+    }
+
+    /**
+     * Пересохраняет текст текущим способом хранения (например, после обучения нового словаря).
+     */
+    synchronized void restore() {
+        if (storage.isCompressing() && !body.isSpilled()) {
+            setText(body.text());
+        }
     }
 
 
-    public void addTag(String tag) {
+    public boolean addTag(String tag) {
         if (tag == null || tag.isEmpty())
-            return;
+            return false;
+
+        String normalized = normalizeTag(tag);
+        Set<String> current = tags;
+        if (current.contains(normalized))
+            return false;
 
-        tags.add(tag.toLowerCase());
+        Set<String> updated = new HashSet<>(current);
+        updated.add(normalized);
+        tags = Set.copyOf(updated);
+        return true;
     }
 
     public boolean removeTag(String tag) {
-        if (tags.contains(tag.toLowerCase())) {
-            tags.remove(tag.toLowerCase());
-            return true;
-        }
-        return false;
+        if (tag == null)
+            return false;
+
+        String normalized = normalizeTag(tag);
+        Set<String> current = tags;
+        if (!current.contains(normalized))
+            return false;
+
+        Set<String> updated = new HashSet<>(current);
+        updated.remove(normalized);
+        tags = Set.copyOf(updated);
+        return true;
+    }
+
+    static String normalizeTag(String tag) {
+        return tag.toLowerCase(Locale.ROOT);
     }
 
     @Override
@@ -0,0 +1,105 @@
+package ru.mentee.power.tdd.notes;
+
+import java.util.BitSet;
+
+/**
+ * Текст заметки в том виде, в каком он хранится: в памяти как есть, в памяти сжатым
+ * или вытесненным на диск (см. {@link TextStorage}). Экземпляр неизменяемый;
+ * при изменении текста или способа хранения заметка получает новый.
+ */
+interface NoteBody {
+
+    /** Оценка заголовка объекта в куче (64-битная JVM со сжатыми ссылками). */
+    int OBJECT_OVERHEAD = 16;
+    /** Оценка строки без содержимого: объект String и заголовок массива. */
+    int STRING_OVERHEAD = 40;
+
+    /**
+     * @return Исходный текст.
+     */
+    String text();
+
+    /**
+     * @return Текст в форме для поиска.
+     */
+    String normalizedText();
+
+    /**
+     * @return true, если текст в форме для поиска содержит шаблон.
+     */
+    default boolean matches(TextPattern pattern) {
+        return pattern.matches(normalizedText());
+    }
+
+    /**
+     * Отмечает слова автомата, найденные в тексте в форме для поиска.
+     */
+    default void scan(AhoCorasick automaton, BitSet found) {
+        automaton.scan(normalizedText(), found);
+    }
+
+    /**
+     * @return Сколько байт занимает исходный текст, если хранить его строкой.
+     */
+    int originalBytes();
+
+    /**
+     * @return Сколько байт занимает текст в хранилище (в памяти или на диске).
+     */
+    int storedBytes();
+
+    /**
+     * @return Оценка того, сколько это тело занимает в куче вместе с заголовками объектов.
+     */
+    int heapBytes();
+
+    /**
+     * @return true, если текст хранится сжатым.
+     */
+    default boolean isCompressed() {
+        return false;
+    }
+
+    /**
+     * @return true, если текст вытеснен на диск.
+     */
+    default boolean isSpilled() {
+        return false;
+    }
+
+    /**
+     * Текст без сжатия: исходная строка и заранее посчитанная форма для поиска.
+     */
+    record Plain(String text, String normalizedText) implements NoteBody {
+
+        @Override
+        public int originalBytes() {
+            return payloadBytes(text);
+        }
+
+        @Override
+        public int storedBytes() {
+            // Нормализатор возвращает ту же строку, если менять в ней нечего
+            return normalizedText == text ? payloadBytes(text) : payloadBytes(text) + payloadBytes(normalizedText);
+        }
+
+        @Override
+        public int heapBytes() {
+            int strings = normalizedText == text ? 1 : 2;
+            return OBJECT_OVERHEAD + strings * STRING_OVERHEAD + storedBytes();
+        }
+    }
+
+    /**
+     * Оценка размера содержимого строки: 1 байт на символ для Latin-1 и 2 байта для остальных строк
+     * (так строки хранятся в JVM с компактными строками).
+     */
+    static int payloadBytes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                return value.length() * 2;
+            }
+        }
+        return value.length();
+    }
+}
@@ -0,0 +1,70 @@
+package ru.mentee.power.tdd.notes;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Событие изменения заметки в ленте изменений {@link NoteService}.
+ * Поля, не относящиеся к типу события, равны null.
+ *
+ * @param sequence Порядковый номер события в ленте (с 1, без пропусков).
+ * @param type Тип изменения.
+ * @param noteId ID заметки.
+ * @param title Заголовок (ADDED, UPDATED).
+ * @param text Текст (ADDED, UPDATED).
+ * @param tags Теги заметки (ADDED).
+ * @param tag Добавленный или удаленный тег (TAG_ADDED, TAG_REMOVED).
+ * @param creationDate Дата создания (ADDED).
+ * @param version Версия заметки после изменения ({@link Note#getVersion()}); реплика выставляет ее заметке,
+ *                чтобы условные изменения по версии, прочитанной с реплики, проверялись на первичном сервисе
+ *                так же, как по версии с него самого. Для DELETED — 0.
+ */
+public record NoteEvent(long sequence, Type type, int noteId, String title, String text,
+                        Set<String> tags, String tag, LocalDate creationDate, long version) {
+
+    public enum Type {
+        ADDED, UPDATED, TAG_ADDED, TAG_REMOVED, DELETED
+    }
+
+    /**
+     * @return Оценка того, сколько событие занимает в куче вместе со строками и тегами.
+     */
+    long estimatedBytes() {
+        long bytes = 2L * NoteBody.OBJECT_OVERHEAD + stringBytes(title) + stringBytes(text) + stringBytes(tag);
+        if (tags != null) {
+            for (String value : tags) {
+                bytes += stringBytes(value);
+            }
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : NoteBody.STRING_OVERHEAD + NoteBody.payloadBytes(value);
+    }
+
+    static NoteEvent added(long sequence, Note note) {
+        return added(sequence, note, note.getText());
+    }
+
+    static NoteEvent added(long sequence, Note note, String text) {
+        return new NoteEvent(sequence, Type.ADDED, note.getId(), note.getTitle(), text,
+                Set.copyOf(note.getTags()), null, note.getCreationDate(), note.getVersion());
+    }
+
+    static NoteEvent updated(long sequence, int noteId, String title, String text, long version) {
+        return new NoteEvent(sequence, Type.UPDATED, noteId, title, text, null, null, null, version);
+    }
+
+    static NoteEvent tagAdded(long sequence, int noteId, String tag, long version) {
+        return new NoteEvent(sequence, Type.TAG_ADDED, noteId, null, null, null, tag, null, version);
+    }
+
+    static NoteEvent tagRemoved(long sequence, int noteId, String tag, long version) {
+        return new NoteEvent(sequence, Type.TAG_REMOVED, noteId, null, null, null, tag, null, version);
+    }
+
+    static NoteEvent deleted(long sequence, int noteId) {
+        return new NoteEvent(sequence, Type.DELETED, noteId, null, null, null, null, null, 0);
+    }
+}
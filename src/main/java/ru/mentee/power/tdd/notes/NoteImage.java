@@ -0,0 +1,532 @@
+package ru.mentee.power.tdd.notes;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Образ заметок сервиса в файле: заметки, словарь тегов, битовые карты тегов, матрица совместной встречаемости
+ * и префиксное дерево заголовков. Файл отображается в память и не разбирается целиком: таблицы имеют
+ * фиксированную ширину записи, а тексты заметок остаются в отображении и декодируются только при обращении
+ * (см. {@link MappedBody}). Дерево заголовков восстанавливается узел за узлом, без повторной вставки строк.
+ *
+ * <p>Формат (все числа big-endian):
+ * <pre>
+ * заголовок   MAGIC, VERSION, нормализатор, nextId, число заметок, тегов и пар, смещения таблиц, длина файла
+ * данные      строки UTF-8 (заголовки, тексты, теги) и слова битовых карт тегов
+ * ссылки      ID тегов заметок, int
+ * теги        [смещение строки, длина, смещение карты, число слов карты] на тег
+ * заметки     записи по {@link #NOTE_RECORD_BYTES} байт
+ * пары        [тег, тег, счетчик] на пару тегов
+ * заголовки   узлы префиксного дерева в прямом порядке обхода (см. {@link PrefixIndex#writeTo})
+ * </pre>
+ * Образ с другой версией формата не открывается: его нужно пересобрать из исходных данных.
+ * Каждая запись проверяется при чтении: участки строк и карт должны лежать внутри файла, ссылки на теги —
+ * указывать в словарь, ID заметок — возрастать. Поврежденный образ дает IOException, а не исключение
+ * из середины разбора.
+ */
+final class NoteImage {
+
+    static final int MAGIC = 0x4E494D47; // "NIMG"
+    static final int VERSION = 2;
+
+    static final int HEADER_BYTES = 80;
+    static final int TAG_RECORD_BYTES = 24;
+    static final int NOTE_RECORD_BYTES = 64;
+    static final int PAIR_RECORD_BYTES = 12;
+
+    // Длина нормализованной строки, если она совпадает с исходной и не хранится отдельно
+    private static final int SAME_AS_ORIGINAL = -1;
+
+    private final ByteBuffer image;
+    private final TextNormalizer normalizer;
+    private final int nextId;
+    private final int noteCount;
+    private final int tagCount;
+    private final int pairCount;
+    private final int tagRefsOffset;
+    private final int tagTableOffset;
+    private final int noteTableOffset;
+    private final int pairTableOffset;
+    private final int titleIndexOffset;
+
+    private NoteImage(ByteBuffer image) throws IOException {
+        this.image = image;
+        if (image.capacity() < HEADER_BYTES || image.getInt(0) != MAGIC) {
+            throw new IOException("Not a note image");
+        }
+        int version = image.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported note image version " + version + ", expected " + VERSION);
+        }
+        int normalizerOrdinal = image.getInt(8);
+        if (normalizerOrdinal < 0 || normalizerOrdinal >= TextNormalizer.values().length) {
+            throw new IOException("Corrupted note image: unknown normalizer " + normalizerOrdinal);
+        }
+        this.normalizer = TextNormalizer.values()[normalizerOrdinal];
+        this.nextId = image.getInt(12);
+        this.noteCount = image.getInt(16);
+        this.tagCount = image.getInt(20);
+        this.pairCount = image.getInt(24);
+        long length = image.getLong(72);
+        if (length != image.capacity()) {
+            throw new IOException("Corrupted note image: expected " + length + " bytes, found " + image.capacity());
+        }
+        this.tagRefsOffset = table(image.getLong(32), 0, 0);
+        this.tagTableOffset = table(image.getLong(40), tagCount, TAG_RECORD_BYTES);
+        this.noteTableOffset = table(image.getLong(48), noteCount, NOTE_RECORD_BYTES);
+        this.pairTableOffset = table(image.getLong(56), pairCount, PAIR_RECORD_BYTES);
+        this.titleIndexOffset = table(image.getLong(64), 0, 0);
+    }
+
+    private int table(long offset, int records, int recordBytes) throws IOException {
+        if (records < 0 || offset < HEADER_BYTES || offset + (long) records * recordBytes > image.capacity()) {
+            throw new IOException("Corrupted note image: table at " + offset + " with " + records + " records is out of bounds");
+        }
+        return (int) offset;
+    }
+
+    // Участок [offset, offset + length) записи должен лежать внутри образа
+    private int range(long offset, long length, String what) throws IOException {
+        if (offset < HEADER_BYTES || length < 0 || offset + length > image.capacity()) {
+            throw new IOException("Corrupted note image: " + what + " at " + offset + " with " + length
+                    + " bytes is out of bounds");
+        }
+        return (int) offset;
+    }
+
+    private int tagId(int tagId) throws IOException {
+        if (tagId < 0 || tagId >= tagCount) {
+            throw new IOException("Corrupted note image: tag " + tagId + " is not in the dictionary of " + tagCount);
+        }
+        return tagId;
+    }
+
+    /**
+     * Отображает образ в память и проверяет заголовок. Файл нельзя перезаписывать на месте, пока образ открыт;
+     * {@link #write} поэтому пишет во временный файл и подменяет образ переименованием.
+     */
+    static NoteImage open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Note image is too large to map: " + size + " bytes");
+            }
+            // Отображение остается действительным и после закрытия канала
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new NoteImage(mapped);
+        }
+    }
+
+    TextNormalizer normalizer() {
+        return normalizer;
+    }
+
+    int nextId() {
+        return nextId;
+    }
+
+    /**
+     * @return Словарь тегов: индекс в массиве — ID тега в образе.
+     */
+    String[] readTags() throws IOException {
+        String[] tags = new String[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            int record = tagTableOffset + i * TAG_RECORD_BYTES;
+            int length = image.getInt(record + 8);
+            tags[i] = string(range(image.getLong(record), length, "tag " + i), length);
+        }
+        return tags;
+    }
+
+    /**
+     * Восстанавливает статистику и индекс тегов из готовых битовых карт, не перебирая заметки.
+     */
+    void restoreTags(String[] tags, TagStatistics statistics, PrefixIndex tagIndex) throws IOException {
+        for (int i = 0; i < tagCount; i++) {
+            int record = tagTableOffset + i * TAG_RECORD_BYTES;
+            int words = image.getInt(record + 20);
+            int postingOffset = range(image.getLong(record + 12), (long) words * Long.BYTES, "posting of tag " + i);
+            BitSet ids = BitSet.valueOf(image.slice(postingOffset, words * Long.BYTES).asLongBuffer());
+            statistics.restorePosting(tags[i], ids);
+            tagIndex.add(tags[i], ids.cardinality());
+        }
+        for (int i = 0; i < pairCount; i++) {
+            int record = pairTableOffset + i * PAIR_RECORD_BYTES;
+            int count = image.getInt(record + 8);
+            if (count <= 0) {
+                throw new IOException("Corrupted note image: pair " + i + " has count " + count);
+            }
+            statistics.restorePair(tags[tagId(image.getInt(record))], tags[tagId(image.getInt(record + 4))], count);
+        }
+    }
+
+    /**
+     * Восстанавливает префиксное дерево заголовков в пустой индекс.
+     */
+    void restoreTitleIndex(PrefixIndex titleIndex) throws IOException {
+        try {
+            titleIndex.readFrom(image.slice(titleIndexOffset, image.capacity() - titleIndexOffset));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted note image: title index is truncated", e);
+        }
+    }
+
+    /**
+     * Создает заметки образа. Тексты не декодируются: заметка получает {@link MappedBody}.
+     */
+    void forEachNote(TextStorage storage, String[] tags, Consumer<Note> consumer) throws IOException {
+        int previousId = 0;
+        for (int i = 0; i < noteCount; i++) {
+            int record = noteTableOffset + i * NOTE_RECORD_BYTES;
+            int id = image.getInt(record);
+            int tagRef = image.getInt(record + 4);
+            int noteTagCount = image.getInt(record + 8);
+            int originalBytes = image.getInt(record + 12);
+            LocalDate creationDate = creationDate(image.getLong(record + 16), id);
+            int titleOffset = (int) image.getLong(record + 24);
+            int titleLength = image.getInt(record + 32);
+            int normalizedTitleLength = image.getInt(record + 36);
+            int textOffset = (int) image.getLong(record + 40);
+            int textLength = image.getInt(record + 48);
+            int normalizedTextLength = image.getInt(record + 52);
+            long version = image.getLong(record + 56);
+
+            if (id <= previousId || id >= nextId) {
+                throw new IOException("Corrupted note image: note " + i + " has id " + id + " after " + previousId
+                        + " with next id " + nextId);
+            }
+            previousId = id;
+            if (version < 1) {
+                throw new IOException("Corrupted note image: note " + id + " has version " + version);
+            }
+            range(titleOffset, withNormalized(titleLength, normalizedTitleLength), "title of note " + id);
+            range(textOffset, withNormalized(textLength, normalizedTextLength), "text of note " + id);
+            range(tagRefsOffset + (long) tagRef * Integer.BYTES, (long) noteTagCount * Integer.BYTES,
+                    "tags of note " + id);
+
+            String title = string(titleOffset, titleLength);
+            String normalizedTitle = normalizedTitleLength == SAME_AS_ORIGINAL
+                    ? title : string(titleOffset + titleLength, normalizedTitleLength);
+            String[] noteTags = new String[noteTagCount];
+            for (int t = 0; t < noteTagCount; t++) {
+                noteTags[t] = tags[tagId(image.getInt(tagRefsOffset + (tagRef + t) * Integer.BYTES))];
+            }
+            Set<String> tagSet;
+            try {
+                tagSet = Set.of(noteTags);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupted note image: note " + id + " has a repeated tag", e);
+            }
+            MappedBody body = new MappedBody(image, textOffset, textLength, normalizedTextLength, originalBytes);
+            Note note = new Note(id, title, normalizedTitle, storage.adopt(body), storage, creationDate, tagSet);
+            // Версия переживает перезапуск: иначе условное изменение со старой версией прошло бы проверку
+            note.restoreVersion(version);
+            consumer.accept(note);
+        }
+    }
+
+    // Длина строки вместе с нормализованной формой, которая лежит сразу за ней
+    private static long withNormalized(int length, int normalizedLength) {
+        if (length < 0 || normalizedLength < SAME_AS_ORIGINAL) {
+            return -1;
+        }
+        return normalizedLength == SAME_AS_ORIGINAL ? length : (long) length + normalizedLength;
+    }
+
+    private static LocalDate creationDate(long epochDay, int id) throws IOException {
+        try {
+            return LocalDate.ofEpochDay(epochDay);
+        } catch (DateTimeException e) {
+            throw new IOException("Corrupted note image: note " + id + " has creation day " + epochDay, e);
+        }
+    }
+
+    private String string(int offset, int length) {
+        return decode(image, offset, length);
+    }
+
+    private static String decode(ByteBuffer image, int offset, int length) {
+        byte[] utf8 = new byte[length];
+        image.get(offset, utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Записывает образ. Файл сначала пишется рядом под временным именем и затем подменяет path,
+     * так что уже открытые отображения старого образа остаются целыми.
+     * Вызывается под блокировкой сервиса, чтобы заметки и статистика были согласованы.
+     */
+    static void write(Path path, TextNormalizer normalizer, int nextId, Collection<Note> notes,
+                      TagStatistics statistics, PrefixIndex titleIndex) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeTo(channel, normalizer, nextId, notes, statistics, titleIndex);
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeTo(FileChannel channel, TextNormalizer normalizer, int nextId, Collection<Note> notes,
+                                TagStatistics statistics, PrefixIndex titleIndex) throws IOException {
+        Sink data = new Sink(channel, HEADER_BYTES);
+
+        List<String> tags = new ArrayList<>(statistics.tags());
+        tags.sort(Comparator.naturalOrder());
+        Map<String, Integer> tagIds = new HashMap<>();
+        long[] tagRecords = new long[tags.size() * 2];
+        int[] tagLengths = new int[tags.size() * 2];
+        for (int i = 0; i < tags.size(); i++) {
+            String tag = tags.get(i);
+            tagIds.put(tag, i);
+            byte[] utf8 = tag.getBytes(StandardCharsets.UTF_8);
+            tagRecords[2 * i] = data.position();
+            tagLengths[2 * i] = utf8.length;
+            data.putBytes(utf8);
+            long[] words = statistics.posting(tag).toLongArray();
+            tagRecords[2 * i + 1] = data.position();
+            tagLengths[2 * i + 1] = words.length;
+            for (long word : words) {
+                data.putLong(word);
+            }
+        }
+
+        List<Note> sorted = new ArrayList<>(notes);
+        sorted.sort(Comparator.comparingInt(Note::getId));
+        ByteBuffer noteTable = ByteBuffer.allocate(Math.multiplyExact(sorted.size(), NOTE_RECORD_BYTES));
+        List<Integer> tagRefs = new ArrayList<>();
+        for (Note note : sorted) {
+            String title = note.getTitle();
+            String text = note.peekText();
+            noteTable.putInt(note.getId());
+            noteTable.putInt(tagRefs.size());
+            noteTable.putInt(note.getTags().size());
+            noteTable.putInt(NoteBody.payloadBytes(text));
+            noteTable.putLong(note.getCreationDate().toEpochDay());
+            putWithNormalized(data, noteTable, title, note.getNormalizedTitle());
+            putWithNormalized(data, noteTable, text, note.getNormalizedText());
+            noteTable.putLong(note.getVersion());
+            for (String tag : note.getTags()) {
+                tagRefs.add(tagIds.get(tag));
+            }
+        }
+
+        long tagRefsOffset = data.position();
+        for (int tagId : tagRefs) {
+            data.putInt(tagId);
+        }
+        long tagTableOffset = data.position();
+        for (int i = 0; i < tags.size(); i++) {
+            data.putLong(tagRecords[2 * i]);
+            data.putInt(tagLengths[2 * i]);
+            data.putLong(tagRecords[2 * i + 1]);
+            data.putInt(tagLengths[2 * i + 1]);
+        }
+        long noteTableOffset = data.position();
+        data.putBytes(noteTable.array());
+        long pairTableOffset = data.position();
+        int pairCount = 0;
+        for (int i = 0; i < tags.size(); i++) {
+            for (Map.Entry<String, Integer> pair : statistics.coOccurringWith(tags.get(i)).entrySet()) {
+                int other = tagIds.get(pair.getKey());
+                // Матрица симметрична: каждая пара пишется один раз
+                if (other > i) {
+                    data.putInt(i);
+                    data.putInt(other);
+                    data.putInt(pair.getValue());
+                    pairCount++;
+                }
+            }
+        }
+        long titleIndexOffset = data.position();
+        DataOutputStream titles = new DataOutputStream(data);
+        titleIndex.writeTo(titles);
+        titles.flush();
+        long length = data.position();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Note image would be too large to map: " + length + " bytes");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(normalizer.ordinal()).putInt(nextId)
+                .putInt(sorted.size()).putInt(tags.size()).putInt(pairCount).putInt(0)
+                .putLong(tagRefsOffset).putLong(tagTableOffset).putLong(noteTableOffset).putLong(pairTableOffset)
+                .putLong(titleIndexOffset).putLong(length);
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    // Пишет строку, за ней — нормализованную форму, если она отличается; в запись заметки — смещение и обе длины
+    private static void putWithNormalized(Sink data, ByteBuffer record, String value, String normalized)
+            throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        record.putLong(data.position());
+        record.putInt(utf8.length);
+        data.putBytes(utf8);
+        if (normalized.equals(value)) {
+            record.putInt(SAME_AS_ORIGINAL);
+        } else {
+            byte[] normalizedUtf8 = normalized.getBytes(StandardCharsets.UTF_8);
+            record.putInt(normalizedUtf8.length);
+            data.putBytes(normalizedUtf8);
+        }
+    }
+
+    /**
+     * Буферизованная последовательная запись в канал с учетом позиции.
+     */
+    private static final class Sink extends OutputStream {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long position;
+
+        Sink(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        long position() {
+            return position + buffer.position();
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensure(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            int written = 0;
+            while (written < length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), length - written);
+                buffer.put(bytes, offset + written, chunk);
+                written += chunk;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Текст заметки, который остается в отображенном в память образе. В куче — только положение текста,
+     * поэтому для учета памяти такое тело считается вытесненным: при первом обращении через
+     * {@link Note#getText()} текст переносится в кучу (см. {@link TextStorage#reload(NoteBody)}),
+     * а поиск читает его прямо из образа.
+     */
+    static final class MappedBody implements NoteBody {
+
+        private final ByteBuffer image;
+        private final int offset;
+        private final int length;
+        private final int normalizedLength; // SAME_AS_ORIGINAL, если форма для поиска совпадает с текстом
+        private final int originalBytes;
+
+        MappedBody(ByteBuffer image, int offset, int length, int normalizedLength, int originalBytes) {
+            this.image = image;
+            this.offset = offset;
+            this.length = length;
+            this.normalizedLength = normalizedLength;
+            this.originalBytes = originalBytes;
+        }
+
+        /**
+         * @return Тот же текст в куче без повторной нормализации.
+         */
+        NoteBody materialize() {
+            String text = text();
+            return new NoteBody.Plain(text, normalizedLength == SAME_AS_ORIGINAL ? text : normalizedText());
+        }
+
+        @Override
+        public String text() {
+            return decode(image, offset, length);
+        }
+
+        @Override
+        public String normalizedText() {
+            return normalizedLength == SAME_AS_ORIGINAL ? text() : decode(image, offset + length, normalizedLength);
+        }
+
+        @Override
+        public int originalBytes() {
+            return originalBytes;
+        }
+
+        @Override
+        public int storedBytes() {
+            return length + Math.max(normalizedLength, 0);
+        }
+
+        @Override
+        public int heapBytes() {
+            return TextStorage.SPILLED_BODY_BYTES;
+        }
+
+        @Override
+        public boolean isSpilled() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package ru.mentee.power.tdd.notes;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Архивный сегмент {@link NoteService}: заметки, созданные в одном месяце, упакованные в столбцы.
+ * Большой месяц делится на несколько сегментов по {@link #MAX_CHARS} символов строк (см. {@link #split}),
+ * чтобы смещения в строках оставались в пределах int, а один сегмент не требовал огромного непрерывного буфера.
+ * Вместо объекта {@link Note} с набором тегов и телом на каждую заметку сегмент держит несколько массивов,
+ * отсортированных по ID (поиск заметки — двоичный поиск), одну строку со всеми заголовками и текстами
+ * в форме для поиска (поиск по тексту проходит по ее участкам без выделения памяти) и словарь тегов сегмента.
+ * Исходные заголовок и текст хранятся отдельно, только если отличаются от формы для поиска.
+ * Содержимое сегмента не меняется; изменяется только отметка об удалении, под блокировкой записи сервиса.
+ * Чтобы изменить заметку, сервис переносит ее обратно в голову, а в сегменте отмечает удаленной.
+ */
+final class NoteSegment {
+
+    /** Сколько символов строк (форма для поиска и исходные строки вместе) собирается в один сегмент. */
+    static final int MAX_CHARS = 1 << 22;
+
+    private final YearMonth bucket;
+    private final int[] ids;
+    private final int[] epochDays;
+    private final long[] versions;
+    // Участки заметки i: заголовок [2i, 2i + 1), текст [2i + 1, 2i + 2) в соответствующей строке
+    private final String search;
+    private final int[] searchOffsets;
+    private final String originals;
+    private final int[] originalOffsets;
+    // Бит 2i (заголовок) или 2i + 1 (текст) установлен, если исходная строка хранится в originals
+    private final BitSet ownOriginals;
+    private final String[] tagNames;
+    private final int[] tagOffsets;
+    private final int[] tagRefs;
+    private final BitSet deleted = new BitSet();
+    private final long bytes;
+
+    /**
+     * Заметка в виде, из которого строится сегмент.
+     */
+    record Entry(int id, String title, String normalizedTitle, String text, String normalizedText,
+                 LocalDate creationDate, Set<String> tags, long version) {
+
+        static Entry of(Note note) {
+            return new Entry(note.getId(), note.getTitle(), note.getNormalizedTitle(), note.peekText(),
+                    note.getNormalizedText(), note.getCreationDate(), note.getTags(), note.getVersion());
+        }
+
+        /**
+         * @return Заметка с этим содержимым; текст сохраняется заново через storage.
+         */
+        Note toNote(TextStorage storage) {
+            Note note = new Note(id, title, normalizedTitle, storage.store(text), storage, creationDate, tags);
+            note.restoreVersion(version);
+            return note;
+        }
+    }
+
+    private NoteSegment(YearMonth bucket, List<Entry> entries) {
+        this.bucket = bucket;
+        int count = entries.size();
+        ids = new int[count];
+        epochDays = new int[count];
+        versions = new long[count];
+        searchOffsets = new int[2 * count + 1];
+        originalOffsets = new int[2 * count + 1];
+        ownOriginals = new BitSet(2 * count);
+        tagOffsets = new int[count + 1];
+        StringBuilder searchBuilder = new StringBuilder();
+        StringBuilder originalBuilder = new StringBuilder();
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int[] refs = new int[count];
+        int tagCount = 0;
+        for (int i = 0; i < count; i++) {
+            Entry entry = entries.get(i);
+            ids[i] = entry.id();
+            epochDays[i] = Math.toIntExact(entry.creationDate().toEpochDay());
+            versions[i] = entry.version();
+            append(2 * i, entry.title(), entry.normalizedTitle(), searchBuilder, originalBuilder);
+            append(2 * i + 1, entry.text(), entry.normalizedText(), searchBuilder, originalBuilder);
+            for (String tag : entry.tags()) {
+                if (tagCount == refs.length) {
+                    refs = Arrays.copyOf(refs, refs.length * 2);
+                }
+                refs[tagCount++] = dictionary.computeIfAbsent(tag, t -> dictionary.size());
+            }
+            tagOffsets[i + 1] = tagCount;
+        }
+        search = searchBuilder.toString();
+        originals = originalBuilder.toString();
+        tagNames = dictionary.keySet().toArray(new String[0]);
+        tagRefs = Arrays.copyOf(refs, tagCount);
+        bytes = estimateBytes();
+    }
+
+    /**
+     * Строит сегменты месяца из заметок (порядок не важен): заметки по возрастанию ID набираются в сегмент,
+     * пока их строки помещаются в maxChars. Заметка длиннее maxChars получает отдельный сегмент.
+     * @param bucket Месяц создания заметок.
+     * @param entries Заметки (не пустой список).
+     * @param maxChars Предел символов строк одного сегмента.
+     * @return Сегменты по возрастанию ID; их диапазоны ID не пересекаются.
+     */
+    static List<NoteSegment> split(YearMonth bucket, List<Entry> entries, int maxChars) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingInt(Entry::id));
+        List<NoteSegment> segments = new ArrayList<>();
+        int from = 0;
+        long chars = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            long entryChars = chars(sorted.get(i));
+            if (i > from && chars + entryChars > maxChars) {
+                segments.add(new NoteSegment(bucket, sorted.subList(from, i)));
+                from = i;
+                chars = 0;
+            }
+            chars += entryChars;
+        }
+        segments.add(new NoteSegment(bucket, sorted.subList(from, sorted.size())));
+        return segments;
+    }
+
+    private static long chars(Entry entry) {
+        long chars = (long) entry.normalizedTitle().length() + entry.normalizedText().length();
+        if (!entry.title().equals(entry.normalizedTitle())) {
+            chars += entry.title().length();
+        }
+        if (!entry.text().equals(entry.normalizedText())) {
+            chars += entry.text().length();
+        }
+        return chars;
+    }
+
+    private void append(int field, String original, String normalized, StringBuilder searchBuilder,
+                        StringBuilder originalBuilder) {
+        searchBuilder.append(normalized);
+        searchOffsets[field + 1] = searchBuilder.length();
+        if (!original.equals(normalized)) {
+            originalBuilder.append(original);
+            ownOriginals.set(field);
+        }
+        originalOffsets[field + 1] = originalBuilder.length();
+    }
+
+    private long estimateBytes() {
+        long total = NoteBody.OBJECT_OVERHEAD * 12L
+                + 16L * ids.length                      // ids, epochDays, versions
+                + 4L * (searchOffsets.length + originalOffsets.length + tagOffsets.length + tagRefs.length)
+                + 2L * NoteBody.STRING_OVERHEAD + NoteBody.payloadBytes(search) + NoteBody.payloadBytes(originals)
+                + 2L * (2 * ids.length / 8 + 8);          // битовые карты
+        for (String tag : tagNames) {
+            total += 4 + NoteBody.STRING_OVERHEAD + NoteBody.payloadBytes(tag);
+        }
+        return total;
+    }
+
+    YearMonth bucket() {
+        return bucket;
+    }
+
+    /**
+     * @return Наименьший ID сегмента, включая удаленные заметки (сегмент не бывает пустым).
+     */
+    int minId() {
+        return ids[0];
+    }
+
+    /**
+     * @return Наибольший ID сегмента, включая удаленные заметки.
+     */
+    int maxId() {
+        return ids[ids.length - 1];
+    }
+
+    /**
+     * @return Сколько позиций в сегменте, включая удаленные заметки.
+     */
+    int size() {
+        return ids.length;
+    }
+
+    int liveCount() {
+        return ids.length - deleted.cardinality();
+    }
+
+    int deletedCount() {
+        return deleted.cardinality();
+    }
+
+    /**
+     * @return Оценка памяти сегмента (удаленные заметки занимают ее до пересборки сегмента).
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @param id ID заметки.
+     * @return Позиция заметки или -1, если ее нет в сегменте или она удалена.
+     */
+    int positionOf(int id) {
+        if (ids.length == 0 || id < ids[0] || id > ids[ids.length - 1]) {
+            return -1;
+        }
+        int position = Arrays.binarySearch(ids, id);
+        return position >= 0 && !deleted.get(position) ? position : -1;
+    }
+
+    boolean isLive(int position) {
+        return !deleted.get(position);
+    }
+
+    int id(int position) {
+        return ids[position];
+    }
+
+    long version(int position) {
+        return versions[position];
+    }
+
+    /**
+     * @return true, если шаблон есть в заголовке или тексте заметки в форме для поиска.
+     */
+    boolean matches(int position, TextPattern pattern) {
+        return pattern.matches(search, searchOffsets[2 * position], searchOffsets[2 * position + 1])
+                || pattern.matches(search, searchOffsets[2 * position + 1], searchOffsets[2 * position + 2]);
+    }
+
+    /**
+     * Отмечает слова автомата, найденные в заголовке и тексте заметки; текст не просматривается,
+     * если все слова нашлись в заголовке.
+     */
+    void scan(int position, AhoCorasick automaton, BitSet found) {
+        automaton.scan(search, searchOffsets[2 * position], searchOffsets[2 * position + 1], found);
+        if (found.cardinality() < automaton.patternCount()) {
+            automaton.scan(search, searchOffsets[2 * position + 1], searchOffsets[2 * position + 2], found);
+        }
+    }
+
+    Set<String> tags(int position) {
+        String[] tags = new String[tagOffsets[position + 1] - tagOffsets[position]];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = tagNames[tagRefs[tagOffsets[position] + i]];
+        }
+        return Set.of(tags);
+    }
+
+    /**
+     * @return Содержимое заметки (строки копируются из столбцов сегмента).
+     */
+    Entry entry(int position) {
+        String normalizedTitle = searchField(2 * position);
+        String normalizedText = searchField(2 * position + 1);
+        return new Entry(ids[position], originalField(2 * position, normalizedTitle), normalizedTitle,
+                originalField(2 * position + 1, normalizedText), normalizedText,
+                LocalDate.ofEpochDay(epochDays[position]), tags(position), versions[position]);
+    }
+
+    /**
+     * Заметка для результата запроса: отдельный объект, не связанный с сегментом. Его изменения
+     * в сервис не попадают (как и у удаленной заметки), а учет памяти сервиса он не затрагивает.
+     */
+    Note view(int position, TextStorage storage) {
+        Entry entry = entry(position);
+        Note note = new Note(entry.id(), entry.title(), entry.normalizedTitle(),
+                new NoteBody.Plain(entry.text(), entry.normalizedText()), storage, entry.creationDate(), entry.tags());
+        note.restoreVersion(entry.version());
+        return note;
+    }
+
+    /**
+     * @return Живые заметки сегмента для пересборки.
+     */
+    List<Entry> liveEntries() {
+        List<Entry> entries = new ArrayList<>(liveCount());
+        for (int position = deleted.nextClearBit(0); position < ids.length; position = deleted.nextClearBit(position + 1)) {
+            entries.add(entry(position));
+        }
+        return entries;
+    }
+
+    /**
+     * Отмечает заметку удаленной. Вызывается под блокировкой записи сервиса.
+     */
+    void delete(int position) {
+        deleted.set(position);
+    }
+
+    private String searchField(int field) {
+        return search.substring(searchOffsets[field], searchOffsets[field + 1]);
+    }
+
+    // Если исходная строка совпадает с формой для поиска, возвращается тот же экземпляр, как у нормализатора
+    private String originalField(int field, String normalized) {
+        return ownOriginals.get(field)
+                ? originals.substring(originalOffsets[field], originalOffsets[field + 1])
+                : normalized;
+    }
+}
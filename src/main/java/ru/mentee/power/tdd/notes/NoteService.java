@@ -1,15 +1,92 @@
 package ru.mentee.power.tdd.notes;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
+/**
+ * Сервис заметок. Потокобезопасен: поиск идет под блокировкой чтения, изменения — под блокировкой записи,
+ * так что индексы и статистика всегда согласованы с заметками. Чтобы несколько клиентов не затирали
+ * правки друг друга, у изменений есть условные варианты с проверкой версии заметки (см. {@link UpdateResult}).
+ * Старые заметки можно перенести в архив — неизменяемые сегменты по месяцам создания
+ * (см. {@link #archiveNotesCreatedBefore(LocalDate)}); запросы возвращают заметки из архива наравне с остальными.
+ */
 public class NoteService {
 
     private final Map<Integer, Note> notes = new HashMap<>();
 
     private final AtomicInteger nextId = new AtomicInteger(1);
 
+    private final TextNormalizer normalizer;
+    private final TextStorage textStorage;
+    private final long memoryBudget;
+    // Оценка памяти заметок без текстов; тексты учитывает textStorage
+    private final AtomicLong metadataBytes = new AtomicLong();
+    private final LongAdder spillFailures = new LongAdder();
+    // ID заметок с текстом в памяти в порядке появления: кандидаты на вытеснение (только при бюджете памяти).
+    // Пополняется и читателями, поэтому неблокирующая; ID удаленных заметок выбрасываются при проверке
+    private final Queue<Integer> evictionQueue = new ConcurrentLinkedQueue<>();
+
+    // Индексы для автодополнения; обновляются всеми методами, меняющими заметки
+    private final PrefixIndex titleIndex = new PrefixIndex();
+    private final PrefixIndex tagIndex = new PrefixIndex();
+    private final TagStatistics tagStatistics = new TagStatistics();
+
+    private final ChangeFeed changeFeed;
+
+    // Архив: сегменты по месяцам создания, упорядочены по месяцу (большой месяц занимает несколько
+    // сегментов подряд, см. NoteSegment.MAX_CHARS). Индексы и статистика тегов выше
+    // общие для головы (notes) и архива: они ключуются ID и не зависят от того, где лежит заметка
+    private final List<NoteSegment> segments = new ArrayList<>();
+    private SegmentIndex segmentIndex = SegmentIndex.EMPTY;
+    private final AtomicLong archiveBytes = new AtomicLong();
+    // Хранилище для заметок, которые запросы возвращают из архива: их память сервис не учитывает
+    private final TextStorage archiveViews;
+    private final int archiveAgeDays;
+    private LocalDate lastArchiveDay;
+
+    // Сколько текстов брать для обучения словаря сжатия
+    private static final int TRAINING_SAMPLE_SIZE = 2000;
+
+    private final boolean readOnly;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public NoteService() {
+        this(NoteServiceOptions.defaults());
+    }
+
+    /**
+     * @param normalizer Как сравнивать текст при поиске (например, без учета диакритики).
+     */
+    public NoteService(TextNormalizer normalizer) {
+        this(NoteServiceOptions.defaults().withNormalizer(normalizer));
+    }
+
+    /**
+     * @param options Настройки сервиса.
+     */
+    public NoteService(NoteServiceOptions options) {
+        this.normalizer = options.getNormalizer();
+        this.textStorage = new TextStorage(normalizer, options.isTextCompression(), options.getTextCacheSize(),
+                options.getSpillDirectory());
+        this.memoryBudget = options.getMemoryBudget();
+        // Лента не вытесняется на диск, поэтому под бюджетом памяти ей достается не больше его четверти
+        this.changeFeed = new ChangeFeed(options.getChangeFeedCapacity(),
+                Math.min(options.getChangeFeedMaxBytes(), Math.max(1, memoryBudget / 4)));
+        this.readOnly = options.isReadOnly();
+        this.archiveViews = TextStorage.plain(normalizer);
+        this.archiveAgeDays = options.getArchiveAgeDays();
+    }
+
     // --- МЕТОДЫ ДЛЯ РЕАЛИЗАЦИИ ЧЕРЕЗ TDD --- //
 
     /**
@@ -20,13 +97,20 @@ public class NoteService {
      * @return Созданная заметка с присвоенным ID.
      */
     public Note addNote(String title, String text, Set<String> tags) {
-        int id = nextId.getAndIncrement();
-        Note note = new Note(id, title, text);
-        if(tags != null) {
-            tags.forEach(note::addTag);
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            Note note = new Note(nextId.getAndIncrement(), title, text, textStorage, LocalDate.now());
+            if(tags != null) {
+                tags.forEach(note::addTag);
+            }
+            insert(note, text);
+            archiveIfDue();
+            return note;
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
         }
-        notes.put(id, note);
-        return note;
     }
 
     /**
@@ -35,10 +119,19 @@ public class NoteService {
      * @return Optional с заметкой, если найдена, иначе Optional.empty().
      */
     public Optional<Note> getNoteById(int id) {
-        if(notes.containsKey(id)){
-            return Optional.of(notes.get(id));
+        Optional<Note> result;
+        lock.readLock().lock();
+        try {
+            Note note = notes.get(id);
+            if (note != null) {
+                touch(note);
+            }
+            result = Optional.ofNullable(note != null ? note : archived(id));
+        } finally {
+            lock.readLock().unlock();
         }
-        return Optional.empty();
+        enforceMemoryBudgetAfterRead();
+        return result;
     }
 
     /**
@@ -46,7 +139,12 @@ public class NoteService {
      * @return Неизменяемый список всех заметок.
      */
     public List<Note> getAllNotes() {
-        return List.copyOf(notes.values());
+        lock.readLock().lock();
+        try {
+            return List.copyOf(allNotes());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -57,13 +155,14 @@ public class NoteService {
      * @return true, если заметка найдена и обновлена, иначе false.
      */
     public boolean updateNoteText(int id, String newTitle, String newText) {
-        if(notes.containsKey(id)) {
-            Note note = notes.get(id);
-            note.setTitle(newTitle);
-            note.setText(newText);
-            return true;
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return update(id, newTitle, newText);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
@@ -73,14 +172,14 @@ public class NoteService {
      * @return true, если заметка найдена и тег добавлен, иначе false.
      */
     public boolean addTagToNote(int id, String tag) {
-        if(notes.containsKey(id)) {
-            Note note = notes.get(id);
-            if(!note.getTags().contains(tag)) {
-                note.addTag(tag);
-                return true;
-            }
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return addTag(id, tag);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
@@ -90,14 +189,99 @@ public class NoteService {
      * @return true, если заметка найдена и тег удален, иначе false.
      */
     public boolean removeTagFromNote(int id, String tag) {
-        if(notes.containsKey(id)) {
-            Note note = notes.get(id);
-            if(note.getTags().contains(tag)) {
-                note.removeTag(tag);
-                return true;
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return removeTag(id, tag);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Обновляет заголовок и текст, только если заметку никто не изменил с тех пор, как была прочитана ее версия.
+     * При конфликте ничего не ждет и не меняет: вызывающий перечитывает заметку и повторяет попытку.
+     * @param id ID заметки.
+     * @param expectedVersion Версия, которую видел вызывающий ({@link Note#getVersion()}).
+     * @param newTitle Новый заголовок.
+     * @param newText Новый текст.
+     * @return {@link UpdateResult#UPDATED}, {@link UpdateResult#CONFLICT} или {@link UpdateResult#NOT_FOUND}.
+     */
+    public UpdateResult updateNoteText(int id, long expectedVersion, String newTitle, String newText) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            UpdateResult rejected = checkVersion(id, expectedVersion);
+            if (rejected != null) {
+                return rejected;
             }
+            update(id, newTitle, newText);
+            return UpdateResult.UPDATED;
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет тег, только если версия заметки не изменилась.
+     * @param id ID заметки.
+     * @param expectedVersion Версия, которую видел вызывающий.
+     * @param tag Тег для добавления.
+     * @return {@link UpdateResult#UNCHANGED}, если тег уже был, иначе как у {@link #updateNoteText(int, long, String, String)}.
+     */
+    public UpdateResult addTagToNote(int id, long expectedVersion, String tag) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            UpdateResult rejected = checkVersion(id, expectedVersion);
+            if (rejected != null) {
+                return rejected;
+            }
+            return addTag(id, tag) ? UpdateResult.UPDATED : UpdateResult.UNCHANGED;
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет тег, только если версия заметки не изменилась.
+     * @param id ID заметки.
+     * @param expectedVersion Версия, которую видел вызывающий.
+     * @param tag Тег для удаления.
+     * @return {@link UpdateResult#UNCHANGED}, если тега не было, иначе как у {@link #updateNoteText(int, long, String, String)}.
+     */
+    public UpdateResult removeTagFromNote(int id, long expectedVersion, String tag) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            UpdateResult rejected = checkVersion(id, expectedVersion);
+            if (rejected != null) {
+                return rejected;
+            }
+            return removeTag(id, tag) ? UpdateResult.UPDATED : UpdateResult.UNCHANGED;
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
         }
-        return false;
+    }
+
+    // null, если заметка есть и ее версия совпадает с ожидаемой
+    private UpdateResult checkVersion(int id, long expectedVersion) {
+        long version;
+        Note note = notes.get(id);
+        if (note != null) {
+            version = note.getVersion();
+        } else {
+            NoteSegment segment = segmentOf(id);
+            if (segment == null) {
+                return UpdateResult.NOT_FOUND;
+            }
+            version = segment.version(segment.positionOf(id));
+        }
+        return version == expectedVersion ? null : UpdateResult.CONFLICT;
     }
 
     /**
@@ -106,27 +290,1020 @@ public class NoteService {
      * @return true, если заметка найдена и удалена, иначе false.
      */
     public boolean deleteNote(int id) {
-        if(notes.containsKey(id)) {
-            notes.remove(id);
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return delete(id);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет заметки по списку ID за один проход: индексы заголовков и тегов и статистика тегов
+     * обновляются один раз на строку, тег и пару тегов, а не на каждую заметку.
+     * @param ids ID заметок; несуществующие пропускаются.
+     * @return Сколько заметок удалено.
+     */
+    public int deleteNotes(Collection<Integer> ids) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return deleteAll(ids);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет все заметки, которые нашел бы {@link #findNotesByTags(Set)}.
+     * @param tags Теги, которые должны быть у заметки все сразу.
+     * @return Сколько заметок удалено.
+     */
+    public int deleteNotesByTags(Set<String> tags) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            if (tags.isEmpty()) {
+                return 0;
+            }
+            Set<String> normalizedTags = new HashSet<>();
+            for (String tag : tags) {
+                normalizedTags.add(Note.normalizeTag(tag));
+            }
+            return deleteAll(ids(tagStatistics.idsWithAll(normalizedTags)));
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет все заметки, которые нашел бы {@link #findNotesByText(String)}. Тексты в память не загружаются.
+     * @param query Текст для поиска.
+     * @return Сколько заметок удалено.
+     */
+    public int deleteNotesByText(String query) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            TextPattern pattern = new TextPattern(normalizer.normalize(query));
+            List<Integer> matching = new ArrayList<>();
+            for (Note note : notes.values()) {
+                if (pattern.matches(note.getNormalizedTitle()) || note.textMatches(pattern)) {
+                    matching.add(note.getId());
+                }
+            }
+            for (NoteSegment segment : segments) {
+                for (int position = 0; position < segment.size(); position++) {
+                    if (segment.isLive(position) && segment.matches(position, pattern)) {
+                        matching.add(segment.id(position));
+                    }
+                }
+            }
+            return deleteAll(matching);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет тег всем заметкам из списка за один проход (см. {@link #deleteNotes(Collection)}).
+     * @param ids ID заметок; несуществующие пропускаются.
+     * @param tag Тег.
+     * @return У скольких заметок тег появился (у кого он уже был, не считаются).
+     */
+    public int addTagToNotes(Collection<Integer> ids, String tag) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return addTagToAll(ids, tag);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет тег всем заметкам сервиса.
+     * @param tag Тег.
+     * @return У скольких заметок тег появился.
+     */
+    public int addTagToAllNotes(String tag) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return addTagToAll(allIds(), tag);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Снимает тег со всех заметок из списка за один проход.
+     * @param ids ID заметок; несуществующие пропускаются.
+     * @param tag Тег.
+     * @return У скольких заметок тег был снят.
+     */
+    public int removeTagFromNotes(Collection<Integer> ids, String tag) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return removeTagFromAll(ids, tag);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Снимает тег со всех заметок сервиса; заметки с тегом берутся из его битовой карты, остальные не просматриваются.
+     * @param tag Тег.
+     * @return У скольких заметок тег был снят.
+     */
+    public int removeTagEverywhere(String tag) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return tag == null ? 0 : removeTagFromAll(idsWithTag(Note.normalizeTag(tag)), tag);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Переименовывает тег у заметок из списка: старый тег снимается, новый добавляется
+     * (если новый уже был, у заметки просто пропадает старый).
+     * @param ids ID заметок; заметки без старого тега пропускаются.
+     * @param oldTag Старый тег.
+     * @param newTag Новый тег.
+     * @return У скольких заметок тег был переименован.
+     */
+    public int renameTag(Collection<Integer> ids, String oldTag, String newTag) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return renameTagForAll(ids, oldTag, newTag);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Переименовывает тег у всех заметок сервиса.
+     * @param oldTag Старый тег.
+     * @param newTag Новый тег.
+     * @return У скольких заметок тег был переименован.
+     */
+    public int renameTag(String oldTag, String newTag) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            return oldTag == null ? 0 : renameTagForAll(idsWithTag(Note.normalizeTag(oldTag)), oldTag, newTag);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Обучает словарь сжатия на текстах текущих заметок и пересжимает ими все тексты.
+     * Имеет смысл, когда включено {@link NoteServiceOptions#withTextCompression(boolean)} и заметок
+     * накопилось достаточно; повторное обучение подстраивает словарь под изменившийся корпус.
+     * @return Сводка по хранению текстов после пересжатия.
+     */
+    public TextStorageStats trainTextCompression() {
+        lock.writeLock().lock();
+        try {
+            if (textStorage.isCompressing()) {
+                // Для словаря хватает равномерной выборки, весь корпус не нужен
+                int step = Math.max(1, notes.size() / TRAINING_SAMPLE_SIZE);
+                List<String> samples = new ArrayList<>();
+                int i = 0;
+                for (Note note : notes.values()) {
+                    if (i++ % step == 0) {
+                        samples.add(note.peekText());
+                    }
+                }
+                textStorage.train(samples);
+                notes.values().forEach(Note::restore);
+            }
+            return textStorageStats();
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Сколько памяти занимают тексты заметок и как работает кэш распакованных текстов.
+     */
+    public TextStorageStats getTextStorageStats() {
+        lock.readLock().lock();
+        try {
+            return textStorageStats();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TextStorageStats textStorageStats() {
+        int compressed = 0;
+        long originalBytes = 0;
+        long storedBytes = 0;
+        for (Note note : notes.values()) {
+            NoteBody body = note.body();
+            compressed += body.isCompressed() ? 1 : 0;
+            originalBytes += body.originalBytes();
+            storedBytes += body.storedBytes();
+        }
+        return new TextStorageStats(notes.size(), compressed, originalBytes, storedBytes,
+                textStorage.getCacheHits(), textStorage.getCacheMisses(), textStorage.dictionarySize());
+    }
+
+    /**
+     * Переносит заметки, созданные раньше cutoff, в архив: неизменяемые сегменты по месяцам создания.
+     * Заметка в сегменте занимает несколько элементов массивов вместо отдельных объектов, а поиск по тексту
+     * проходит по сегменту без выделения памяти; индексы и статистика тегов при архивации не меняются.
+     * Сегменты месяца, в который добавляются заметки, собираются заново вместе с уже лежащими в них,
+     * без удаленных; так же пересобирается месяц, в сегменте которого удалена больше половины заметок.
+     * Большой месяц делится на несколько сегментов ограниченного размера.
+     * Запросы возвращают заметки архива отдельными объектами, изменения — через методы сервиса,
+     * которые возвращают заметку в изменяемую часть; версии заметок при этом сохраняются.
+     * События в ленту изменений не публикуются: содержимое заметок не меняется.
+     * Вызывается периодически (например, раз в сутки) или автоматически, см. {@link NoteServiceOptions#withArchiveAge(int)}.
+     * @param cutoff Заметки с датой создания строго раньше этой даты архивируются.
+     * @return Сколько заметок перенесено в архив.
+     */
+    public int archiveNotesCreatedBefore(LocalDate cutoff) {
+        lock.writeLock().lock();
+        try {
+            return archive(cutoff);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Сколько заметок и памяти в архиве.
+     */
+    public ArchiveStats getArchiveStats() {
+        lock.readLock().lock();
+        try {
+            int archived = 0;
+            int deleted = 0;
+            for (NoteSegment segment : segments) {
+                archived += segment.liveCount();
+                deleted += segment.deletedCount();
+            }
+            return new ArchiveStats(segments.size(), archived, deleted, archiveBytes.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true, если сервис — реплика только для чтения.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Сохраняет заметки вместе со статистикой тегов в файл-образ, который открывается через
+     * {@link #openImage(Path, NoteServiceOptions)} без повторного построения индексов.
+     * Лента изменений и деление на голову и архив в образ не попадают: открытый образ держит все заметки
+     * в голове, пока их снова не архивируют.
+     * @param path Файл образа (будет заменен).
+     * @throws IOException при ошибке записи.
+     */
+    public void writeImage(Path path) throws IOException {
+        lock.readLock().lock();
+        try {
+            NoteImage.write(path, normalizer, nextId.get(), allNotes(), tagStatistics, titleIndex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Открывает сервис из образа, записанного {@link #writeImage(Path)}. Файл отображается в память:
+     * тексты заметок не читаются при открытии, а загружаются в память при первом обращении к заметке
+     * (полный поиск по тексту до этого читает их прямо из образа), индексы и статистика тегов берутся из образа готовыми. Пока сервис жив, файл образа нельзя
+     * менять на месте (заменять новым файлом, как это делает {@link #writeImage(Path)}, можно).
+     * @param path Файл образа.
+     * @param options Настройки сервиса; нормализатор берется из образа, так как формы для поиска уже посчитаны им.
+     * @return Сервис с заметками образа и пустой лентой изменений.
+     * @throws IOException если файл не читается, поврежден или записан другой версией формата.
+     */
+    public static NoteService openImage(Path path, NoteServiceOptions options) throws IOException {
+        NoteImage image = NoteImage.open(path);
+        NoteService service = new NoteService(options.withNormalizer(image.normalizer()));
+        service.load(image);
+        return service;
+    }
+
+    private void load(NoteImage image) throws IOException {
+        lock.writeLock().lock();
+        try {
+            String[] tags = image.readTags();
+            image.restoreTags(tags, tagStatistics, tagIndex);
+            image.restoreTitleIndex(titleIndex);
+            image.forEachNote(textStorage, tags, note -> {
+                notes.put(note.getId(), note);
+                metadataBytes.addAndGet(note.metadataBytes());
+                queueForEviction(note);
+            });
+            nextId.set(image.nextId());
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Снимок всех заметок для догоняющей реплики: события ADDED с текущим состоянием каждой заметки
+     * и номер последнего события ленты, которое в снимке уже учтено.
+     */
+    ReplicationFrame snapshot() {
+        lock.readLock().lock();
+        try {
+            long sequence = changeFeed.getLastSequence();
+            List<Note> all = allNotes();
+            List<NoteEvent> events = new ArrayList<>(all.size());
+            for (Note note : all) {
+                events.add(NoteEvent.added(sequence, note, note.peekText()));
+            }
+            return ReplicationFrame.snapshot(sequence, nextId.get(), events);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Заменяет все заметки снимком первичного сервиса (ID и даты создания сохраняются).
+     */
+    void loadSnapshot(ReplicationFrame snapshot) {
+        lock.writeLock().lock();
+        try {
+            for (int id : allIds()) {
+                delete(id);
+            }
+            for (NoteEvent event : snapshot.events()) {
+                apply(event);
+            }
+            nextId.accumulateAndGet(snapshot.nextId(), Math::max);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Применяет событие первичного сервиса. Работает и в режиме только для чтения.
+     */
+    void applyReplicated(NoteEvent event) {
+        lock.writeLock().lock();
+        try {
+            apply(event);
+        } finally {
+            enforceMemoryBudget();
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(NoteEvent event) {
+        int id = event.noteId();
+        switch (event.type()) {
+            case ADDED -> {
+                Note note = new Note(id, event.title(), event.text(), textStorage, event.creationDate());
+                event.tags().forEach(note::addTag);
+                note.restoreVersion(event.version());
+                delete(id);
+                insert(note, event.text());
+                nextId.accumulateAndGet(id + 1, Math::max);
+            }
+            case UPDATED -> {
+                update(id, event.title(), event.text());
+                restoreVersion(id, event.version());
+            }
+            case TAG_ADDED -> {
+                addTag(id, event.tag());
+                restoreVersion(id, event.version());
+            }
+            case TAG_REMOVED -> {
+                removeTag(id, event.tag());
+                restoreVersion(id, event.version());
+            }
+            case DELETED -> delete(id);
+        }
+    }
+
+    // Версия заметки на реплике — та же, что на первичном сервисе после события
+    private void restoreVersion(int id, long version) {
+        Note note = notes.get(id);
+        if (note != null) {
+            note.restoreVersion(version);
+        }
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("NoteService is a read-only replica");
+        }
+    }
+
+    // Методы ниже вызываются только под блокировкой записи
+
+    // Текст передается отдельно, чтобы событие не распаковывало только что сжатый текст
+    private void insert(Note note, String text) {
+        notes.put(note.getId(), note);
+        metadataBytes.addAndGet(note.metadataBytes());
+        queueForEviction(note);
+        titleIndex.add(note.getNormalizedTitle());
+        note.getTags().forEach(tagIndex::add);
+        tagStatistics.noteAdded(note.getId(), note.getTags());
+        changeFeed.publish(sequence -> NoteEvent.added(sequence, note, text));
+    }
+
+    private boolean update(int id, String newTitle, String newText) {
+        Note note = editable(id);
+        if (note == null) {
+            return false;
+        }
+        String oldTitle = note.getNormalizedTitle();
+        long oldMetadataBytes = note.metadataBytes();
+        note.setTitle(newTitle);
+        note.setText(newText);
+        note.nextVersion();
+        queueForEviction(note);
+        metadataBytes.addAndGet(note.metadataBytes() - oldMetadataBytes);
+        titleIndex.remove(oldTitle);
+        titleIndex.add(note.getNormalizedTitle());
+        long version = note.getVersion();
+        changeFeed.publish(sequence -> NoteEvent.updated(sequence, id, newTitle, newText, version));
+        return true;
+    }
+
+    private boolean addTag(int id, String tag) {
+        if (tag == null || tag.isEmpty()) {
+            return false;
+        }
+        Note note = editable(id, Note.normalizeTag(tag), false);
+        long oldMetadataBytes = note == null ? 0 : note.metadataBytes();
+        if (note != null && note.addTag(tag)) {
+            note.nextVersion();
+            metadataBytes.addAndGet(note.metadataBytes() - oldMetadataBytes);
+            String normalizedTag = Note.normalizeTag(tag);
+            tagIndex.add(normalizedTag);
+            tagStatistics.tagAdded(id, normalizedTag, note.getTags());
+            long version = note.getVersion();
+            changeFeed.publish(sequence -> NoteEvent.tagAdded(sequence, id, normalizedTag, version));
+            return true;
+        }
+        return false;
+    }
+
+    private boolean removeTag(int id, String tag) {
+        if (tag == null) {
+            return false;
+        }
+        Note note = editable(id, Note.normalizeTag(tag), true);
+        long oldMetadataBytes = note == null ? 0 : note.metadataBytes();
+        if (note != null && note.removeTag(tag)) {
+            note.nextVersion();
+            metadataBytes.addAndGet(note.metadataBytes() - oldMetadataBytes);
+            String normalizedTag = Note.normalizeTag(tag);
+            tagIndex.remove(normalizedTag);
+            tagStatistics.tagRemoved(id, normalizedTag, note.getTags());
+            long version = note.getVersion();
+            changeFeed.publish(sequence -> NoteEvent.tagRemoved(sequence, id, normalizedTag, version));
             return true;
         }
         return false;
     }
 
+    private boolean delete(int id) {
+        Note note = notes.remove(id);
+        if (note != null) {
+            metadataBytes.addAndGet(-note.metadataBytes());
+            note.detach();
+        } else if ((note = takeArchived(id)) == null) {
+            return false;
+        }
+        titleIndex.remove(note.getNormalizedTitle());
+        note.getTags().forEach(tagIndex::remove);
+        tagStatistics.noteRemoved(id, note.getTags());
+        changeFeed.publish(sequence -> NoteEvent.deleted(sequence, id));
+        return true;
+    }
+
+    // Пакетные изменения: заметки меняются по одной (с событием в ленте на каждую, как у одиночных методов),
+    // а индексы, статистика тегов и учет памяти — один раз в конце
+    private int deleteAll(Collection<Integer> ids) {
+        TagStatistics.Batch batch = tagStatistics.batch();
+        Map<String, Integer> removedTitles = new HashMap<>();
+        long metadataDelta = 0;
+        int deleted = 0;
+        for (int id : ids) {
+            Note note = notes.remove(id);
+            if (note != null) {
+                metadataDelta -= note.metadataBytes();
+                note.detach();
+            } else if ((note = takeArchived(id)) == null) {
+                continue;
+            }
+            removedTitles.merge(note.getNormalizedTitle(), 1, Integer::sum);
+            batch.noteRemoved(id, note.getTags());
+            changeFeed.publish(sequence -> NoteEvent.deleted(sequence, id));
+            deleted++;
+        }
+        removedTitles.forEach(titleIndex::remove);
+        applyTagBatch(batch);
+        metadataBytes.addAndGet(metadataDelta);
+        return deleted;
+    }
+
+    private int addTagToAll(Collection<Integer> ids, String tag) {
+        if (tag == null || tag.isEmpty()) {
+            return 0;
+        }
+        String normalizedTag = Note.normalizeTag(tag);
+        TagStatistics.Batch batch = tagStatistics.batch();
+        int changed = 0;
+        for (int id : ids) {
+            Note note = editable(id, normalizedTag, false);
+            if (note != null && note.addTag(normalizedTag)) {
+                note.nextVersion();
+                batch.tagAdded(id, normalizedTag, note.getTags());
+                long version = note.getVersion();
+                changeFeed.publish(sequence -> NoteEvent.tagAdded(sequence, id, normalizedTag, version));
+                changed++;
+            }
+        }
+        applyTagBatch(batch);
+        metadataBytes.addAndGet(changed * Note.tagBytes(normalizedTag));
+        return changed;
+    }
+
+    private int removeTagFromAll(Collection<Integer> ids, String tag) {
+        if (tag == null) {
+            return 0;
+        }
+        String normalizedTag = Note.normalizeTag(tag);
+        TagStatistics.Batch batch = tagStatistics.batch();
+        int changed = 0;
+        for (int id : ids) {
+            Note note = editable(id, normalizedTag, true);
+            if (note != null && note.removeTag(normalizedTag)) {
+                note.nextVersion();
+                batch.tagRemoved(id, normalizedTag, note.getTags());
+                long version = note.getVersion();
+                changeFeed.publish(sequence -> NoteEvent.tagRemoved(sequence, id, normalizedTag, version));
+                changed++;
+            }
+        }
+        applyTagBatch(batch);
+        metadataBytes.addAndGet(-changed * Note.tagBytes(normalizedTag));
+        return changed;
+    }
+
+    private int renameTagForAll(Collection<Integer> ids, String oldTag, String newTag) {
+        if (oldTag == null || newTag == null || newTag.isEmpty()) {
+            return 0;
+        }
+        String from = Note.normalizeTag(oldTag);
+        String to = Note.normalizeTag(newTag);
+        if (from.equals(to)) {
+            return 0;
+        }
+        TagStatistics.Batch batch = tagStatistics.batch();
+        int changed = 0;
+        int added = 0;
+        for (int id : ids) {
+            Note note = editable(id, from, true);
+            if (note == null || !note.removeTag(from)) {
+                continue;
+            }
+            // Версия растет на каждое опубликованное событие, как у одиночных removeTag и addTag
+            note.nextVersion();
+            batch.tagRemoved(id, from, note.getTags());
+            long removedVersion = note.getVersion();
+            changeFeed.publish(sequence -> NoteEvent.tagRemoved(sequence, id, from, removedVersion));
+            if (note.addTag(to)) {
+                note.nextVersion();
+                batch.tagAdded(id, to, note.getTags());
+                long addedVersion = note.getVersion();
+                changeFeed.publish(sequence -> NoteEvent.tagAdded(sequence, id, to, addedVersion));
+                added++;
+            }
+            changed++;
+        }
+        applyTagBatch(batch);
+        metadataBytes.addAndGet(added * Note.tagBytes(to) - changed * Note.tagBytes(from));
+        return changed;
+    }
+
+    private void applyTagBatch(TagStatistics.Batch batch) {
+        batch.apply();
+        batch.documentCountDeltas().forEach((tag, delta) -> {
+            if (delta > 0) {
+                tagIndex.add(tag, delta);
+            } else {
+                tagIndex.remove(tag, -delta);
+            }
+        });
+    }
+
+    private List<Integer> idsWithTag(String normalizedTag) {
+        BitSet ids = tagStatistics.posting(normalizedTag);
+        return ids == null ? List.of() : ids(ids);
+    }
+
+    private static List<Integer> ids(BitSet ids) {
+        List<Integer> result = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    // Архив. Методы ниже вызываются под блокировкой записи, кроме тех, что отмечены отдельно
+
+    private int archive(LocalDate cutoff) {
+        Map<YearMonth, List<Note>> old = new TreeMap<>();
+        for (Note note : notes.values()) {
+            if (note.getCreationDate().isBefore(cutoff)) {
+                old.computeIfAbsent(YearMonth.from(note.getCreationDate()), month -> new ArrayList<>()).add(note);
+            }
+        }
+        Set<YearMonth> buckets = new TreeSet<>(old.keySet());
+        for (NoteSegment segment : segments) {
+            if (segment.deletedCount() * 2 > segment.size()) {
+                buckets.add(segment.bucket());
+            }
+        }
+        int archived = 0;
+        for (YearMonth bucket : buckets) {
+            int from = 0;
+            while (from < segments.size() && segments.get(from).bucket().isBefore(bucket)) {
+                from++;
+            }
+            int to = from;
+            while (to < segments.size() && segments.get(to).bucket().equals(bucket)) {
+                to++;
+            }
+            List<NoteSegment> previous = segments.subList(from, to);
+            List<NoteSegment.Entry> entries = new ArrayList<>();
+            for (NoteSegment segment : previous) {
+                entries.addAll(segment.liveEntries());
+            }
+            List<Note> moved = old.getOrDefault(bucket, List.of());
+            for (Note note : moved) {
+                entries.add(NoteSegment.Entry.of(note));
+            }
+            List<NoteSegment> built = entries.isEmpty()
+                    ? List.of() : NoteSegment.split(bucket, entries, NoteSegment.MAX_CHARS);
+            // Старые сегменты месяца заменяются только после того, как новые собраны
+            long delta = 0;
+            for (NoteSegment segment : previous) {
+                delta -= segment.bytes();
+            }
+            for (NoteSegment segment : built) {
+                delta += segment.bytes();
+            }
+            previous.clear();
+            segments.addAll(from, built);
+            archiveBytes.addAndGet(delta);
+            // Заметки уходят из головы только после того, как сегменты с ними собраны
+            for (Note note : moved) {
+                notes.remove(note.getId());
+                metadataBytes.addAndGet(-note.metadataBytes());
+                note.detach();
+            }
+            archived += moved.size();
+        }
+        if (!buckets.isEmpty()) {
+            segmentIndex = SegmentIndex.of(segments);
+        }
+        return archived;
+    }
+
+    private void archiveIfDue() {
+        if (archiveAgeDays == 0) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        if (!today.equals(lastArchiveDay)) {
+            lastArchiveDay = today;
+            archive(today.minusDays(archiveAgeDays));
+        }
+    }
+
+    // Заметка головы или возвращенная в голову из архива; для изменения заметки
+    private Note editable(int id) {
+        Note note = notes.get(id);
+        NoteSegment segment;
+        if (note != null || (segment = segmentOf(id)) == null) {
+            return note;
+        }
+        int position = segment.positionOf(id);
+        note = segment.entry(position).toNote(textStorage);
+        segment.delete(position);
+        notes.put(id, note);
+        metadataBytes.addAndGet(note.metadataBytes());
+        queueForEviction(note);
+        return note;
+    }
+
+    // То же для изменения тегов: заметка из архива возвращается в голову, только если изменение что-то поменяет,
+    // то есть если тег у нее есть (hasTag) или его нет (!hasTag); иначе null, как и для несуществующей заметки
+    private Note editable(int id, String normalizedTag, boolean hasTag) {
+        Set<String> tags = tagsOf(id);
+        return tags == null || tags.contains(normalizedTag) != hasTag ? null : editable(id);
+    }
+
+    // Удаляет заметку из архива; возвращает ее содержимое отдельным объектом или null, если в архиве ее нет
+    private Note takeArchived(int id) {
+        NoteSegment segment = segmentOf(id);
+        if (segment == null) {
+            return null;
+        }
+        int position = segment.positionOf(id);
+        Note note = segment.view(position, archiveViews);
+        segment.delete(position);
+        return note;
+    }
+
+    // Методы ниже достаточно вызывать под блокировкой чтения
+
+    private NoteSegment segmentOf(int id) {
+        return segmentIndex.find(id);
+    }
+
+    // Теги заметки головы или архива без переноса заметки; null, если заметки нет
+    private Set<String> tagsOf(int id) {
+        Note note = notes.get(id);
+        if (note != null) {
+            return note.getTags();
+        }
+        NoteSegment segment = segmentOf(id);
+        return segment == null ? null : segment.tags(segment.positionOf(id));
+    }
+
+    private Note archived(int id) {
+        NoteSegment segment = segmentOf(id);
+        return segment == null ? null : segment.view(segment.positionOf(id), archiveViews);
+    }
+
+    private List<Note> allNotes() {
+        List<Note> all = new ArrayList<>(notes.values());
+        for (NoteSegment segment : segments) {
+            for (int position = 0; position < segment.size(); position++) {
+                if (segment.isLive(position)) {
+                    all.add(segment.view(position, archiveViews));
+                }
+            }
+        }
+        return all;
+    }
+
+    private List<Integer> allIds() {
+        List<Integer> ids = new ArrayList<>(notes.keySet());
+        for (NoteSegment segment : segments) {
+            for (int position = 0; position < segment.size(); position++) {
+                if (segment.isLive(position)) {
+                    ids.add(segment.id(position));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Если заметки не помещаются в бюджет памяти, вытесняет на диск тексты заметок, к которым давно
+     * не обращались, с запасом в 10% бюджета, чтобы не вытеснять по одной заметке на каждое изменение.
+     * Заметки выбираются по второму шансу: из головы очереди вытеснения берется заметка; если к ней
+     * обращались с прошлой проверки, отметка снимается и заметка уходит в хвост, иначе текст вытесняется.
+     * Каждая проверка стоит O(1), а в очереди только заметки с текстом в памяти, поэтому изменение
+     * под бюджетом не перебирает и не сортирует все заметки.
+     * Вызывается под блокировкой записи.
+     */
+    private void enforceMemoryBudget() {
+        if (residentBytes() <= memoryBudget || !textStorage.canSpill()) {
+            return;
+        }
+        // Если бюджет съеден заголовками и тегами, а текстов в памяти почти нет, проверять заметки
+        // на каждом изменении бесполезно: ждем, пока текстов наберется хотя бы на 5% бюджета
+        if (textStorage.getSpillableBytes() < memoryBudget / 20) {
+            return;
+        }
+        long target = memoryBudget - memoryBudget / 10;
+        try {
+            // Читатели стоят на блокировке, поэтому отметки снимаются только здесь: каждая заметка
+            // возвращается в хвост не больше одного раза, и цикл заканчивается
+            Integer id;
+            while (residentBytes() > target && (id = evictionQueue.poll()) != null) {
+                Note note = notes.get(id);
+                if (note == null) {
+                    continue;
+                }
+                if (!note.body().isSpilled() && note.clearReferenced()) {
+                    evictionQueue.add(id);
+                    continue;
+                }
+                note.unqueue();
+                note.spill();
+            }
+            if (textStorage.needsCompaction()) {
+                SpillFile compacted = textStorage.startCompaction();
+                for (Note note : notes.values()) {
+                    note.relocate(compacted);
+                }
+                textStorage.finishCompaction(compacted);
+            }
+        } catch (UncheckedIOException e) {
+            // Изменение уже применено; заметки просто остаются в памяти до следующей попытки
+            spillFailures.increment();
+        }
+    }
+
+    // Чтение могло вернуть тексты в память; вытесняем, только если блокировка записи свободна прямо сейчас
+    private void enforceMemoryBudgetAfterRead() {
+        if (residentBytes() > memoryBudget && lock.writeLock().tryLock()) {
+            try {
+                enforceMemoryBudget();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Ставит заметку с текстом в памяти в очередь вытеснения (если бюджет памяти задан)
+    private void queueForEviction(Note note) {
+        if (textStorage.canSpill() && note.markQueued()) {
+            evictionQueue.add(note.getId());
+        }
+    }
+
+    // Обращение к заметке из запроса: текст возвращается в память, заметка получает второй шанс
+    private void touch(Note note) {
+        note.load();
+        queueForEviction(note);
+    }
+
+    private long residentBytes() {
+        return metadataBytes.get() + textStorage.getResidentBytes() + archiveBytes.get() + indexBytes()
+                + changeFeed.getRetainedBytes();
+    }
+
+    private long indexBytes() {
+        return titleIndex.heapBytes() + tagIndex.heapBytes() + tagStatistics.heapBytes();
+    }
+
+    /**
+     * @return Сколько памяти занимают заметки, сколько текстов вытеснено на диск и как часто они вытесняются и загружаются.
+     */
+    public MemoryStats getMemoryStats() {
+        lock.readLock().lock();
+        try {
+            int spilled = 0;
+            for (Note note : notes.values()) {
+                spilled += note.body().isSpilled() ? 1 : 0;
+            }
+            return new MemoryStats(memoryBudget, residentBytes(), metadataBytes.get(), textStorage.getResidentBytes(),
+                    archiveBytes.get(), indexBytes(), changeFeed.getRetainedBytes(), notes.size(), spilled,
+                    textStorage.getSpillFileBytes(), textStorage.getSpillGarbageBytes(), textStorage.getSpills(),
+                    textStorage.getReloads(), textStorage.getDiskReads(), textStorage.getCompactions(), spillFailures.sum());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     /**
      * Ищет заметки, содержащие текст (без учета регистра).
+     * Запрос нормализуется один раз, а заметки сравниваются по заранее нормализованным
+     * заголовку и тексту, так что на каждую просмотренную заметку память не выделяется.
+     * Сжатый текст (см. {@link NoteServiceOptions#withTextCompression(boolean)}) распаковывается
+     * только если совпадения нет в заголовке, и в кэш не попадает.
      * @param query Текст для поиска.
      * @return Список найденных заметок.
      */
     public List<Note> findNotesByText(String query) {
-        List<Note> result = new ArrayList<>();
-        query = query.toLowerCase();
-        for (Note note : notes.values()) {
-            if(note.getTitle().toLowerCase().contains(query) || note.getText().toLowerCase().contains(query)) {
-                result.add(note);
+        lock.readLock().lock();
+        try {
+            List<Note> result = new ArrayList<>();
+            TextPattern pattern = new TextPattern(normalizer.normalize(query));
+            for (Note note : notes.values()) {
+                if(pattern.matches(note.getNormalizedTitle()) || note.textMatches(pattern)) {
+                    touch(note);
+                    result.add(note);
+                }
+            }
+            for (NoteSegment segment : segments) {
+                for (int position = 0; position < segment.size(); position++) {
+                    if (segment.isLive(position) && segment.matches(position, pattern)) {
+                        result.add(segment.view(position, archiveViews));
+                    }
+                }
             }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+            enforceMemoryBudgetAfterRead();
         }
-        return result;
+    }
+
+    /**
+     * Ищет заметки сразу по нескольким словам (без учета регистра) за один проход по каждой заметке:
+     * все слова собираются в один автомат Ахо-Корасик.
+     * @param terms Слова для поиска; пустые слова игнорируются, повторы — везде, кроме фразы.
+     * @param mode Как сочетать слова: любое, все или фраза.
+     * @return Найденные заметки вместе со словами, которые в них встретились (для фразы — сама фраза).
+     */
+    public List<TermMatch> findNotesByTerms(Collection<String> terms, TermMatchMode mode) {
+        lock.readLock().lock();
+        try {
+            // Нормализованное слово -> исходное, в порядке запроса
+            Map<String, String> normalizedTerms = new LinkedHashMap<>();
+            // Для фразы важны все слова по порядку, включая повторы
+            StringJoiner phrase = new StringJoiner(" ");
+            StringJoiner normalizedPhrase = new StringJoiner(" ");
+            for (String term : terms) {
+                if (term == null || term.isBlank()) {
+                    continue;
+                }
+                String normalized = normalizer.normalize(term.strip());
+                normalizedTerms.putIfAbsent(normalized, term);
+                phrase.add(term.strip());
+                normalizedPhrase.add(normalized);
+            }
+            if (normalizedTerms.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            List<String> patterns;
+            List<String> originals;
+            if (mode == TermMatchMode.PHRASE) {
+                patterns = List.of(normalizedPhrase.toString());
+                originals = List.of(phrase.toString());
+            } else {
+                patterns = List.copyOf(normalizedTerms.keySet());
+                originals = List.copyOf(normalizedTerms.values());
+            }
+            AhoCorasick automaton = new AhoCorasick(patterns);
+
+            List<TermMatch> result = new ArrayList<>();
+            BitSet found = new BitSet(patterns.size());
+            for (Note note : notes.values()) {
+                found.clear();
+                automaton.scan(note.getNormalizedTitle(), found);
+                if (found.cardinality() < patterns.size()) {
+                    note.scanText(automaton, found);
+                }
+                if (termsMatch(found, patterns.size(), mode)) {
+                    touch(note);
+                    result.add(new TermMatch(note, matchedTerms(found, originals, mode)));
+                }
+            }
+            for (NoteSegment segment : segments) {
+                for (int position = 0; position < segment.size(); position++) {
+                    if (!segment.isLive(position)) {
+                        continue;
+                    }
+                    found.clear();
+                    segment.scan(position, automaton, found);
+                    if (termsMatch(found, patterns.size(), mode)) {
+                        result.add(new TermMatch(segment.view(position, archiveViews), matchedTerms(found, originals, mode)));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+            enforceMemoryBudgetAfterRead();
+        }
+    }
+
+    private static boolean termsMatch(BitSet found, int patternCount, TermMatchMode mode) {
+        return mode == TermMatchMode.ANY ? !found.isEmpty() : found.cardinality() == patternCount;
+    }
+
+    private static Set<String> matchedTerms(BitSet found, List<String> originals, TermMatchMode mode) {
+        Set<String> matchedTerms = new LinkedHashSet<>();
+        if (mode == TermMatchMode.PHRASE) {
+            matchedTerms.addAll(originals);
+        } else {
+            found.stream().forEach(i -> matchedTerms.add(originals.get(i)));
+        }
+        return Collections.unmodifiableSet(matchedTerms);
     }
 
     /**
@@ -135,23 +1312,35 @@ public class NoteService {
      * @return Список найденных заметок.
      */
     public List<Note> findNotesByTags(Set<String> searchTags) {
-        if(searchTags.isEmpty()) {
-            return new ArrayList<>();
-        }
+        lock.readLock().lock();
+        try {
+            if(searchTags.isEmpty()) {
+                return new ArrayList<>();
+            }
 
-        Set<String> normalizedTags = new HashSet<>();
-        for (String tag : searchTags) {
-            normalizedTags.add(tag.toLowerCase());
-        }
+            Set<String> normalizedTags = new HashSet<>();
+            for (String tag : searchTags) {
+                normalizedTags.add(Note.normalizeTag(tag));
+            }
 
-        List<Note> result = new ArrayList<>();
-        for (Note note : notes.values()) {
-            if(note.getTags().containsAll(normalizedTags)) {
-                result.add(note);
+            // Пересекаем битовые карты тегов вместо просмотра всех заметок
+            BitSet ids = tagStatistics.idsWithAll(normalizedTags);
+            List<Note> result = new ArrayList<>(ids.cardinality());
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                Note note = notes.get(id);
+                if (note != null) {
+                    touch(note);
+                    result.add(note);
+                } else {
+                    result.add(archived(id));
+                }
             }
-        }
 
-        return result;
+            return result;
+        } finally {
+            lock.readLock().unlock();
+            enforceMemoryBudgetAfterRead();
+        }
     }
 
     /**
@@ -159,10 +1348,182 @@ public class NoteService {
      * @return Список уникальных тегов (в нижнем регистре).
      */
     public Set<String> getAllTags() {
-        HashSet<String> result = new HashSet<>();
-        for (Note note : notes.values()) {
-            result.addAll(note.getTags());
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(tagStatistics.tags());
+        } finally {
+            lock.readLock().unlock();
         }
-        return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Число заметок с тегом; поддерживается при каждом изменении, не требует просмотра заметок.
+     * @param tag Тег (без учета регистра).
+     * @return Число заметок с этим тегом.
+     */
+    public int getTagCount(String tag) {
+        lock.readLock().lock();
+        try {
+            return tagStatistics.documentCount(Note.normalizeTag(tag));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Собирает ID заметок в битовую карту, удобную для {@link #facetTags(BitSet, int)}.
+     * @param result Заметки (например, результат поиска).
+     * @return Битовая карта ID.
+     */
+    public static BitSet toIdBitmap(Collection<Note> result) {
+        BitSet ids = new BitSet();
+        for (Note note : result) {
+            ids.set(note.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Считает самые частые теги в выборке заметок (фасеты для результата поиска).
+     * @param resultIds ID заметок выборки.
+     * @param topN Сколько тегов вернуть.
+     * @return Теги с числом заметок выборки, от частых к редким.
+     */
+    public List<TagCount> facetTags(BitSet resultIds, int topN) {
+        lock.readLock().lock();
+        try {
+            return tagStatistics.facet(resultIds, topN, id -> {
+                Set<String> tags = tagsOf(id);
+                return tags == null ? Set.of() : tags;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * То же, что {@link #facetTags(BitSet, int)}, для списка заметок.
+     * @param result Заметки выборки.
+     * @param topN Сколько тегов вернуть.
+     * @return Теги с числом заметок выборки, от частых к редким.
+     */
+    public List<TagCount> facetTags(Collection<Note> result, int topN) {
+        return facetTags(toIdBitmap(result), topN);
+    }
+
+    /**
+     * @param first Первый тег.
+     * @param second Второй тег.
+     * @return Сколько заметок содержат оба тега.
+     */
+    public int getTagCoOccurrence(String first, String second) {
+        lock.readLock().lock();
+        try {
+            return tagStatistics.coOccurrence(Note.normalizeTag(first), Note.normalizeTag(second));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param tag Тег.
+     * @return Теги, встречающиеся вместе с данным, и число таких заметок (неизменяемая копия).
+     */
+    public Map<String, Integer> getCoOccurringTags(String tag) {
+        lock.readLock().lock();
+        try {
+            return tagStatistics.coOccurringWith(Note.normalizeTag(tag));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Дополняет заголовок по префиксу (без учета регистра).
+     * @param prefix Начало заголовка.
+     * @param limit Максимальное число вариантов.
+     * @return Заголовки в нормализованном виде, от самых частых к редким.
+     */
+    public List<Suggestion> completeTitles(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            return titleIndex.complete(normalizer.normalize(prefix), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Дополняет тег по префиксу (без учета регистра).
+     * @param prefix Начало тега.
+     * @param limit Максимальное число вариантов.
+     * @return Теги, от самых частых (по числу заметок) к редким.
+     */
+    public List<Suggestion> completeTags(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            return tagIndex.complete(Note.normalizeTag(prefix), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ищет заголовки, отличающиеся от запроса не более чем на maxEdits правок (вставка, удаление, замена).
+     * @param query Запрос.
+     * @param maxEdits Допустимое число правок, от 0 до 2.
+     * @param limit Максимальное число вариантов.
+     * @return Заголовки в нормализованном виде, сначала ближайшие.
+     */
+    public List<Suggestion> findSimilarTitles(String query, int maxEdits, int limit) {
+        lock.readLock().lock();
+        try {
+            return titleIndex.fuzzy(normalizer.normalize(query), maxEdits, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ищет теги, отличающиеся от запроса не более чем на maxEdits правок (вставка, удаление, замена).
+     * @param query Запрос.
+     * @param maxEdits Допустимое число правок, от 0 до 2.
+     * @param limit Максимальное число вариантов.
+     * @return Теги, сначала ближайшие.
+     */
+    public List<Suggestion> findSimilarTags(String query, int maxEdits, int limit) {
+        lock.readLock().lock();
+        try {
+            return tagIndex.fuzzy(Note.normalizeTag(query), maxEdits, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Подписывается на ленту изменений (добавление, обновление, теги, удаление).
+     * Чтобы продолжить с места остановки, передайте номер последнего обработанного события + 1.
+     * @param fromSequence Номер первого нужного события (1 — с самого начала).
+     * @return Подписка, из которой события читаются пачками.
+     * @throws IllegalStateException если нужные события уже вытеснены из ленты или лента выключена
+     *                               (см. {@link NoteServiceOptions#withChangeFeedCapacity}).
+     */
+    public ChangeFeed.Subscription subscribeToChanges(long fromSequence) {
+        return changeFeed.subscribe(fromSequence);
+    }
+
+    /**
+     * @return true, если лента изменений включена и на нее можно подписаться.
+     */
+    public boolean isChangeFeedEnabled() {
+        return changeFeed.isEnabled();
+    }
+
+    /**
+     * @return Номер последнего события в ленте изменений (0, если изменений не было);
+     *         номера выделяются и при выключенной ленте.
+     */
+    public long getLastChangeSequence() {
+        return changeFeed.getLastSequence();
+    }
+}
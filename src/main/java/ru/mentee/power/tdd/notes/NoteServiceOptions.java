@@ -0,0 +1,190 @@
+package ru.mentee.power.tdd.notes;
+
+import java.nio.file.Path;
+
+/**
+ * Настройки {@link NoteService}. Неизменяемый объект: каждый метод with... возвращает копию.
+ */
+public final class NoteServiceOptions {
+
+    /** Емкость ленты изменений по умолчанию: 0, лента выключена (см. {@link #withChangeFeedCapacity}). */
+    public static final int DEFAULT_CHANGE_FEED_CAPACITY = 0;
+
+    /** Сколько байт самое большее занимают события ленты изменений по умолчанию. */
+    public static final long DEFAULT_CHANGE_FEED_MAX_BYTES = 16L << 20;
+
+    /** Сколько распакованных текстов держать в кэше по умолчанию. */
+    public static final int DEFAULT_TEXT_CACHE_SIZE = 256;
+
+    private final TextNormalizer normalizer;
+    private final int changeFeedCapacity;
+    private final long changeFeedMaxBytes;
+    private final boolean readOnly;
+    private final boolean compressText;
+    private final int textCacheSize;
+    private final long memoryBudget;
+    private final Path spillDirectory;
+    private final int archiveAgeDays;
+
+    private NoteServiceOptions(TextNormalizer normalizer, int changeFeedCapacity, long changeFeedMaxBytes,
+                               boolean readOnly, boolean compressText, int textCacheSize, long memoryBudget,
+                               Path spillDirectory, int archiveAgeDays) {
+        if (normalizer == null) throw new IllegalArgumentException("Normalizer must not be null");
+        if (textCacheSize < 0) throw new IllegalArgumentException("Text cache size must not be negative: " + textCacheSize);
+        this.normalizer = normalizer;
+        this.changeFeedCapacity = changeFeedCapacity;
+        this.changeFeedMaxBytes = changeFeedMaxBytes;
+        this.readOnly = readOnly;
+        this.compressText = compressText;
+        this.textCacheSize = textCacheSize;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.archiveAgeDays = archiveAgeDays;
+    }
+
+    /**
+     * @return Настройки по умолчанию.
+     */
+    public static NoteServiceOptions defaults() {
+        return new NoteServiceOptions(TextNormalizer.CASE_INSENSITIVE, DEFAULT_CHANGE_FEED_CAPACITY,
+                DEFAULT_CHANGE_FEED_MAX_BYTES, false, false, DEFAULT_TEXT_CACHE_SIZE, Long.MAX_VALUE, null, 0);
+    }
+
+    /**
+     * @param normalizer Как сравнивать текст при поиске.
+     * @return Копия настроек с другим нормализатором.
+     */
+    public NoteServiceOptions withNormalizer(TextNormalizer normalizer) {
+        return new NoteServiceOptions(normalizer, changeFeedCapacity, changeFeedMaxBytes, readOnly,
+                compressText, textCacheSize, memoryBudget, spillDirectory, archiveAgeDays);
+    }
+
+    /**
+     * Включает ленту изменений ({@link NoteService#subscribeToChanges}); по умолчанию она выключена,
+     * потому что хранит заголовки и тексты последних изменений, даже если подписчиков нет.
+     * @param capacity Сколько последних событий хранить в ленте изменений (степень двойки; 0 выключает ленту).
+     * @return Копия настроек с другой емкостью ленты.
+     */
+    public NoteServiceOptions withChangeFeedCapacity(int capacity) {
+        if (capacity < 0 || capacity > 0 && Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Change feed capacity must be zero or a power of two: " + capacity);
+        }
+        return new NoteServiceOptions(normalizer, capacity, changeFeedMaxBytes, readOnly,
+                compressText, textCacheSize, memoryBudget, spillDirectory, archiveAgeDays);
+    }
+
+    /**
+     * @param bytes Сколько байт самое большее занимают события ленты изменений; более старые вытесняются.
+     * @return Копия настроек с другим ограничением объема ленты.
+     */
+    public NoteServiceOptions withChangeFeedMaxBytes(long bytes) {
+        if (bytes <= 0) throw new IllegalArgumentException("Change feed byte limit must be positive: " + bytes);
+        return new NoteServiceOptions(normalizer, changeFeedCapacity, bytes, readOnly,
+                compressText, textCacheSize, memoryBudget, spillDirectory, archiveAgeDays);
+    }
+
+    /**
+     * @param readOnly true для реплики: публичные методы изменения заметок бросают
+     *                 {@link UnsupportedOperationException}, данные приходят только через {@link ReplicationReplica}.
+     * @return Копия настроек с другим режимом записи.
+     */
+    public NoteServiceOptions withReadOnly(boolean readOnly) {
+        return new NoteServiceOptions(normalizer, changeFeedCapacity, changeFeedMaxBytes, readOnly,
+                compressText, textCacheSize, memoryBudget, spillDirectory, archiveAgeDays);
+    }
+
+    /**
+     * @param compressText true, чтобы хранить длинные тексты заметок сжатыми и распаковывать их при чтении.
+     *                     Экономит память ценой распаковки при поиске по тексту.
+     * @return Копия настроек с другим способом хранения текста.
+     */
+    public NoteServiceOptions withTextCompression(boolean compressText) {
+        return new NoteServiceOptions(normalizer, changeFeedCapacity, changeFeedMaxBytes, readOnly,
+                compressText, textCacheSize, memoryBudget, spillDirectory, archiveAgeDays);
+    }
+
+    /**
+     * @param size Сколько распакованных текстов держать в кэше (0 — не кэшировать).
+     * @return Копия настроек с другим размером кэша.
+     */
+    public NoteServiceOptions withTextCacheSize(int size) {
+        return new NoteServiceOptions(normalizer, changeFeedCapacity, changeFeedMaxBytes, readOnly,
+                compressText, size, memoryBudget, spillDirectory, archiveAgeDays);
+    }
+
+    /**
+     * Ограничивает память, которую занимают заметки. Когда оценка превышает бюджет, тексты заметок,
+     * к которым дольше всего не обращались, вытесняются в файл в spillDirectory и загружаются обратно
+     * при {@link NoteService#getNoteById(int)}, попадании в результат поиска или чтении текста.
+     * Заголовки, теги и индексы всегда остаются в памяти и входят в оценку, как и события ленты
+     * изменений: лента занимает не больше четверти бюджета, даже если {@link #withChangeFeedMaxBytes}
+     * разрешает больше.
+     * @param bytes Бюджет в байтах.
+     * @param spillDirectory Каталог для файла вытеснения.
+     * @return Копия настроек с ограничением памяти.
+     */
+    public NoteServiceOptions withMemoryBudget(long bytes, Path spillDirectory) {
+        if (bytes <= 0) throw new IllegalArgumentException("Memory budget must be positive: " + bytes);
+        if (spillDirectory == null) throw new IllegalArgumentException("Spill directory must not be null");
+        return new NoteServiceOptions(normalizer, changeFeedCapacity, changeFeedMaxBytes, readOnly,
+                compressText, textCacheSize, bytes, spillDirectory, archiveAgeDays);
+    }
+
+    /**
+     * Включает автоматическую архивацию: заметки старше days дней переносятся в неизменяемые сегменты
+     * (см. {@link NoteService#archiveNotesCreatedBefore(java.time.LocalDate)}). Проверка выполняется
+     * при добавлении заметок, не чаще раза в сутки.
+     * @param days Возраст заметки в днях, после которого она архивируется.
+     * @return Копия настроек с автоматической архивацией.
+     */
+    public NoteServiceOptions withArchiveAge(int days) {
+        if (days <= 0) throw new IllegalArgumentException("Archive age must be positive: " + days);
+        return new NoteServiceOptions(normalizer, changeFeedCapacity, changeFeedMaxBytes, readOnly,
+                compressText, textCacheSize, memoryBudget, spillDirectory, days);
+    }
+
+    public TextNormalizer getNormalizer() {
+        return normalizer;
+    }
+
+    public int getChangeFeedCapacity() {
+        return changeFeedCapacity;
+    }
+
+    public long getChangeFeedMaxBytes() {
+        return changeFeedMaxBytes;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public boolean isTextCompression() {
+        return compressText;
+    }
+
+    public int getTextCacheSize() {
+        return textCacheSize;
+    }
+
+    /**
+     * @return Бюджет памяти в байтах (Long.MAX_VALUE, если не ограничен).
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return Каталог для вытеснения текстов или null.
+     */
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @return Возраст заметки в днях для автоматической архивации или 0, если она выключена.
+     */
+    public int getArchiveAgeDays() {
+        return archiveAgeDays;
+    }
+}
@@ -0,0 +1,313 @@
+package ru.mentee.power.tdd.notes;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Префиксное дерево строк с частотами: дополнение по префиксу с выдачей самых частых вариантов
+ * и нечеткий поиск в пределах расстояния Левенштейна.
+ * Каждый узел помнит наибольшую частоту в своем поддереве, поэтому лучшие K вариантов
+ * находятся обходом "сначала лучший" без просмотра всего поддерева.
+ */
+final class PrefixIndex {
+
+    /** Наибольшее поддерживаемое расстояние для нечеткого поиска. */
+    static final int MAX_EDITS = 2;
+
+    /**
+     * Оценка узла в куче: объект узла, его пустая или маленькая HashMap детей, запись о нем в карте
+     * родителя и упакованный символ (замерено на 64-битной JVM со сжатыми ссылками: 190–200 байт).
+     */
+    static final int NODE_BYTES = 200;
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        String key; // вся строка, если в узле заканчивается хотя бы одно вхождение
+        int count; // сколько раз добавлена строка, заканчивающаяся в узле
+        int subtreeMax; // наибольший count в поддереве, включая сам узел
+    }
+
+    private final Node root = new Node();
+    private int distinctKeys;
+    // Узлы без корня; меняется под блокировкой записи сервиса, читается и без нее
+    private volatile int nodes;
+
+    /**
+     * Увеличивает частоту строки на единицу.
+     * @param key Строка (пустые игнорируются).
+     */
+    void add(String key) {
+        add(key, 1);
+    }
+
+    /**
+     * Увеличивает частоту строки сразу на times (например, при загрузке готовых частот из образа).
+     * @param key Строка (пустые игнорируются).
+     * @param times На сколько увеличить частоту.
+     */
+    void add(String key, int times) {
+        if (key.isEmpty() || times <= 0) {
+            return;
+        }
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            Node child = node.children.get(key.charAt(i));
+            if (child == null) {
+                child = new Node();
+                node.children.put(key.charAt(i), child);
+                nodes++;
+            }
+            node = child;
+            path[i + 1] = node;
+        }
+        if (node.count == 0) {
+            node.key = key;
+            distinctKeys++;
+        }
+        node.count += times;
+        for (Node onPath : path) {
+            onPath.subtreeMax = Math.max(onPath.subtreeMax, node.count);
+        }
+    }
+
+    /**
+     * Уменьшает частоту строки на единицу; строка с нулевой частотой удаляется из дерева.
+     * @param key Строка.
+     */
+    void remove(String key) {
+        remove(key, 1);
+    }
+
+    /**
+     * Уменьшает частоту строки сразу на times (не ниже нуля).
+     * @param key Строка.
+     * @param times На сколько уменьшить частоту.
+     */
+    void remove(String key, int times) {
+        if (key.isEmpty() || times <= 0) {
+            return;
+        }
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.get(key.charAt(i));
+            if (node == null) {
+                return;
+            }
+            path[i + 1] = node;
+        }
+        if (node.count == 0) {
+            return;
+        }
+        node.count = Math.max(0, node.count - times);
+        if (node.count == 0) {
+            node.key = null;
+            distinctKeys--;
+        }
+        // Пересчитываем максимумы снизу вверх и отрезаем опустевшие ветки
+        for (int i = key.length(); i >= 0; i--) {
+            Node current = path[i];
+            int max = current.count;
+            for (Node child : current.children.values()) {
+                max = Math.max(max, child.subtreeMax);
+            }
+            current.subtreeMax = max;
+            if (i > 0 && max == 0 && current.children.isEmpty()) {
+                path[i - 1].children.remove(key.charAt(i - 1));
+                nodes--;
+            }
+        }
+    }
+
+    /**
+     * @param key Строка.
+     * @return Текущая частота строки.
+     */
+    int count(String key) {
+        Node node = find(key);
+        return node == null ? 0 : node.count;
+    }
+
+    /**
+     * @return Число различных строк в дереве.
+     */
+    int size() {
+        return distinctKeys;
+    }
+
+    /**
+     * @return Оценка памяти дерева (строки ключей общие с заметками и не учитываются).
+     */
+    long heapBytes() {
+        return (long) nodes * NODE_BYTES;
+    }
+
+    /**
+     * @param prefix Префикс (уже нормализованный).
+     * @param limit Максимальное число вариантов.
+     * @return Строки с этим префиксом, от самых частых к редким.
+     */
+    List<Suggestion> complete(String prefix, int limit) {
+        List<Suggestion> result = new ArrayList<>();
+        Node start = find(prefix);
+        if (start == null || limit <= 0) {
+            return result;
+        }
+        // В очереди лежат и поддеревья (с оценкой subtreeMax), и готовые строки (с точной частотой)
+        record Candidate(Node node, int score, boolean terminal) {
+        }
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(
+                Comparator.comparingInt(Candidate::score).reversed()
+                        .thenComparing(Candidate::terminal, Comparator.reverseOrder()));
+        queue.add(new Candidate(start, start.subtreeMax, false));
+        while (!queue.isEmpty() && result.size() < limit) {
+            Candidate candidate = queue.poll();
+            Node node = candidate.node();
+            if (candidate.terminal()) {
+                result.add(new Suggestion(node.key, node.count, 0));
+                continue;
+            }
+            if (node.count > 0) {
+                queue.add(new Candidate(node, node.count, true));
+            }
+            for (Node child : node.children.values()) {
+                queue.add(new Candidate(child, child.subtreeMax, false));
+            }
+        }
+        // Порядок вариантов с одинаковой частотой делаем предсказуемым
+        result.sort(Comparator.comparingInt(Suggestion::frequency).reversed().thenComparing(Suggestion::text));
+        return result;
+    }
+
+    /**
+     * Нечеткий поиск: обход дерева с построчным вычислением матрицы Левенштейна,
+     * ветки отсекаются, как только минимум строки превышает maxEdits.
+     *
+     * @param query Запрос (уже нормализованный).
+     * @param maxEdits Допустимое число правок, от 0 до {@link #MAX_EDITS}.
+     * @param limit Максимальное число вариантов.
+     * @return Подходящие строки: сначала ближайшие, при равенстве — более частые.
+     */
+    List<Suggestion> fuzzy(String query, int maxEdits, int limit) {
+        if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+            throw new IllegalArgumentException("maxEdits must be between 0 and " + MAX_EDITS + ": " + maxEdits);
+        }
+        List<Suggestion> found = new ArrayList<>();
+        int[] firstRow = new int[query.length() + 1];
+        for (int i = 0; i < firstRow.length; i++) {
+            firstRow[i] = i;
+        }
+        for (Map.Entry<Character, Node> child : root.children.entrySet()) {
+            fuzzyWalk(child.getValue(), child.getKey(), query, firstRow, maxEdits, found);
+        }
+        found.sort(Comparator.comparingInt(Suggestion::distance)
+                .thenComparing(Comparator.comparingInt(Suggestion::frequency).reversed())
+                .thenComparing(Suggestion::text));
+        return found.size() > limit ? new ArrayList<>(found.subList(0, Math.max(limit, 0))) : found;
+    }
+
+    private void fuzzyWalk(Node node, char c, String query, int[] previousRow, int maxEdits, List<Suggestion> found) {
+        int columns = query.length() + 1;
+        int[] row = new int[columns];
+        row[0] = previousRow[0] + 1;
+        int rowMin = row[0];
+        for (int i = 1; i < columns; i++) {
+            int substitution = previousRow[i - 1] + (query.charAt(i - 1) == c ? 0 : 1);
+            row[i] = Math.min(Math.min(row[i - 1] + 1, previousRow[i] + 1), substitution);
+            rowMin = Math.min(rowMin, row[i]);
+        }
+        if (node.count > 0 && row[columns - 1] <= maxEdits) {
+            found.add(new Suggestion(node.key, node.count, row[columns - 1]));
+        }
+        if (rowMin <= maxEdits) {
+            for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                fuzzyWalk(child.getValue(), child.getKey(), query, row, maxEdits, found);
+            }
+        }
+    }
+
+    /**
+     * Записывает дерево в прямом порядке обхода: для каждого узла — символ ребра, частота и число детей
+     * (у корня символа нет). Обход без рекурсии: глубина дерева равна длине самой длинной строки.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(root.count);
+        out.writeInt(root.children.size());
+        Deque<Iterator<Map.Entry<Character, Node>>> stack = new ArrayDeque<>();
+        stack.push(root.children.entrySet().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Map.Entry<Character, Node>> children = stack.peek();
+            if (!children.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Map.Entry<Character, Node> child = children.next();
+            Node node = child.getValue();
+            out.writeChar(child.getKey());
+            out.writeInt(node.count);
+            out.writeInt(node.children.size());
+            stack.push(node.children.entrySet().iterator());
+        }
+    }
+
+    /**
+     * Восстанавливает дерево, записанное {@link #writeTo(DataOutput)}, в пустой индекс.
+     * Строки и максимумы поддеревьев восстанавливаются по ходу чтения, без повторного спуска от корня.
+     */
+    void readFrom(ByteBuffer in) {
+        if (distinctKeys != 0 || !root.children.isEmpty()) {
+            throw new IllegalStateException("Index must be empty");
+        }
+        record Frame(Node node, int remaining) {
+        }
+        root.count = in.getInt();
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(root, in.getInt()));
+        StringBuilder prefix = new StringBuilder();
+        while (!stack.isEmpty()) {
+            Frame frame = stack.pop();
+            if (frame.remaining() == 0) {
+                Frame parent = stack.peek();
+                if (parent != null) {
+                    parent.node().subtreeMax = Math.max(parent.node().subtreeMax, frame.node().subtreeMax);
+                    prefix.setLength(prefix.length() - 1);
+                }
+                continue;
+            }
+            stack.push(new Frame(frame.node(), frame.remaining() - 1));
+            char c = in.getChar();
+            Node node = new Node();
+            node.count = in.getInt();
+            node.subtreeMax = node.count;
+            prefix.append(c);
+            if (node.count > 0) {
+                node.key = prefix.toString();
+                distinctKeys++;
+            }
+            frame.node().children.put(c, node);
+            nodes++;
+            stack.push(new Frame(node, in.getInt()));
+        }
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        return node;
+    }
+}
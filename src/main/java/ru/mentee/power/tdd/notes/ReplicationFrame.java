@@ -0,0 +1,207 @@
+package ru.mentee.power.tdd.notes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Кадр репликации: пачка событий ленты изменений или полный снимок заметок.
+ * На провод кадр уходит в двоичном виде, сжатым Deflate: тексты заметок и повторяющиеся теги
+ * сжимаются хорошо, а пачка из многих событий сжимается лучше, чем каждое событие отдельно.
+ *
+ * @param kind Пачка или снимок.
+ * @param primarySequence Номер последнего события первичного сервиса на момент отправки
+ *                        (для снимка — последнее событие, которое в нем учтено).
+ * @param nextId Следующий ID заметки на первичном сервисе (только для снимка, иначе 0).
+ * @param sentAtMillis Время отправки по часам первичного сервиса.
+ * @param events События пачки или события ADDED снимка.
+ */
+record ReplicationFrame(Kind kind, long primarySequence, int nextId, long sentAtMillis, List<NoteEvent> events) {
+
+    enum Kind {
+        BATCH, SNAPSHOT
+    }
+
+    static final int MAGIC = 0x4E4F5445; // "NOTE"
+    static final int VERSION = 2;
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private static final NoteEvent.Type[] TYPES = NoteEvent.Type.values();
+
+    static ReplicationFrame batch(long primarySequence, List<NoteEvent> events) {
+        return new ReplicationFrame(Kind.BATCH, primarySequence, 0, System.currentTimeMillis(), List.copyOf(events));
+    }
+
+    static ReplicationFrame snapshot(long primarySequence, int nextId, List<NoteEvent> events) {
+        return new ReplicationFrame(Kind.SNAPSHOT, primarySequence, nextId, System.currentTimeMillis(), List.copyOf(events));
+    }
+
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(kind.ordinal());
+            out.writeLong(primarySequence);
+            out.writeInt(nextId);
+            out.writeLong(sentAtMillis);
+            out.writeInt(events.size());
+            for (NoteEvent event : events) {
+                out.writeLong(event.sequence());
+                out.writeByte(event.type().ordinal());
+                out.writeInt(event.noteId());
+                writeString(out, event.title());
+                writeString(out, event.text());
+                if (event.tags() == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(event.tags().size());
+                    for (String tag : event.tags()) {
+                        writeString(out, tag);
+                    }
+                }
+                writeString(out, event.tag());
+                out.writeLong(event.creationDate() == null ? Long.MIN_VALUE : event.creationDate().toEpochDay());
+                out.writeLong(event.version());
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream не бросает IOException
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Разбирает кадр, проверяя каждое поле: число событий и длины строк, типы, даты и обязательные для типа
+     * события поля. Любое нарушение структуры — IOException, чтобы реплика не применила испорченное событие
+     * и не упала на нем посреди применения.
+     * @throws IOException если данные повреждены или записаны другой версией формата.
+     */
+    static ReplicationFrame decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a replication frame");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported replication frame version: " + version);
+            }
+            Kind kind = KINDS[ordinal(in.readUnsignedByte(), KINDS.length, "frame kind")];
+            long primarySequence = in.readLong();
+            int nextId = in.readInt();
+            long sentAtMillis = in.readLong();
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupted replication frame: " + count + " events");
+            }
+            // Число событий не заслуживает доверия до того, как они прочитаны: список растет по мере чтения
+            List<NoteEvent> events = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                long sequence = in.readLong();
+                NoteEvent.Type type = TYPES[ordinal(in.readUnsignedByte(), TYPES.length, "event type")];
+                int noteId = in.readInt();
+                String title = readString(in);
+                String text = readString(in);
+                int tagCount = in.readInt();
+                if (tagCount < -1) {
+                    throw new IOException("Corrupted replication frame: " + tagCount + " tags");
+                }
+                Set<String> tags = null;
+                if (tagCount >= 0) {
+                    Set<String> read = new HashSet<>();
+                    for (int t = 0; t < tagCount; t++) {
+                        String value = readString(in);
+                        if (value == null || !read.add(value)) {
+                            throw new IOException("Corrupted replication frame: missing or repeated tag");
+                        }
+                    }
+                    tags = Set.copyOf(read);
+                }
+                String tag = readString(in);
+                LocalDate creationDate = creationDate(in.readLong());
+                long noteVersion = in.readLong();
+                events.add(checked(new NoteEvent(sequence, type, noteId, title, text, tags, tag, creationDate,
+                        noteVersion)));
+            }
+            return new ReplicationFrame(kind, primarySequence, nextId, sentAtMillis, List.copyOf(events));
+        }
+    }
+
+    private static int ordinal(int value, int count, String what) throws IOException {
+        if (value >= count) {
+            throw new IOException("Corrupted replication frame: unknown " + what + " " + value);
+        }
+        return value;
+    }
+
+    private static LocalDate creationDate(long epochDay) throws IOException {
+        if (epochDay == Long.MIN_VALUE) {
+            return null;
+        }
+        try {
+            return LocalDate.ofEpochDay(epochDay);
+        } catch (DateTimeException e) {
+            throw new IOException("Corrupted replication frame: creation day " + epochDay, e);
+        }
+    }
+
+    // Поля, без которых событие своего типа нельзя применить
+    private static NoteEvent checked(NoteEvent event) throws IOException {
+        boolean complete = switch (event.type()) {
+            case ADDED -> event.title() != null && event.text() != null && event.tags() != null
+                    && event.creationDate() != null && event.version() >= 1;
+            case UPDATED -> event.title() != null && event.text() != null && event.version() >= 1;
+            case TAG_ADDED, TAG_REMOVED -> event.tag() != null && event.version() >= 1;
+            case DELETED -> true;
+        };
+        if (!complete) {
+            throw new IOException("Corrupted replication frame: incomplete " + event.type() + " event "
+                    + event.sequence());
+        }
+        return event;
+    }
+
+    // writeUTF ограничен 64 КБ, а текст заметки может быть длиннее
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Corrupted replication frame: string of " + length + " bytes");
+        }
+        byte[] utf8 = in.readNBytes(length);
+        if (utf8.length != length) {
+            throw new EOFException("Truncated replication frame");
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,169 @@
+package ru.mentee.power.tdd.notes;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отправляющая сторона репликации: читает ленту изменений первичного {@link NoteService}
+ * и отправляет события пачками в канал. Первым кадром уходит снимок всех заметок; снимок
+ * отправляется заново и тогда, когда отправка отстала настолько, что нужные события уже
+ * вытеснены из ленты.
+ * Отправлять можно вручную через {@link #shipOnce()} или в фоновом потоке через {@link #start}.
+ */
+public final class ReplicationPrimary implements AutoCloseable {
+
+    private final NoteService service;
+    private final ReplicationTransport transport;
+    private final int maxBatchSize;
+
+    // Подписку читает только один поток: вызывающий shipOnce или фоновый
+    private ChangeFeed.Subscription subscription;
+    private volatile long shippedSequence;
+    private volatile long snapshotsSent;
+    private volatile IOException failure;
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * @param service Первичный сервис с включенной лентой изменений.
+     * @param transport Канал к реплике.
+     * @param maxBatchSize Сколько событий отправлять в одном кадре.
+     */
+    public ReplicationPrimary(NoteService service, ReplicationTransport transport, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        if (!service.isChangeFeedEnabled()) {
+            throw new IllegalArgumentException("Replication needs a service with the change feed enabled");
+        }
+        this.service = service;
+        this.transport = transport;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Отправляет то, что накопилось в ленте, не дожидаясь новых событий.
+     * @return Сколько событий отправлено (для снимка — сколько заметок в нем).
+     * @throws IOException если канал сломан.
+     * @throws IllegalStateException если уже работает фоновый поток.
+     */
+    public synchronized int shipOnce() throws IOException {
+        if (worker != null) {
+            throw new IllegalStateException("Replication runs in the background thread");
+        }
+        try {
+            return ship(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    /**
+     * Запускает фоновый поток, который отправляет события по мере появления.
+     * @param maxDelay Сколько самое большее ждать, пока наберется пачка.
+     * @param unit Единица времени.
+     */
+    public synchronized void start(long maxDelay, TimeUnit unit) {
+        if (worker != null) {
+            throw new IllegalStateException("Replication is already started");
+        }
+        running = true;
+        worker = new Thread(() -> {
+            while (running) {
+                try {
+                    ship(maxDelay, unit);
+                } catch (IOException e) {
+                    if (running) {
+                        failure = e;
+                    }
+                    running = false;
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+            }
+        }, "replication-primary");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private int ship(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        if (subscription == null) {
+            return shipSnapshot();
+        }
+        List<NoteEvent> events;
+        try {
+            events = subscription.poll(maxBatchSize, timeout, unit);
+        } catch (IllegalStateException overrun) {
+            // Лента ушла вперед, пропущенные события уже не прочитать: догоняем реплику снимком
+            return shipSnapshot();
+        }
+        if (events.isEmpty()) {
+            return 0;
+        }
+        transport.send(ReplicationFrame.batch(service.getLastChangeSequence(), events).encode());
+        shippedSequence = events.get(events.size() - 1).sequence();
+        return events.size();
+    }
+
+    private int shipSnapshot() throws IOException {
+        ReplicationFrame snapshot;
+        while (true) {
+            snapshot = service.snapshot();
+            try {
+                // Подписка создается до отправки, чтобы события после снимка не успели вытесниться
+                subscription = service.subscribeToChanges(snapshot.primarySequence() + 1);
+                break;
+            } catch (IllegalStateException overrun) {
+                // Между снимком и подпиской записей оказалось больше емкости ленты: снимаем заново
+            }
+        }
+        transport.send(snapshot.encode());
+        shippedSequence = snapshot.primarySequence();
+        snapshotsSent++;
+        return snapshot.events().size();
+    }
+
+    /**
+     * @return Номер последнего отправленного события первичного сервиса.
+     */
+    public long getShippedSequence() {
+        return shippedSequence;
+    }
+
+    /**
+     * @return Сколько снимков отправлено (первый снимок и догоняющие после переполнения ленты).
+     */
+    public long getSnapshotsSent() {
+        return snapshotsSent;
+    }
+
+    /**
+     * @return Ошибка, на которой остановился фоновый поток, или null.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Останавливает фоновый поток и закрывает канал.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = worker;
+        }
+        // Канал закрывается первым, чтобы фоновый поток не остался ждать места в нем
+        transport.close();
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
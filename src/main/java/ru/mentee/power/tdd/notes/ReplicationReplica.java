@@ -0,0 +1,168 @@
+package ru.mentee.power.tdd.notes;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Принимающая сторона репликации: получает кадры из канала и применяет их к реплике —
+ * обычно к {@link NoteService}, созданному с {@link NoteServiceOptions#withReadOnly(boolean)}.
+ * Читатели реплики видят каждое событие целиком: оно применяется под блокировкой записи сервиса.
+ * Кадры можно применять вручную через {@link #applyNext} или в фоновом потоке через {@link #start()}.
+ */
+public final class ReplicationReplica implements AutoCloseable {
+
+    private final NoteService replica;
+    private final ReplicationTransport transport;
+    // Отдельный монитор: close() не должен ждать, пока applyNext дочитает кадр
+    private final Object applyLock = new Object();
+
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long lagMillis;
+    private volatile long snapshotsApplied;
+    private volatile IOException failure;
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * @param replica Сервис, в который применяются изменения.
+     * @param transport Канал от первичного сервиса.
+     */
+    public ReplicationReplica(NoteService replica, ReplicationTransport transport) {
+        this.replica = replica;
+        this.transport = transport;
+    }
+
+    /**
+     * Ждет следующий кадр и применяет его.
+     * @param timeout Сколько ждать кадр.
+     * @param unit Единица времени.
+     * @return true, если кадр получен и применен; false, если за это время ничего не пришло.
+     * @throws IOException если канал сломан или кадр поврежден.
+     * @throws IllegalStateException если в потоке событий пропуск (пачка пришла раньше снимка).
+     * @throws InterruptedException если поток прерван во время ожидания.
+     */
+    public boolean applyNext(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        synchronized (applyLock) {
+            return receiveAndApply(timeout, unit);
+        }
+    }
+
+    private boolean receiveAndApply(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        byte[] data = transport.receive(timeout, unit);
+        if (data == null) {
+            return false;
+        }
+        ReplicationFrame frame = ReplicationFrame.decode(data);
+        if (frame.kind() == ReplicationFrame.Kind.SNAPSHOT) {
+            replica.loadSnapshot(frame);
+            appliedSequence = frame.primarySequence();
+            snapshotsApplied++;
+        } else {
+            for (NoteEvent event : frame.events()) {
+                if (event.sequence() <= appliedSequence) {
+                    continue; // уже учтено снимком
+                }
+                if (event.sequence() != appliedSequence + 1) {
+                    throw new IllegalStateException("Gap in replication stream: expected event "
+                            + (appliedSequence + 1) + ", got " + event.sequence());
+                }
+                replica.applyReplicated(event);
+                appliedSequence = event.sequence();
+            }
+        }
+        primarySequence = Math.max(primarySequence, frame.primarySequence());
+        lagMillis = Math.max(0, System.currentTimeMillis() - frame.sentAtMillis());
+        return true;
+    }
+
+    /**
+     * Запускает фоновый поток, который применяет кадры по мере поступления.
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            throw new IllegalStateException("Replication is already started");
+        }
+        running = true;
+        worker = new Thread(() -> {
+            while (running) {
+                try {
+                    applyNext(100, TimeUnit.MILLISECONDS);
+                } catch (IOException | RuntimeException e) {
+                    // Поток не должен завершиться молча: любая ошибка видна через getFailure()
+                    if (running) {
+                        failure = e instanceof IOException io ? io : new IOException(e);
+                    }
+                    running = false;
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+            }
+        }, "replication-replica");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * @return Номер последнего примененного события первичного сервиса.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return Номер последнего события первичного сервиса, о котором известно реплике.
+     */
+    public long getPrimarySequence() {
+        return primarySequence;
+    }
+
+    /**
+     * @return На сколько событий реплика отстает от первичного сервиса (по последнему полученному кадру).
+     */
+    public long getLagEvents() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    /**
+     * @return Сколько миллисекунд прошло от отправки последнего кадра до его применения.
+     *         Считается по часам двух сторон, поэтому между разными машинами точность зависит от их синхронизации.
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * @return Сколько снимков применено.
+     */
+    public long getSnapshotsApplied() {
+        return snapshotsApplied;
+    }
+
+    /**
+     * @return Ошибка, на которой остановился фоновый поток, или null.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Останавливает фоновый поток и закрывает канал.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = worker;
+        }
+        transport.close();
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
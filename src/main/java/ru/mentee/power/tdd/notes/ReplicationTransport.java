@@ -0,0 +1,31 @@
+package ru.mentee.power.tdd.notes;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Канал, по которому первичный {@link NoteService} отправляет кадры репликации реплике.
+ * Канал однонаправленный и сохраняет порядок кадров; содержимое кадра для него — непрозрачные байты.
+ */
+public interface ReplicationTransport extends AutoCloseable {
+
+    /**
+     * Отправляет кадр. Может блокироваться, пока получатель не освободит место.
+     * @param frame Байты кадра.
+     * @throws IOException если канал закрыт или сломан.
+     */
+    void send(byte[] frame) throws IOException;
+
+    /**
+     * Ждет следующий кадр.
+     * @param timeout Сколько ждать.
+     * @param unit Единица времени.
+     * @return Байты кадра или null, если за это время ничего не пришло.
+     * @throws IOException если канал закрыт или сломан.
+     * @throws InterruptedException если поток прерван во время ожидания.
+     */
+    byte[] receive(long timeout, TimeUnit unit) throws IOException, InterruptedException;
+
+    @Override
+    void close() throws IOException;
+}
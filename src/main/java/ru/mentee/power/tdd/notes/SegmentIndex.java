@@ -0,0 +1,66 @@
+package ru.mentee.power.tdd.notes;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Поиск архивного сегмента по ID заметки. Сегменты отсортированы по наименьшему ID; для каждого
+ * хранится наибольший ID среди него и всех сегментов левее. Поиск — двоичный поиск последнего сегмента,
+ * начинающегося не правее ID, и шаги влево, пока этот наибольший ID не меньше искомого.
+ * Диапазоны сегментов разных месяцев обычно не пересекаются (ID растут со временем), и тогда проверяется
+ * один сегмент; пересечения (заметки с датой из прошлого, пришедшие репликацией) лишь удлиняют шаги влево.
+ * Индекс неизменяемый: сервис строит новый после каждой архивации.
+ */
+final class SegmentIndex {
+
+    static final SegmentIndex EMPTY = new SegmentIndex(new NoteSegment[0]);
+
+    private final NoteSegment[] segments;
+    private final int[] minIds;
+    private final int[] maxIdsSoFar;
+
+    private SegmentIndex(NoteSegment[] segments) {
+        this.segments = segments;
+        minIds = new int[segments.length];
+        maxIdsSoFar = new int[segments.length];
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < segments.length; i++) {
+            minIds[i] = segments[i].minId();
+            max = Math.max(max, segments[i].maxId());
+            maxIdsSoFar[i] = max;
+        }
+    }
+
+    /**
+     * @param segments Непустые сегменты архива в любом порядке.
+     */
+    static SegmentIndex of(Collection<NoteSegment> segments) {
+        NoteSegment[] sorted = segments.toArray(new NoteSegment[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(NoteSegment::minId));
+        return new SegmentIndex(sorted);
+    }
+
+    /**
+     * @return Сегмент, где заметка с этим ID жива, или null.
+     */
+    NoteSegment find(int id) {
+        int low = 0;
+        int high = minIds.length - 1;
+        // Последний сегмент с minId <= id
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (minIds[middle] <= id) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        for (int i = high; i >= 0 && maxIdsSoFar[i] >= id; i--) {
+            if (segments[i].positionOf(id) >= 0) {
+                return segments[i];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.mentee.power.tdd.notes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Канал репликации поверх TCP-соединения: каждый кадр предваряется его длиной (4 байта).
+ * Подходит для реплик в других процессах; в тестах используется соединение через loopback.
+ * Одна сторона соединения только отправляет, другая только принимает.
+ */
+public final class SocketTransport implements ReplicationTransport {
+
+    /** Максимальный размер кадра; все, что больше, считается повреждением потока. */
+    static final int MAX_FRAME_SIZE = 1 << 30;
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+
+    /**
+     * @param socket Подключенный сокет; закрывается вместе с каналом.
+     * @throws IOException если не удалось получить потоки сокета.
+     */
+    public SocketTransport(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    @Override
+    public synchronized void send(byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    @Override
+    public byte[] receive(long timeout, TimeUnit unit) throws IOException {
+        // Таймаут действует только на ожидание первого байта: если прервать чтение
+        // посреди кадра, поток потеряет границы кадров
+        socket.setSoTimeout((int) Math.max(1, Math.min(Integer.MAX_VALUE, unit.toMillis(timeout))));
+        int first;
+        try {
+            first = in.read();
+        } catch (SocketTimeoutException e) {
+            return null;
+        }
+        if (first < 0) {
+            throw new EOFException("Replication connection closed by peer");
+        }
+        socket.setSoTimeout(0);
+        int length = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid replication frame length: " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
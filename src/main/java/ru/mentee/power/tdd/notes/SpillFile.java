@@ -0,0 +1,101 @@
+package ru.mentee.power.tdd.notes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Файл, в который вытесняются тексты холодных заметок. Записи только дописываются в конец;
+ * место удаленных и вновь загруженных записей учитывается как мусор и освобождается
+ * переписыванием живых записей в новый файл (см. {@link TextStorage#startCompaction()}
+ * и {@link TextStorage#finishCompaction(SpillFile)}).
+ * Файл открывается с DELETE_ON_CLOSE и не переживает процесс.
+ */
+final class SpillFile {
+
+    private final Path path;
+    private final FileChannel channel;
+    private long size;
+    private final AtomicLong deadBytes = new AtomicLong();
+
+    private SpillFile(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    static SpillFile create(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Path path = Files.createTempFile(directory, "notes-", ".spill");
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            return new SpillFile(path, channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create spill file in " + directory, e);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * @return Смещение записанных данных в файле.
+     */
+    synchronized long append(byte[] data) {
+        long offset = size;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write to spill file " + path, e);
+        }
+        size += data.length;
+        return offset;
+    }
+
+    byte[] read(long offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of spill file at " + (offset + buffer.position()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read spill file " + path, e);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Отмечает запись как ненужную.
+     */
+    void release(int length) {
+        deadBytes.addAndGet(length);
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    long deadBytes() {
+        return deadBytes.get();
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close spill file " + path, e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.mentee.power.tdd.notes;
+
+/**
+ * Вариант автодополнения или нечеткого поиска.
+ *
+ * @param text Заголовок или тег в нормализованном виде.
+ * @param frequency Сколько заметок имеют такой заголовок или тег.
+ * @param distance Расстояние Левенштейна до запроса (0 для дополнения по префиксу).
+ */
+public record Suggestion(String text, int frequency, int distance) {
+}
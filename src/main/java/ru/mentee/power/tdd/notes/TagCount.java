@@ -0,0 +1,10 @@
+package ru.mentee.power.tdd.notes;
+
+/**
+ * Число заметок с данным тегом (в выборке или во всем сервисе).
+ *
+ * @param tag Тег.
+ * @param count Число заметок.
+ */
+public record TagCount(String tag, int count) {
+}
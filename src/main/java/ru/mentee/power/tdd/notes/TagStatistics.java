@@ -0,0 +1,312 @@
+package ru.mentee.power.tdd.notes;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Статистика по тегам, которая поддерживается инкрементально при каждом изменении заметок:
+ * битовая карта ID заметок для каждого тега и матрица совместной встречаемости тегов.
+ */
+final class TagStatistics {
+
+    /** Оценка битовой карты без слов: запись в карте, объект BitSet и заголовок массива. */
+    static final int POSTING_OVERHEAD = 80;
+    /** Оценка строки матрицы без пар: запись в карте и пустая HashMap. */
+    static final int ROW_OVERHEAD = 96;
+    /** Оценка пары в строке матрицы: запись, ячейка таблицы и упакованный счетчик. */
+    static final int PAIR_BYTES = 56;
+
+    private final Map<String, BitSet> postings = new HashMap<>();
+    // tag -> (другой tag -> в скольких заметках они встречаются вместе); хранится симметрично
+    private final Map<String, Map<String, Integer>> coOccurrence = new HashMap<>();
+    // Оценка памяти карт и матрицы; меняется под блокировкой записи сервиса, читается и без нее
+    private volatile long heapBytes;
+
+    void noteAdded(int id, Set<String> tags) {
+        List<String> added = new ArrayList<>(tags.size());
+        for (String tag : tags) {
+            tagAdded(id, tag, added);
+            added.add(tag);
+        }
+    }
+
+    void noteRemoved(int id, Set<String> tags) {
+        List<String> remaining = new ArrayList<>(tags);
+        for (String tag : tags) {
+            remaining.remove(tag);
+            tagRemoved(id, tag, remaining);
+        }
+    }
+
+    /**
+     * @param otherTags Теги, которые уже были у заметки до добавления tag.
+     */
+    void tagAdded(int id, String tag, Iterable<String> otherTags) {
+        BitSet ids = postings.get(tag);
+        long before = ids == null ? 0 : postingBytes(ids);
+        if (ids == null) {
+            ids = new BitSet();
+            postings.put(tag, ids);
+        }
+        ids.set(id);
+        heapBytes += postingBytes(ids) - before;
+        for (String other : otherTags) {
+            if (!other.equals(tag)) {
+                adjustPair(tag, other, 1);
+                adjustPair(other, tag, 1);
+            }
+        }
+    }
+
+    /**
+     * @param remainingTags Теги, оставшиеся у заметки после удаления tag.
+     */
+    void tagRemoved(int id, String tag, Iterable<String> remainingTags) {
+        BitSet ids = postings.get(tag);
+        if (ids == null) {
+            return;
+        }
+        ids.clear(id);
+        if (ids.isEmpty()) {
+            postings.remove(tag);
+            heapBytes -= postingBytes(ids);
+        }
+        for (String other : remainingTags) {
+            if (!other.equals(tag)) {
+                adjustPair(tag, other, -1);
+                adjustPair(other, tag, -1);
+            }
+        }
+    }
+
+    /**
+     * Восстанавливает готовую битовую карту тега (при открытии образа); заметки тега не перебираются.
+     */
+    void restorePosting(String tag, BitSet ids) {
+        if (!ids.isEmpty()) {
+            BitSet previous = postings.put(tag, ids);
+            heapBytes += postingBytes(ids) - (previous == null ? 0 : postingBytes(previous));
+        }
+    }
+
+    /**
+     * Восстанавливает счетчик совместной встречаемости пары тегов в обе стороны.
+     */
+    void restorePair(String tag, String other, int count) {
+        if (count > 0 && !tag.equals(other)) {
+            setPair(tag, other, count);
+            setPair(other, tag, count);
+        }
+    }
+
+    BitSet posting(String tag) {
+        return postings.get(tag);
+    }
+
+    Set<String> tags() {
+        return Collections.unmodifiableSet(postings.keySet());
+    }
+
+    /**
+     * @return Оценка памяти битовых карт и матрицы совместной встречаемости.
+     */
+    long heapBytes() {
+        return heapBytes;
+    }
+
+    private static long postingBytes(BitSet ids) {
+        return POSTING_OVERHEAD + ids.size() / Byte.SIZE;
+    }
+
+    int documentCount(String tag) {
+        BitSet ids = postings.get(tag);
+        return ids == null ? 0 : ids.cardinality();
+    }
+
+    /**
+     * @return ID заметок, у которых есть все теги (пустая карта, если какого-то тега нет).
+     */
+    BitSet idsWithAll(Set<String> tags) {
+        BitSet result = null;
+        for (String tag : tags) {
+            BitSet ids = postings.get(tag);
+            if (ids == null) {
+                return new BitSet();
+            }
+            if (result == null) {
+                result = (BitSet) ids.clone();
+            } else {
+                result.and(ids);
+            }
+        }
+        return result == null ? new BitSet() : result;
+    }
+
+    int coOccurrence(String first, String second) {
+        return coOccurrence.getOrDefault(first, Map.of()).getOrDefault(second, 0);
+    }
+
+    Map<String, Integer> coOccurringWith(String tag) {
+        return Map.copyOf(coOccurrence.getOrDefault(tag, Map.of()));
+    }
+
+    /**
+     * Считает теги в выборке заметок.
+     * @param ids ID заметок выборки.
+     * @param topN Сколько самых частых тегов вернуть.
+     * @param tagsOf Теги заметки по ID (для маленьких выборок выгоднее пройти по заметкам).
+     */
+    List<TagCount> facet(BitSet ids, int topN, IntFunction<Set<String>> tagsOf) {
+        int resultSize = ids.cardinality();
+        Map<String, Integer> counts = new HashMap<>();
+        if (resultSize <= postings.size()) {
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                for (String tag : tagsOf.apply(id)) {
+                    counts.merge(tag, 1, Integer::sum);
+                }
+            }
+        } else {
+            // Буфер свой на каждый вызов: facet могут одновременно вызывать несколько читателей
+            BitSet scratch = new BitSet(ids.length());
+            for (Map.Entry<String, BitSet> posting : postings.entrySet()) {
+                scratch.clear();
+                scratch.or(posting.getValue());
+                scratch.and(ids);
+                int count = scratch.cardinality();
+                if (count > 0) {
+                    counts.put(posting.getKey(), count);
+                }
+            }
+        }
+        List<TagCount> result = new ArrayList<>(counts.size());
+        counts.forEach((tag, count) -> result.add(new TagCount(tag, count)));
+        result.sort(Comparator.comparingInt(TagCount::count).reversed().thenComparing(TagCount::tag));
+        return result.size() > topN ? new ArrayList<>(result.subList(0, Math.max(topN, 0))) : result;
+    }
+
+    /**
+     * @return Накопитель для пакетного изменения многих заметок (см. {@link Batch}).
+     */
+    Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Пакетное изменение: правки заметок копятся в накопителе, а затем {@link #apply()} применяет их
+     * к битовым картам один раз на тег и к матрице совместной встречаемости один раз на пару тегов.
+     * Результат тот же, что у последовательных tagAdded/tagRemoved/noteRemoved для тех же заметок,
+     * если один и тот же тег не снимается и не добавляется одной заметке в одном пакете.
+     */
+    final class Batch {
+
+        private final Map<String, BitSet> added = new HashMap<>();
+        private final Map<String, BitSet> removed = new HashMap<>();
+        // Изменения счетчиков пар: ключ — меньший тег пары, при применении счетчик меняется в обе стороны
+        private final Map<String, Map<String, Integer>> pairDeltas = new HashMap<>();
+
+        void tagAdded(int id, String tag, Iterable<String> otherTags) {
+            added.computeIfAbsent(tag, t -> new BitSet()).set(id);
+            pairs(tag, otherTags, 1);
+        }
+
+        void tagRemoved(int id, String tag, Iterable<String> remainingTags) {
+            removed.computeIfAbsent(tag, t -> new BitSet()).set(id);
+            pairs(tag, remainingTags, -1);
+        }
+
+        void noteRemoved(int id, Set<String> tags) {
+            for (String tag : tags) {
+                removed.computeIfAbsent(tag, t -> new BitSet()).set(id);
+                // Каждая пара встретится при обходе дважды, учитываем ее один раз
+                for (String other : tags) {
+                    if (tag.compareTo(other) < 0) {
+                        pairDeltas.computeIfAbsent(tag, t -> new HashMap<>()).merge(other, -1, Integer::sum);
+                    }
+                }
+            }
+        }
+
+        private void pairs(String tag, Iterable<String> otherTags, int delta) {
+            for (String other : otherTags) {
+                int order = tag.compareTo(other);
+                if (order != 0) {
+                    // Пара всегда под одним ключом, чтобы прибавления и вычитания по ней складывались до применения
+                    String first = order < 0 ? tag : other;
+                    String second = order < 0 ? other : tag;
+                    pairDeltas.computeIfAbsent(first, t -> new HashMap<>()).merge(second, delta, Integer::sum);
+                }
+            }
+        }
+
+        /**
+         * @return Тег -> на сколько изменилось число заметок с ним (для индекса тегов).
+         */
+        Map<String, Integer> documentCountDeltas() {
+            Map<String, Integer> deltas = new HashMap<>();
+            added.forEach((tag, ids) -> deltas.merge(tag, ids.cardinality(), Integer::sum));
+            removed.forEach((tag, ids) -> deltas.merge(tag, -ids.cardinality(), Integer::sum));
+            return deltas;
+        }
+
+        void apply() {
+            removed.forEach((tag, ids) -> {
+                BitSet posting = postings.get(tag);
+                if (posting != null) {
+                    posting.andNot(ids);
+                    if (posting.isEmpty()) {
+                        postings.remove(tag);
+                        heapBytes -= postingBytes(posting);
+                    }
+                }
+            });
+            added.forEach((tag, ids) -> {
+                BitSet posting = postings.get(tag);
+                long before = posting == null ? 0 : postingBytes(posting);
+                if (posting == null) {
+                    posting = new BitSet();
+                    postings.put(tag, posting);
+                }
+                posting.or(ids);
+                heapBytes += postingBytes(posting) - before;
+            });
+            pairDeltas.forEach((tag, row) -> row.forEach((other, delta) -> {
+                if (delta != 0) {
+                    adjustPair(tag, other, delta);
+                    adjustPair(other, tag, delta);
+                }
+            }));
+        }
+    }
+
+    private void adjustPair(String tag, String other, int delta) {
+        Map<String, Integer> row = coOccurrence.getOrDefault(tag, Map.of());
+        setPair(tag, other, row.getOrDefault(other, 0) + delta);
+    }
+
+    private void setPair(String tag, String other, int value) {
+        Map<String, Integer> row = coOccurrence.get(tag);
+        if (value > 0) {
+            if (row == null) {
+                row = new HashMap<>();
+                coOccurrence.put(tag, row);
+                heapBytes += ROW_OVERHEAD;
+            }
+            if (row.put(other, value) == null) {
+                heapBytes += PAIR_BYTES;
+            }
+        } else if (row != null && row.remove(other) != null) {
+            heapBytes -= PAIR_BYTES;
+            if (row.isEmpty()) {
+                coOccurrence.remove(tag);
+                heapBytes -= ROW_OVERHEAD;
+            }
+        }
+    }
+}
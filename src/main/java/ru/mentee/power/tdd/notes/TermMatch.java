@@ -0,0 +1,13 @@
+package ru.mentee.power.tdd.notes;
+
+import java.util.Set;
+
+/**
+ * Результат поиска по нескольким словам: заметка и слова запроса, найденные в ней.
+ *
+ * @param note Найденная заметка.
+ * @param matchedTerms Слова запроса (в исходном виде), найденные в заголовке или тексте;
+ *                     для {@link TermMatchMode#PHRASE} — вся фраза, слова через пробел.
+ */
+public record TermMatch(Note note, Set<String> matchedTerms) {
+}
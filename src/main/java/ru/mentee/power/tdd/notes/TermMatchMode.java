@@ -0,0 +1,13 @@
+package ru.mentee.power.tdd.notes;
+
+/**
+ * Как сочетать несколько слов в запросе {@link NoteService#findNotesByTerms}.
+ */
+public enum TermMatchMode {
+    /** Заметка подходит, если содержит хотя бы одно слово. */
+    ANY,
+    /** Заметка подходит, если содержит все слова (в любом порядке). */
+    ALL,
+    /** Заметка подходит, если содержит слова подряд, через пробел, в указанном порядке. */
+    PHRASE
+}
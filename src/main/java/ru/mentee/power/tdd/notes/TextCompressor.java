@@ -0,0 +1,173 @@
+package ru.mentee.power.tdd.notes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие текстов заметок Deflate с заранее заданным словарем. Короткие тексты сами по себе сжимаются
+ * плохо, потому что повторов внутри одного текста мало; словарь из частых слов корпуса дает сжатию
+ * повторы «из соседних заметок». Словарь неизменяем: сжатые им данные им же и распаковываются,
+ * поэтому при переобучении создается новый экземпляр.
+ * Deflater и Inflater берутся из общего для всех экземпляров пула: их создание дороже самого сжатия
+ * короткого текста, а память zlib под ними нативная и освобождается только вызовом end(). Словарь задается
+ * при каждом использовании, поэтому переобучение новых объектов zlib не создает; лишние объекты,
+ * не поместившиеся обратно в пул, закрываются сразу.
+ */
+final class TextCompressor {
+
+    /** Максимальный размер словаря; больше окна Deflate (32 КБ) он все равно не используется. */
+    static final int MAX_DICTIONARY_SIZE = 16 * 1024;
+
+    static final TextCompressor WITHOUT_DICTIONARY = new TextCompressor(new byte[0]);
+
+    /** Сколько объектов zlib каждого вида держит пул; остальные закрываются после использования. */
+    static final int POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final byte[] dictionary;
+
+    TextCompressor(byte[] dictionary) {
+        this.dictionary = dictionary.clone();
+    }
+
+    /**
+     * Строит словарь по образцам текстов: частые слова, самые полезные (частота × длина) в конце словаря,
+     * где Deflate кодирует ссылки на них короче всего.
+     */
+    static TextCompressor train(Collection<String> samples) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String sample : samples) {
+            int start = 0;
+            for (int i = 1; i <= sample.length(); i++) {
+                // Слово вместе с пробелом после него: так в словарь попадают и частые сочетания с разделителем
+                if (i == sample.length() || Character.isWhitespace(sample.charAt(i - 1))) {
+                    if (i - start > 2) {
+                        counts.merge(sample.substring(start, i), 1, Integer::sum);
+                    }
+                    start = i;
+                }
+            }
+        }
+        List<Map.Entry<String, Integer>> words = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1) {
+                words.add(entry);
+            }
+        }
+        words.sort((a, b) -> Long.compare(score(b), score(a)));
+
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> word : words) {
+            byte[] utf8 = word.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + utf8.length > MAX_DICTIONARY_SIZE) {
+                continue;
+            }
+            chosen.add(utf8);
+            size += utf8.length;
+        }
+        byte[] dictionary = new byte[size];
+        int position = size;
+        for (byte[] word : chosen) {
+            position -= word.length;
+            System.arraycopy(word, 0, dictionary, position, word.length);
+        }
+        return new TextCompressor(dictionary);
+    }
+
+    private static long score(Map.Entry<String, Integer> word) {
+        return (long) word.getValue() * word.getKey().length();
+    }
+
+    int dictionarySize() {
+        return dictionary.length;
+    }
+
+    byte[] compress(byte[] utf8) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED, true);
+        }
+        try {
+            if (dictionary.length > 0) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(utf8);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, utf8.length / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.reset();
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * @param utf8Length Размер исходных данных, он хранится рядом со сжатыми.
+     */
+    byte[] decompress(byte[] compressed, int utf8Length) {
+        byte[] result = new byte[utf8Length];
+        decompress(compressed, result, utf8Length);
+        return result;
+    }
+
+    /**
+     * Распаковывает в готовый массив (буфер, переиспользуемый поиском).
+     * @param target Массив не короче utf8Length; заполняются его первые utf8Length байт.
+     */
+    void decompress(byte[] compressed, byte[] target, int utf8Length) {
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflate(inflater, compressed, target, utf8Length);
+        } finally {
+            inflater.reset();
+            if (!INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    private void inflate(Inflater inflater, byte[] compressed, byte[] target, int utf8Length) {
+        // В режиме без заголовка (nowrap) словарь задается сразу, а не по запросу needsDictionary
+        if (dictionary.length > 0) {
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(compressed);
+        try {
+            int length = 0;
+            while (length < utf8Length) {
+                int read = inflater.inflate(target, length, utf8Length - length);
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Compressed note text is truncated");
+                }
+                length += read;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed note text is corrupted", e);
+        }
+    }
+}
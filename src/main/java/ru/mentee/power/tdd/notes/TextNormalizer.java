@@ -0,0 +1,37 @@
+package ru.mentee.power.tdd.notes;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Способ приведения текста к форме для поиска без учета регистра (и, по желанию, диакритики).
+ * Нормализованная форма заметки вычисляется один раз при записи, а не при каждом поиске.
+ */
+public enum TextNormalizer {
+
+    /** Только регистр: "Заметка" и "заМЕТКА" совпадают. */
+    CASE_INSENSITIVE {
+        @Override
+        public String normalize(String text) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+    },
+
+    /** Регистр и диакритика: дополнительно "café" совпадает с "cafe", а "ё" с "е". */
+    CASE_AND_ACCENT_INSENSITIVE {
+        @Override
+        public String normalize(String text) {
+            String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+            return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        }
+    };
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * @param text Исходный текст.
+     * @return Нормализованный текст.
+     */
+    public abstract String normalize(String text);
+}
@@ -0,0 +1,97 @@
+package ru.mentee.power.tdd.notes;
+
+import java.util.Arrays;
+
+/**
+ * Заранее подготовленный шаблон поиска подстроки (алгоритм Бойера-Мура-Хорспула).
+ * Шаблон нормализуется один раз, а проверка текста не выделяет память,
+ * поэтому один экземпляр можно прогнать по всем заметкам.
+ * Таблица сдвигов индексируется младшим байтом символа, чтобы оставаться маленькой
+ * и для кириллицы; при совпадении младших байтов берется наименьший сдвиг.
+ */
+final class TextPattern {
+
+    private static final int TABLE_SIZE = 256;
+
+    private final String pattern;
+    private final char[] chars;
+    private final int[] shift;
+
+    /**
+     * @param normalizedPattern Уже нормализованный шаблон.
+     */
+    TextPattern(String normalizedPattern) {
+        this.pattern = normalizedPattern;
+        this.chars = normalizedPattern.toCharArray();
+        int length = chars.length;
+        this.shift = new int[TABLE_SIZE];
+        Arrays.fill(shift, Math.max(length, 1));
+        for (int i = 0; i < length - 1; i++) {
+            // Более правые позиции перезаписывают левые, так что в ячейке остается наименьший сдвиг
+            shift[chars[i] & (TABLE_SIZE - 1)] = length - 1 - i;
+        }
+    }
+
+    /**
+     * @return Нормализованный шаблон.
+     */
+    String pattern() {
+        return pattern;
+    }
+
+    /**
+     * @param normalizedText Уже нормализованный текст.
+     * @return true, если текст содержит шаблон.
+     */
+    boolean matches(String normalizedText) {
+        return indexIn(normalizedText, 0) >= 0;
+    }
+
+    /**
+     * @param normalizedText Уже нормализованный текст.
+     * @param from С какой позиции искать.
+     * @return Позиция первого вхождения шаблона не раньше from, или -1.
+     */
+    int indexIn(String normalizedText, int from) {
+        if (chars.length <= 2) {
+            // Для коротких шаблонов встроенный indexOf быстрее
+            return normalizedText.indexOf(pattern, from);
+        }
+        return indexIn(normalizedText, from, normalizedText.length());
+    }
+
+    /**
+     * @param normalizedText Уже нормализованный текст.
+     * @param from Начало участка текста (включительно).
+     * @param to Конец участка текста (не включительно).
+     * @return true, если участок [from, to) содержит шаблон целиком.
+     */
+    boolean matches(CharSequence normalizedText, int from, int to) {
+        return indexIn(normalizedText, from, to) >= 0;
+    }
+
+    // Поиск внутри участка [from, to): за его границу сравнение не выходит
+    private int indexIn(CharSequence normalizedText, int from, int to) {
+        int m = chars.length;
+        if (m == 0) {
+            return from <= to ? Math.max(from, 0) : -1;
+        }
+        int last = m - 1;
+        int limit = to - m;
+        int i = Math.max(from, 0);
+        while (i <= limit) {
+            char tail = normalizedText.charAt(i + last);
+            if (tail == chars[last]) {
+                int j = last - 1;
+                while (j >= 0 && normalizedText.charAt(i + j) == chars[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shift[tail & (TABLE_SIZE - 1)];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,555 @@
+package ru.mentee.power.tdd.notes;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Решает, как хранить тексты заметок одного {@link NoteService}: как есть или сжатыми, в памяти или на диске.
+ * Сжатый текст распаковывается лениво при {@link Note#getText()}; последние распакованные тексты
+ * держатся в небольшом LRU-кэше. Поиск распаковывает текст заметки в буферы своего потока и сравнивает
+ * прямо в них, не создавая строк и не трогая кэш, чтобы полный просмотр не вытеснял из кэша действительно
+ * нужные тексты. Форма для поиска у сжатого текста либо получается из него переводом каждого символа
+ * в нижний регистр, либо хранится рядом, тоже сжатой (например, если нормализатор убирает диакритику).
+ * Тексты холодных заметок можно вытеснить в {@link SpillFile}; в памяти от них остается только ссылка на запись.
+ * Ведет учет того, сколько памяти занимают тексты.
+ */
+final class TextStorage {
+
+    /** Тексты короче этого хранятся как есть: сжимать их невыгодно. */
+    static final int MIN_COMPRESSED_LENGTH = 64;
+
+    /** Файл вытеснения переписывается, когда мусора в нем больше половины и не меньше этого размера. */
+    static final long MIN_COMPACTION_GARBAGE = 1 << 20;
+
+    /** Оценка размера вытесненного тела в куче: объект со ссылками и положением записи. */
+    static final int SPILLED_BODY_BYTES = NoteBody.OBJECT_OVERHEAD + 40;
+
+    private final TextNormalizer normalizer;
+    private final boolean compress;
+    private volatile TextCompressor compressor = TextCompressor.WITHOUT_DICTIONARY;
+
+    private final Map<CompressedBody, String> cache;
+    private final int cacheSize;
+    private final AtomicLong cacheBytes = new AtomicLong();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    // Буферы поиска по сжатым текстам; растут до самого длинного просмотренного текста
+    private static final ThreadLocal<SearchBuffer> SEARCH_BUFFERS = ThreadLocal.withInitial(SearchBuffer::new);
+
+    private final Path spillDirectory;
+    private volatile SpillFile spillFile;
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong spilledBodies = new AtomicLong();
+    private final LongAdder spills = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder diskReads = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    /**
+     * @param compress Сжимать ли тексты.
+     * @param cacheSize Сколько распакованных текстов держать в памяти.
+     * @param spillDirectory Каталог для файла вытеснения или null, если вытеснять на диск нельзя.
+     */
+    TextStorage(TextNormalizer normalizer, boolean compress, int cacheSize, Path spillDirectory) {
+        this.normalizer = normalizer;
+        this.compress = compress;
+        this.cacheSize = cacheSize;
+        this.spillDirectory = spillDirectory;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CompressedBody, String> eldest) {
+                if (size() > TextStorage.this.cacheSize) {
+                    cacheBytes.addAndGet(-cachedBytes(eldest.getValue()));
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    static TextStorage plain(TextNormalizer normalizer) {
+        return new TextStorage(normalizer, false, 0, null);
+    }
+
+    TextNormalizer normalizer() {
+        return normalizer;
+    }
+
+    boolean isCompressing() {
+        return compress;
+    }
+
+    boolean canSpill() {
+        return spillDirectory != null;
+    }
+
+    NoteBody store(String text) {
+        NoteBody body = encode(text);
+        residentBytes.addAndGet(body.heapBytes());
+        return body;
+    }
+
+    /**
+     * Берет в учет тело, созданное вне хранилища (текст из образа, см. {@link NoteImage}).
+     */
+    NoteBody adopt(NoteBody body) {
+        residentBytes.addAndGet(body.heapBytes());
+        if (body.isSpilled()) {
+            spilledBodies.incrementAndGet();
+        }
+        return body;
+    }
+
+    private NoteBody encode(String text) {
+        NoteBody.Plain plain = new NoteBody.Plain(text, normalizer.normalize(text));
+        if (compress && text.length() >= MIN_COMPRESSED_LENGTH) {
+            TextCompressor current = compressor;
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            CompressedBody compressed = compressed(current, current.compress(utf8), utf8.length,
+                    plain.originalBytes(), text, plain.normalizedText());
+            if (compressed.storedBytes() < plain.storedBytes()) {
+                return compressed;
+            }
+        }
+        return plain;
+    }
+
+    // Форма для поиска сжимается отдельно, только если ее нельзя получить из текста посимвольно
+    private CompressedBody compressed(TextCompressor compressor, byte[] data, int utf8Length, int originalBytes,
+                                      String text, String normalized) {
+        if (isLowerCaseOf(text, normalized)) {
+            return new CompressedBody(compressor, data, utf8Length, null, 0, originalBytes);
+        }
+        byte[] normalizedUtf8 = normalized.getBytes(StandardCharsets.UTF_8);
+        return new CompressedBody(compressor, data, utf8Length, compressor.compress(normalizedUtf8),
+                normalizedUtf8.length, originalBytes);
+    }
+
+    private static boolean isLowerCaseOf(String text, String normalized) {
+        if (normalized == text) {
+            return true;
+        }
+        if (normalized.length() != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toLowerCase(text.charAt(i)) != normalized.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Обучает новый словарь на образцах текстов. Уже сжатые тексты остаются со старым словарем,
+     * пока их не пересохранят через {@link #store(String)}.
+     */
+    void train(Collection<String> samples) {
+        compressor = TextCompressor.train(samples);
+    }
+
+    /**
+     * Убирает из учета и из кэша текст, который больше не нужен (заметка изменена или удалена).
+     */
+    void forget(NoteBody body) {
+        residentBytes.addAndGet(-body.heapBytes());
+        if (body instanceof CompressedBody compressed) {
+            uncache(compressed);
+        } else if (body instanceof SpilledBody spilled) {
+            spilled.file.release(spilled.length);
+            spilledBodies.decrementAndGet();
+        } else if (body.isSpilled()) {
+            spilledBodies.decrementAndGet();
+        }
+    }
+
+    /**
+     * Вытесняет текст на диск. Вызывается под монитором заметки.
+     * @return Тело, ссылающееся на запись в файле, или исходное тело, если вытеснять нечего.
+     */
+    NoteBody spill(NoteBody body) {
+        // Короткий текст в памяти дешевле ссылки на запись в файле
+        if (!canSpill() || body.isSpilled() || body.heapBytes() <= SPILLED_BODY_BYTES) {
+            return body;
+        }
+        SpillFile file = spillFile();
+        SpilledBody spilled;
+        if (body instanceof CompressedBody compressed) {
+            spilled = new SpilledBody(file, file.append(compressed.data), compressed.data.length,
+                    compressed.utf8Length, compressed.originalBytes, compressed.compressor);
+            uncache(compressed);
+        } else {
+            byte[] utf8 = body.text().getBytes(StandardCharsets.UTF_8);
+            spilled = new SpilledBody(file, file.append(utf8), utf8.length, utf8.length, body.originalBytes(), null);
+        }
+        residentBytes.addAndGet(spilled.heapBytes() - body.heapBytes());
+        spilledBodies.incrementAndGet();
+        spills.increment();
+        return spilled;
+    }
+
+    /**
+     * Загружает в память вытесненный текст или текст из образа. Вызывается под монитором заметки.
+     */
+    NoteBody reload(NoteBody body) {
+        NoteBody loaded;
+        if (body instanceof SpilledBody spilled) {
+            loaded = spilled.load();
+            spilled.file.release(spilled.length);
+        } else if (body instanceof NoteImage.MappedBody mapped) {
+            loaded = compress ? encode(mapped.text()) : mapped.materialize();
+        } else {
+            return body;
+        }
+        residentBytes.addAndGet(loaded.heapBytes() - body.heapBytes());
+        spilledBodies.decrementAndGet();
+        reloads.increment();
+        return loaded;
+    }
+
+    /**
+     * Загружает вытесненный текст для заметки, которая покидает сервис: память такого текста больше не учитывается.
+     */
+    NoteBody detach(NoteBody body) {
+        forget(body);
+        return body instanceof SpilledBody spilled ? spilled.load() : body;
+    }
+
+    boolean needsCompaction() {
+        SpillFile file = spillFile;
+        return file != null && file.deadBytes() >= MIN_COMPACTION_GARBAGE && file.deadBytes() * 2 > file.size();
+    }
+
+    /**
+     * Переписывает живые записи в новый файл: вызывается под блокировкой записи сервиса
+     * для всех вытесненных заметок, затем {@link #finishCompaction(SpillFile)} закрывает старый файл.
+     */
+    SpillFile startCompaction() {
+        return SpillFile.create(spillDirectory);
+    }
+
+    /**
+     * Переносит запись вытесненного текста в новый файл. Вызывается под монитором заметки.
+     */
+    NoteBody relocate(NoteBody body, SpillFile target) {
+        if (!(body instanceof SpilledBody spilled) || spilled.file == target) {
+            return body;
+        }
+        byte[] data = spilled.file.read(spilled.offset, spilled.length);
+        return new SpilledBody(target, target.append(data), spilled.length,
+                spilled.utf8Length, spilled.originalBytes, spilled.compressor);
+    }
+
+    void finishCompaction(SpillFile target) {
+        SpillFile old = spillFile;
+        spillFile = target;
+        if (old != null) {
+            old.close();
+        }
+        compactions.increment();
+    }
+
+    private synchronized SpillFile spillFile() {
+        SpillFile file = spillFile;
+        if (file == null) {
+            file = SpillFile.create(spillDirectory);
+            spillFile = file;
+        }
+        return file;
+    }
+
+    int dictionarySize() {
+        return compressor.dictionarySize();
+    }
+
+    /**
+     * @return Оценка памяти текстов в хранилище вместе с кэшем распакованных текстов.
+     */
+    long getResidentBytes() {
+        return residentBytes.get() + cacheBytes.get();
+    }
+
+    /**
+     * @return Сколько памяти можно освободить, вытеснив все тексты, которые сейчас в памяти (оценка сверху).
+     */
+    long getSpillableBytes() {
+        return residentBytes.get() - spilledBodies.get() * SPILLED_BODY_BYTES;
+    }
+
+    long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    long getSpills() {
+        return spills.sum();
+    }
+
+    long getReloads() {
+        return reloads.sum();
+    }
+
+    long getDiskReads() {
+        return diskReads.sum();
+    }
+
+    long getCompactions() {
+        return compactions.sum();
+    }
+
+    long getSpillFileBytes() {
+        SpillFile file = spillFile;
+        return file == null ? 0 : file.size();
+    }
+
+    long getSpillGarbageBytes() {
+        SpillFile file = spillFile;
+        return file == null ? 0 : file.deadBytes();
+    }
+
+    private String cached(CompressedBody body) {
+        synchronized (cache) {
+            return cache.get(body);
+        }
+    }
+
+    private void cache(CompressedBody body, String text) {
+        if (cacheSize > 0) {
+            synchronized (cache) {
+                cacheBytes.addAndGet(cachedBytes(text));
+                String previous = cache.put(body, text);
+                if (previous != null) {
+                    cacheBytes.addAndGet(-cachedBytes(previous));
+                }
+            }
+        }
+    }
+
+    private void uncache(CompressedBody body) {
+        synchronized (cache) {
+            String removed = cache.remove(body);
+            if (removed != null) {
+                cacheBytes.addAndGet(-cachedBytes(removed));
+            }
+        }
+    }
+
+    // Запись кэша: строка и элемент LinkedHashMap
+    private static long cachedBytes(String text) {
+        return NoteBody.STRING_OVERHEAD + NoteBody.OBJECT_OVERHEAD * 3L + NoteBody.payloadBytes(text);
+    }
+
+    /**
+     * Сжатый текст. Равенство по ссылке: у каждой версии текста свой ключ в кэше.
+     */
+    private final class CompressedBody implements NoteBody {
+
+        private final TextCompressor compressor;
+        private final byte[] data;
+        private final int utf8Length;
+        // Сжатая форма для поиска или null, если она получается из текста переводом символов в нижний регистр
+        private final byte[] normalizedData;
+        private final int normalizedUtf8Length;
+        private final int originalBytes;
+
+        CompressedBody(TextCompressor compressor, byte[] data, int utf8Length, byte[] normalizedData,
+                       int normalizedUtf8Length, int originalBytes) {
+            this.compressor = compressor;
+            this.data = data;
+            this.utf8Length = utf8Length;
+            this.normalizedData = normalizedData;
+            this.normalizedUtf8Length = normalizedUtf8Length;
+            this.originalBytes = originalBytes;
+        }
+
+        @Override
+        public String text() {
+            String text = cached(this);
+            if (text != null) {
+                cacheHits.increment();
+                return text;
+            }
+            cacheMisses.increment();
+            text = inflate(data, utf8Length);
+            cache(this, text);
+            return text;
+        }
+
+        @Override
+        public String normalizedText() {
+            if (normalizedData != null) {
+                return inflate(normalizedData, normalizedUtf8Length);
+            }
+            String text = cached(this);
+            return normalizer.normalize(text != null ? text : inflate(data, utf8Length));
+        }
+
+        @Override
+        public boolean matches(TextPattern pattern) {
+            CharBuffer text = searchText();
+            return pattern.matches(text, 0, text.length());
+        }
+
+        @Override
+        public void scan(AhoCorasick automaton, BitSet found) {
+            CharBuffer text = searchText();
+            automaton.scan(text, 0, text.length(), found);
+        }
+
+        // Форма для поиска в буфере текущего потока; действительна до следующего обращения к буферу
+        private CharBuffer searchText() {
+            SearchBuffer buffer = SEARCH_BUFFERS.get();
+            return normalizedData != null
+                    ? buffer.decode(compressor, normalizedData, normalizedUtf8Length, false)
+                    : buffer.decode(compressor, data, utf8Length, true);
+        }
+
+        private String inflate(byte[] compressed, int length) {
+            return new String(compressor.decompress(compressed, length), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int originalBytes() {
+            return originalBytes;
+        }
+
+        @Override
+        public int storedBytes() {
+            return data.length + (normalizedData == null ? 0 : normalizedData.length);
+        }
+
+        @Override
+        public int heapBytes() {
+            // Объект тела и массивы со сжатыми данными
+            return 2 * OBJECT_OVERHEAD + 16 + data.length + (normalizedData == null ? 0 : 16 + normalizedData.length);
+        }
+
+        @Override
+        public boolean isCompressed() {
+            return true;
+        }
+    }
+
+    /**
+     * Распакованный текст для поиска: байты UTF-8 и символы, в которые они декодированы.
+     * Свой у каждого потока, переиспользуется от заметки к заметке.
+     */
+    private static final class SearchBuffer {
+
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private byte[] bytes = new byte[0];
+        private ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        private char[] chars = new char[0];
+        private CharBuffer charBuffer = CharBuffer.wrap(chars);
+
+        CharBuffer decode(TextCompressor compressor, byte[] compressed, int utf8Length, boolean lowerCase) {
+            if (bytes.length < utf8Length) {
+                bytes = new byte[utf8Length];
+                byteBuffer = ByteBuffer.wrap(bytes);
+                // В UTF-8 символов не больше, чем байт
+                chars = new char[utf8Length];
+                charBuffer = CharBuffer.wrap(chars);
+            }
+            compressor.decompress(compressed, bytes, utf8Length);
+            byteBuffer.clear().limit(utf8Length);
+            charBuffer.clear();
+            decoder.reset();
+            decoder.decode(byteBuffer, charBuffer, true);
+            decoder.flush(charBuffer);
+            if (lowerCase) {
+                for (int i = 0; i < charBuffer.position(); i++) {
+                    chars[i] = Character.toLowerCase(chars[i]);
+                }
+            }
+            return charBuffer.flip();
+        }
+    }
+
+    /**
+     * Текст, вытесненный на диск: в памяти только положение записи в файле.
+     * Чтение через {@link #text()} не возвращает текст в память; для этого есть {@link #reload(NoteBody)}.
+     */
+    private final class SpilledBody implements NoteBody {
+
+        private final SpillFile file;
+        private final long offset;
+        private final int length;
+        private final int utf8Length;
+        private final int originalBytes;
+        private final TextCompressor compressor; // null, если текст записан без сжатия
+
+        SpilledBody(SpillFile file, long offset, int length, int utf8Length, int originalBytes, TextCompressor compressor) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.utf8Length = utf8Length;
+            this.originalBytes = originalBytes;
+            this.compressor = compressor;
+        }
+
+        NoteBody load() {
+            byte[] data = file.read(offset, length);
+            if (compressor != null) {
+                // Сжатая форма для поиска на диск не пишется: она восстанавливается из текста
+                String text = new String(compressor.decompress(data, utf8Length), StandardCharsets.UTF_8);
+                return compressed(compressor, data, utf8Length, originalBytes, text, normalizer.normalize(text));
+            }
+            String text = new String(data, StandardCharsets.UTF_8);
+            return new NoteBody.Plain(text, normalizer.normalize(text));
+        }
+
+        @Override
+        public String text() {
+            diskReads.increment();
+            byte[] data = file.read(offset, length);
+            byte[] utf8 = compressor == null ? data : compressor.decompress(data, utf8Length);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String normalizedText() {
+            return normalizer.normalize(text());
+        }
+
+        @Override
+        public int originalBytes() {
+            return originalBytes;
+        }
+
+        @Override
+        public int storedBytes() {
+            return length;
+        }
+
+        @Override
+        public int heapBytes() {
+            return SPILLED_BODY_BYTES;
+        }
+
+        @Override
+        public boolean isCompressed() {
+            return compressor != null;
+        }
+
+        @Override
+        public boolean isSpilled() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.mentee.power.tdd.notes;
+
+/**
+ * Сводка по хранению текстов заметок.
+ *
+ * @param notes Число заметок.
+ * @param compressedNotes Сколько из них хранят текст сжатым.
+ * @param originalBytes Сколько байт занимали бы тексты, храни их строками.
+ * @param storedBytes Сколько байт текстов хранится на самом деле (без кэша распакованных текстов).
+ * @param cacheHits Сколько раз распакованный текст нашелся в кэше.
+ * @param cacheMisses Сколько раз текст пришлось распаковать.
+ * @param dictionarySize Размер текущего словаря сжатия в байтах (0, если словарь не обучен).
+ */
+public record TextStorageStats(int notes, int compressedNotes, long originalBytes, long storedBytes,
+                               long cacheHits, long cacheMisses, int dictionarySize) {
+
+    /**
+     * @return Во сколько раз тексты занимают меньше места, чем строки (1.0, если текстов нет).
+     */
+    public double compressionRatio() {
+        return storedBytes == 0 ? 1.0 : (double) originalBytes / storedBytes;
+    }
+}
@@ -0,0 +1,15 @@
+package ru.mentee.power.tdd.notes;
+
+/**
+ * Итог условного изменения заметки (с проверкой версии, см. {@link Note#getVersion()}).
+ */
+public enum UpdateResult {
+    /** Версия совпала, заметка изменена и получила новую версию. */
+    UPDATED,
+    /** Версия совпала, но менять было нечего (например, тег уже есть); версия прежняя. */
+    UNCHANGED,
+    /** Заметку успели изменить: версия не совпала, изменение не применено. Нужно перечитать заметку и повторить. */
+    CONFLICT,
+    /** Заметки с таким ID нет. */
+    NOT_FOUND
+}
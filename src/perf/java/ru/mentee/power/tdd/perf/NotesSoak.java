@@ -0,0 +1,408 @@
+package ru.mentee.power.tdd.perf;
+
+import ru.mentee.power.tdd.notes.Note;
+import ru.mentee.power.tdd.notes.NoteService;
+import ru.mentee.power.tdd.notes.NoteServiceOptions;
+import ru.mentee.power.tdd.perf.WorkloadConfig.Operation;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Нагрузочный прогон {@link NoteService}: несколько потоков в течение заданного времени выполняют
+ * смесь операций (добавление, изменение, теги, удаление, чтение, поиск) с перекосом по Ципфу
+ * для заметок, слов и тегов. Печатает пропускную способность, процентили задержек по видам операций,
+ * поведение кучи и сборщика мусора.
+ * Последовательность операций каждого потока определяется seed; порядок, в котором потоки
+ * чередуются, от запуска к запуску может отличаться.
+ * Запуск: {@code ./gradlew notesSoak --args="threads=8 duration=PT1M mix=get:50,text:20,add:10"}.
+ */
+public class NotesSoak {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String ALPHABET = "абвгдежзиклмнопрстуфхцчшэюяabcdefghiklmnoprstuvw";
+
+    private final WorkloadConfig config;
+    private final NoteService service;
+    private final String[] words;
+    private final String[] tags;
+    private final ZipfianGenerator keyChooser;
+    private final ZipfianGenerator wordChooser;
+    private final ZipfianGenerator tagChooser;
+    // Слот -> ID заметки (0 — пусто); горячие слоты получают большую часть операций
+    private final AtomicIntegerArray slots;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private volatile boolean measuring;
+    private volatile boolean stopped;
+    private volatile RuntimeException failure;
+
+    NotesSoak(WorkloadConfig config) throws IOException {
+        this.config = config;
+        NoteServiceOptions options = NoteServiceOptions.defaults().withTextCompression(config.compress);
+        if (config.memoryBudget > 0) {
+            options = options.withMemoryBudget(config.memoryBudget, config.spillDirectory != null
+                    ? config.spillDirectory : Files.createTempDirectory("notes-soak"));
+        }
+        this.service = new NoteService(options);
+        SplittableRandom random = new SplittableRandom(config.seed);
+        this.words = new String[config.vocabulary];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = randomWord(random);
+        }
+        this.tags = new String[config.tags];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = "tag" + i;
+        }
+        this.keyChooser = new ZipfianGenerator(config.keys, config.skew);
+        this.wordChooser = new ZipfianGenerator(config.vocabulary, config.skew);
+        this.tagChooser = new ZipfianGenerator(config.tags, config.skew);
+        this.slots = new AtomicIntegerArray(config.keys);
+
+        List<Operation> enabled = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int sum = 0;
+        for (Map.Entry<Operation, Integer> entry : config.mix.entrySet()) {
+            if (entry.getValue() > 0) {
+                sum += entry.getValue();
+                enabled.add(entry.getKey());
+                weights.add(sum);
+            }
+        }
+        if (enabled.isEmpty()) {
+            throw new IllegalArgumentException("Operation mix is empty");
+        }
+        this.operations = enabled.toArray(new Operation[0]);
+        this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public static void main(String[] args) throws Exception {
+        WorkloadConfig config = WorkloadConfig.parse(args);
+        System.out.println("Параметры: " + config);
+        new NotesSoak(config).run();
+    }
+
+    void run() throws InterruptedException {
+        SplittableRandom seeds = new SplittableRandom(config.seed);
+        SplittableRandom preload = seeds.split();
+        for (int i = 0; i < config.initialNotes; i++) {
+            Note note = service.addNote(randomTitle(preload), randomText(preload), randomTags(preload));
+            slots.set(i % config.keys, note.getId());
+        }
+        System.out.printf("Создано заметок: %d%n", config.initialNotes);
+
+        List<Worker> workers = new ArrayList<>();
+        CountDownLatch finished = new CountDownLatch(config.threads);
+        for (int i = 0; i < config.threads; i++) {
+            Worker worker = new Worker(seeds.split(), finished);
+            worker.setName("soak-" + i);
+            workers.add(worker);
+        }
+        workers.forEach(Thread::start);
+
+        Thread.sleep(config.warmup.toMillis());
+        if (failure != null) {
+            throw new IllegalStateException("Worker failed during warmup", failure);
+        }
+        GcSnapshot gcBefore = GcSnapshot.take();
+        long[] threadIds = workers.stream().mapToLong(Thread::getId).toArray();
+        long allocatedBefore = allocatedBytes(threadIds);
+        HeapSampler sampler = new HeapSampler();
+        sampler.start();
+        long start = System.nanoTime();
+        measuring = true;
+
+        long deadline = System.nanoTime() + config.duration.toNanos();
+        while (!stopped && System.nanoTime() < deadline) {
+            Thread.sleep(Math.min(100, Math.max(1, (deadline - System.nanoTime()) / 1_000_000)));
+        }
+
+        measuring = false;
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes(threadIds);
+        GcSnapshot gcAfter = GcSnapshot.take();
+        sampler.interrupt();
+        sampler.join();
+        stopped = true;
+        finished.await();
+        if (failure != null) {
+            throw new IllegalStateException("Worker failed under load", failure);
+        }
+
+        report(workers, elapsed, gcBefore, gcAfter, allocatedAfter - allocatedBefore, sampler);
+    }
+
+    private void report(List<Worker> workers, long elapsedNanos, GcSnapshot gcBefore, GcSnapshot gcAfter,
+                        long allocatedBytes, HeapSampler sampler) {
+        double seconds = elapsedNanos / 1e9;
+        Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+        Map<Operation, Long> misses = new EnumMap<>(Operation.class);
+        for (Worker worker : workers) {
+            worker.histograms.forEach((operation, histogram) ->
+                    histograms.computeIfAbsent(operation, o -> new LatencyHistogram()).add(histogram));
+            worker.misses.forEach((operation, count) -> misses.merge(operation, count, Long::sum));
+        }
+        long total = histograms.values().stream().mapToLong(LatencyHistogram::count).sum();
+
+        System.out.printf("%nЗамер: %.1f с, операций: %d, %.0f оп/с%n", seconds, total, total / seconds);
+        System.out.printf("%-12s %10s %10s %9s %9s %9s %9s %9s %8s%n",
+                "операция", "число", "оп/с", "p50 мкс", "p90 мкс", "p99 мкс", "p99.9 мкс", "max мкс", "промахи");
+        for (Operation operation : operations) {
+            LatencyHistogram histogram = histograms.getOrDefault(operation, new LatencyHistogram());
+            System.out.printf("%-12s %10d %10.0f", operation, histogram.count(), histogram.count() / seconds);
+            for (double percentile : PERCENTILES) {
+                System.out.printf(" %9.1f", histogram.percentile(percentile) / 1000.0);
+            }
+            System.out.printf(" %9.1f %8d%n", histogram.max() / 1000.0, misses.getOrDefault(operation, 0L));
+        }
+
+        System.out.printf("%nКуча: максимум %d МБ, в среднем %d МБ, после замера %d МБ%n",
+                sampler.maxUsed >> 20, sampler.averageUsed() >> 20, sampler.lastUsed >> 20);
+        System.out.printf("Выделено потоками нагрузки: %d МБ (%.0f МБ/с)%n",
+                allocatedBytes >> 20, (allocatedBytes >> 20) / seconds);
+        gcAfter.collectors.forEach((name, after) -> {
+            long[] before = gcBefore.collectors.getOrDefault(name, new long[2]);
+            System.out.printf("GC %-30s сборок: %d, время: %d мс%n", name, after[0] - before[0], after[1] - before[1]);
+        });
+        System.out.printf("Заметок в конце: %d%n", service.getAllNotes().size());
+        if (config.memoryBudget > 0) {
+            System.out.println(service.getMemoryStats());
+        }
+        if (config.compress) {
+            System.out.println(service.getTextStorageStats());
+        }
+    }
+
+    private static long allocatedBytes(long[] threadIds) {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            long sum = 0;
+            for (long allocated : threads.getThreadAllocatedBytes(threadIds)) {
+                sum += Math.max(allocated, 0);
+            }
+            return sum;
+        }
+        return 0;
+    }
+
+    private final class Worker extends Thread {
+
+        private final SplittableRandom random;
+        private final CountDownLatch finished;
+        final Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+        final Map<Operation, Long> misses = new EnumMap<>(Operation.class);
+
+        Worker(SplittableRandom random, CountDownLatch finished) {
+            this.random = random;
+            this.finished = finished;
+            for (Operation operation : Operation.values()) {
+                histograms.put(operation, new LatencyHistogram());
+                misses.put(operation, 0L);
+            }
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped) {
+                    Operation operation = nextOperation(random);
+                    boolean measured = measuring;
+                    long start = System.nanoTime();
+                    boolean hit = execute(operation, random);
+                    long latency = System.nanoTime() - start;
+                    if (measured) {
+                        histograms.get(operation).record(latency);
+                        if (!hit) {
+                            misses.merge(operation, 1L, Long::sum);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Ошибка в сервисе под нагрузкой — результат прогона; останавливаем остальные потоки
+                failure = e;
+                stopped = true;
+            } finally {
+                finished.countDown();
+            }
+        }
+    }
+
+    private Operation nextOperation(SplittableRandom random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        throw new IllegalStateException("Unreachable");
+    }
+
+    /**
+     * @return false, если операция ничего не нашла или не изменила (заметки в слоте уже нет и т.п.).
+     */
+    private boolean execute(Operation operation, SplittableRandom random) {
+        int slot = keyChooser.next(random);
+        int id = slots.get(slot);
+        switch (operation) {
+            case ADD -> {
+                Note note = service.addNote(randomTitle(random), randomText(random), randomTags(random));
+                slots.set(slot, note.getId());
+                return true;
+            }
+            case UPDATE -> {
+                return id != 0 && service.updateNoteText(id, randomTitle(random), randomText(random));
+            }
+            case TAG -> {
+                return id != 0 && service.addTagToNote(id, randomTag(random));
+            }
+            case UNTAG -> {
+                return id != 0 && service.removeTagFromNote(id, randomTag(random));
+            }
+            case DELETE -> {
+                boolean deleted = id != 0 && service.deleteNote(id);
+                slots.compareAndSet(slot, id, 0);
+                return deleted;
+            }
+            case GET -> {
+                Optional<Note> note = service.getNoteById(id);
+                return note.isPresent() && !note.get().getText().isEmpty();
+            }
+            case SEARCH_TEXT -> {
+                return !service.findNotesByText(randomWord(random, 1 + random.nextInt(2))).isEmpty();
+            }
+            case SEARCH_TAGS -> {
+                Set<String> query = new HashSet<>();
+                query.add(randomTag(random));
+                if (random.nextInt(4) == 0) {
+                    query.add(randomTag(random));
+                }
+                return !service.findNotesByTags(query).isEmpty();
+            }
+            default -> throw new IllegalStateException("Unknown operation: " + operation);
+        }
+    }
+
+    private String randomTitle(SplittableRandom random) {
+        return randomWord(random, 1 + random.nextInt(5));
+    }
+
+    private String randomWord(SplittableRandom random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(words[wordChooser.next(random)]);
+        }
+        return text.toString();
+    }
+
+    // Число слов распределено логнормально: большинство заметок короткие, немногие очень длинные
+    private String randomText(SplittableRandom random) {
+        double gaussian = nextGaussian(random);
+        int count = (int) Math.max(1, Math.min(20_000, Math.round(config.medianWords * Math.exp(0.9 * gaussian))));
+        return randomWord(random, count);
+    }
+
+    private Set<String> randomTags(SplittableRandom random) {
+        int count = random.nextInt(4);
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            result.add(randomTag(random));
+        }
+        return result;
+    }
+
+    private String randomTag(SplittableRandom random) {
+        return tags[tagChooser.next(random)];
+    }
+
+    private static String randomWord(SplittableRandom random) {
+        int length = 3 + random.nextInt(8);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return word.toString();
+    }
+
+    // Преобразование Бокса — Мюллера: у SplittableRandom нет nextGaussian в Java 17
+    private static double nextGaussian(SplittableRandom random) {
+        double u = 1.0 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    /**
+     * Число сборок и суммарное время по каждому сборщику мусора.
+     */
+    private record GcSnapshot(Map<String, long[]> collectors) {
+
+        static GcSnapshot take() {
+            Map<String, long[]> collectors = new LinkedHashMap<>();
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collectors.put(gc.getName(), new long[]{gc.getCollectionCount(), gc.getCollectionTime()});
+            }
+            return new GcSnapshot(collectors);
+        }
+    }
+
+    /**
+     * Раз в 100 мс записывает занятую кучу.
+     */
+    private static final class HeapSampler extends Thread {
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        volatile long maxUsed;
+        volatile long lastUsed;
+        private long sum;
+        private long samples;
+
+        HeapSampler() {
+            super("soak-heap-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    sample();
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+            } catch (InterruptedException e) {
+                // замер окончен
+            }
+            sample();
+        }
+
+        private synchronized void sample() {
+            long used = memory.getHeapMemoryUsage().getUsed();
+            maxUsed = Math.max(maxUsed, used);
+            lastUsed = used;
+            sum += used;
+            samples++;
+        }
+
+        synchronized long averageUsed() {
+            return samples == 0 ? 0 : sum / samples;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package ru.mentee.power.tdd.perf;
+
+import ru.mentee.power.tdd.notes.NoteService;
+import ru.mentee.power.tdd.notes.NoteServiceOptions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Бенчмарк запуска сервиса заметок: время от старта JVM до ответа на первый запрос.
+ * Сравнивает построение сервиса из исходных данных (каждая заметка добавляется через addNote)
+ * с открытием образа ({@link NoteService#openImage}), а также запуск с архивом AppCDS и без него.
+ * Каждый замер — отдельный процесс JVM, время меряется снаружи, от запуска процесса до строки "ready".
+ * <ul>
+ *     <li>{@code prepare dir=... notes=100000} — создает корпус (corpus.tsv) и образ (notes.img);</li>
+ *     <li>{@code rebuild dir=...} и {@code image dir=...} — запуск одним способом, печатает "ready";</li>
+ *     <li>{@code compare dir=... runs=5 cds=<архив>} — запускает оба способа по runs раз и печатает медианы.</li>
+ * </ul>
+ * Запуск через Gradle: {@code ./gradlew notesStartupBenchmark} (сначала готовит данные и архив AppCDS).
+ */
+public class NotesStartup {
+
+    static final String CORPUS = "corpus.tsv";
+    static final String IMAGE = "notes.img";
+    // Самое частое слово корпуса; первый запрос — дополнение заголовков по нему и поиск по редкому тегу
+    static final String QUERY = "заметка";
+    static final String RARE_TAG = "tag199";
+
+    private static final String ALPHABET = "абвгдежзиклмнопрстуфхцчшэюяabcdefghiklmnoprstuvw";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Usage: NotesStartup prepare|rebuild|image|compare [key=value ...]");
+        }
+        Map<String, String> options = parse(Arrays.copyOfRange(args, 1, args.length));
+        Path dir = Path.of(options.getOrDefault("dir", "build/startup"));
+        switch (args[0]) {
+            case "prepare" -> prepare(dir, Integer.parseInt(options.getOrDefault("notes", "100000")),
+                    Long.parseLong(options.getOrDefault("seed", "42")));
+            case "rebuild" -> ready(rebuild(dir));
+            case "image" -> ready(NoteService.openImage(dir.resolve(IMAGE), NoteServiceOptions.defaults()));
+            case "compare" -> compare(dir, Integer.parseInt(options.getOrDefault("runs", "5")), options.get("cds"));
+            default -> throw new IllegalArgumentException("Unknown mode: " + args[0]);
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    // Корпус: строка на заметку, "заголовок \t теги через запятую \t текст"
+    static void prepare(Path dir, int count, long seed) throws IOException {
+        Files.createDirectories(dir);
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] words = new String[5000];
+        words[0] = QUERY;
+        for (int i = 1; i < words.length; i++) {
+            words[i] = randomWord(random);
+        }
+        ZipfianGenerator wordChooser = new ZipfianGenerator(words.length, 1.0);
+        ZipfianGenerator tagChooser = new ZipfianGenerator(200, 1.0);
+        try (BufferedWriter corpus = Files.newBufferedWriter(dir.resolve(CORPUS), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < count; i++) {
+                corpus.write(phrase(words, wordChooser, random, 1 + random.nextInt(5)));
+                corpus.write('\t');
+                int tags = random.nextInt(4);
+                for (int t = 0; t < tags; t++) {
+                    if (t > 0) {
+                        corpus.write(',');
+                    }
+                    corpus.write("tag" + tagChooser.next(random));
+                }
+                corpus.write('\t');
+                corpus.write(phrase(words, wordChooser, random, 20 + random.nextInt(200)));
+                corpus.newLine();
+            }
+        }
+        long start = System.nanoTime();
+        NoteService service = rebuild(dir);
+        long built = System.nanoTime();
+        service.writeImage(dir.resolve(IMAGE));
+        long written = System.nanoTime();
+        System.out.printf("Заметок: %d, построение %d мс, запись образа %d мс, образ %d байт%n", count,
+                (built - start) / 1_000_000, (written - built) / 1_000_000, Files.size(dir.resolve(IMAGE)));
+    }
+
+    static NoteService rebuild(Path dir) throws IOException {
+        NoteService service = new NoteService();
+        try (BufferedReader corpus = Files.newBufferedReader(dir.resolve(CORPUS), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = corpus.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                Set<String> tags = fields[1].isEmpty() ? Set.of() : new HashSet<>(Arrays.asList(fields[1].split(",")));
+                service.addNote(fields[0], fields[2], tags);
+            }
+        }
+        return service;
+    }
+
+    // Первый запрос обслуживается индексами; полный просмотр текстов одинаково дорог при любом способе загрузки
+    private static void ready(NoteService service) {
+        int suggestions = service.completeTitles(QUERY.substring(0, 3), 10).size();
+        int hits = service.findNotesByTags(Set.of(RARE_TAG)).size();
+        System.out.println("ready suggestions=" + suggestions + " hits=" + hits);
+    }
+
+    private static void compare(Path dir, int runs, String cdsArchive) throws IOException, InterruptedException {
+        List<String[]> variants = new ArrayList<>();
+        variants.add(new String[]{"rebuild", "rebuild"});
+        variants.add(new String[]{"image", "image"});
+        if (cdsArchive != null && Files.exists(Path.of(cdsArchive))) {
+            variants.add(new String[]{"rebuild + AppCDS", "rebuild", "-XX:SharedArchiveFile=" + cdsArchive});
+            variants.add(new String[]{"image + AppCDS", "image", "-XX:SharedArchiveFile=" + cdsArchive});
+        } else {
+            System.out.println("Архив AppCDS не задан или не найден, сравниваются только способы загрузки");
+        }
+        // Первый прогон прогревает файловый кэш ОС, чтобы способы сравнивались в равных условиях
+        for (String[] variant : variants) {
+            run(dir, variant);
+        }
+        // Способы чередуются, чтобы фоновая нагрузка на машине одинаково сказывалась на всех
+        long[][] times = new long[variants.size()][runs];
+        for (int i = 0; i < runs; i++) {
+            for (int v = 0; v < variants.size(); v++) {
+                times[v][i] = run(dir, variants.get(v));
+            }
+        }
+        Map<String, Double> medians = new HashMap<>();
+        for (int v = 0; v < variants.size(); v++) {
+            String[] variant = variants.get(v);
+            long[] sorted = times[v];
+            Arrays.sort(sorted);
+            double median = sorted[runs / 2] / 1e6;
+            medians.put(variant[0], median);
+            System.out.printf("%-20s медиана %8.1f мс, мин %8.1f мс, макс %8.1f мс%n", variant[0], median,
+                    sorted[0] / 1e6, sorted[runs - 1] / 1e6);
+        }
+        for (String[] variant : variants.subList(1, variants.size())) {
+            System.out.printf("%-20s быстрее rebuild в %.2f раза%n", variant[0],
+                    medians.get("rebuild") / medians.get(variant[0]));
+        }
+    }
+
+    // Время от запуска процесса до строки "ready", нс
+    private static long run(Path dir, String[] variant) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(variant).subList(2, variant.length));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(NotesStartup.class.getName());
+        command.add(variant[1]);
+        command.add("dir=" + dir);
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long elapsed = -1;
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (elapsed < 0 && line.startsWith("ready")) {
+                    elapsed = System.nanoTime() - start;
+                }
+                output.append(line).append(System.lineSeparator());
+            }
+        }
+        int exit = process.waitFor();
+        if (exit != 0 || elapsed < 0) {
+            throw new IllegalStateException("Startup run " + variant[0] + " failed with exit code " + exit + ":"
+                    + System.lineSeparator() + output);
+        }
+        return elapsed;
+    }
+
+    private static String phrase(String[] words, ZipfianGenerator chooser, SplittableRandom random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(words[chooser.next(random)]);
+        }
+        return text.toString();
+    }
+
+    private static String randomWord(SplittableRandom random) {
+        int length = 3 + random.nextInt(8);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package ru.mentee.power.tdd.perf;
+
+import ru.mentee.power.tdd.AdvancedCalculator;
+import ru.mentee.power.tdd.SumFilter;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+/**
+ * Простой бенчмарк: сравнивает захардкоженный цикл {@link AdvancedCalculator#sumIgnoringOver1000(int[])}
+ * с суммированием через скомпилированные правила {@link SumFilter} и с прежней ручной разверткой
+ * того же цикла на четыре аккумулятора.
+ * Запуск: {@code ./gradlew filterBenchmark --args="<размер массива> <число замеров>"}.
+ */
+public class SumFilterBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        int[] numbers = new Random(42).ints(size, -2000, 2000).toArray();
+        AdvancedCalculator calculator = new AdvancedCalculator();
+        SumFilter tenantFilter = SumFilter.between(-500, 700).excludingNegatives();
+
+        System.out.printf("Массив: %d чисел, замеров: %d%n", size, rounds);
+        double baseline = measure("hard-coded sumIgnoringOver1000", numbers, rounds,
+                calculator::sumIgnoringOver1000);
+        double unrolled = measure("unrolled, 4 accumulators", numbers, rounds,
+                array -> sumUnrolled(array, 0, array.length));
+        double defaultFilter = measure("SumFilter.DEFAULT", numbers, rounds,
+                array -> calculator.sumMatching(array, SumFilter.DEFAULT));
+        double tenant = measure(tenantFilter.toString(), numbers, rounds,
+                array -> calculator.sumMatching(array, tenantFilter));
+
+        System.out.printf("Отношение к захардкоженному циклу: развертка %.2f, DEFAULT %.2f, tenant %.2f%n",
+                unrolled / baseline, defaultFilter / baseline, tenant / baseline);
+    }
+
+    // Прежняя реализация AdvancedCalculator.sumRange: оставлена для сравнения с простым циклом
+    private static long sumUnrolled(int[] numbers, int from, int to) {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+            int v0 = numbers[i];
+            int v1 = numbers[i + 1];
+            int v2 = numbers[i + 2];
+            int v3 = numbers[i + 3];
+            s0 += v0 <= 1000 ? v0 : 0;
+            s1 += v1 <= 1000 ? v1 : 0;
+            s2 += v2 <= 1000 ? v2 : 0;
+            s3 += v3 <= 1000 ? v3 : 0;
+        }
+        for (; i < to; i++) {
+            int value = numbers[i];
+            s0 += value <= 1000 ? value : 0;
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    // Возвращает медианное время одного прохода в наносекундах на элемент
+    private static double measure(String name, int[] numbers, int rounds, ToLongFunction<int[]> sum) {
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            checksum += sum.applyAsLong(numbers);
+        }
+        long[] times = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            checksum += sum.applyAsLong(numbers);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        double nsPerElement = (double) times[rounds / 2] / numbers.length;
+        System.out.printf("%-40s %8.3f нс/элемент (контрольная сумма %d)%n", name, nsPerElement, checksum);
+        return nsPerElement;
+    }
+}
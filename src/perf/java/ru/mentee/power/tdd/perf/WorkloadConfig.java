@@ -0,0 +1,108 @@
+package ru.mentee.power.tdd.perf;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Параметры нагрузочного прогона {@link NotesSoak}. Задаются аргументами вида {@code ключ=значение},
+ * например {@code threads=16 duration=PT2M mix=get:50,text:20,add:10}.
+ */
+final class WorkloadConfig {
+
+    /** Виды операций и их доли по умолчанию. */
+    enum Operation {
+        ADD(10), UPDATE(8), TAG(6), UNTAG(4), DELETE(2), GET(40), SEARCH_TEXT(20), SEARCH_TAGS(10);
+
+        final int defaultWeight;
+
+        Operation(int defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+    }
+
+    long seed = 42;
+    int threads = Runtime.getRuntime().availableProcessors();
+    Duration duration = Duration.ofSeconds(30);
+    Duration warmup = Duration.ofSeconds(5);
+    /** Сколько заметок создать до начала замера. */
+    int initialNotes = 20_000;
+    /** Сколько «слотов» заметок, между которыми распределяется нагрузка по Ципфу. */
+    int keys = 50_000;
+    int vocabulary = 20_000;
+    int tags = 500;
+    /** Показатель Ципфа для заметок, слов и тегов. */
+    double skew = 0.99;
+    /** Медиана числа слов в тексте заметки; длина распределена логнормально с длинным хвостом. */
+    int medianWords = 60;
+    boolean compress;
+    long memoryBudget;
+    Path spillDirectory;
+    final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+
+    WorkloadConfig() {
+        for (Operation operation : Operation.values()) {
+            mix.put(operation, operation.defaultWeight);
+        }
+    }
+
+    static WorkloadConfig parse(String[] args) {
+        WorkloadConfig config = new WorkloadConfig();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            switch (key) {
+                case "seed" -> config.seed = Long.parseLong(value);
+                case "threads" -> config.threads = Integer.parseInt(value);
+                case "duration" -> config.duration = Duration.parse(value);
+                case "warmup" -> config.warmup = Duration.parse(value);
+                case "initialNotes" -> config.initialNotes = Integer.parseInt(value);
+                case "keys" -> config.keys = Integer.parseInt(value);
+                case "vocabulary" -> config.vocabulary = Integer.parseInt(value);
+                case "tags" -> config.tags = Integer.parseInt(value);
+                case "skew" -> config.skew = Double.parseDouble(value);
+                case "medianWords" -> config.medianWords = Integer.parseInt(value);
+                case "compress" -> config.compress = Boolean.parseBoolean(value);
+                case "memoryBudget" -> config.memoryBudget = Long.parseLong(value);
+                case "spillDirectory" -> config.spillDirectory = Path.of(value);
+                case "mix" -> config.parseMix(value);
+                default -> throw new IllegalArgumentException("Unknown parameter: " + key);
+            }
+        }
+        return config;
+    }
+
+    // "get:50,text:20" — перечисленные операции получают указанные веса, остальные выключаются
+    private void parseMix(String value) {
+        mix.replaceAll((operation, weight) -> 0);
+        for (String part : value.split(",")) {
+            String[] entry = part.split(":");
+            if (entry.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight, got: " + part);
+            }
+            mix.put(operationOf(entry[0].trim()), Integer.parseInt(entry[1].trim()));
+        }
+    }
+
+    private static Operation operationOf(String name) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "text" -> Operation.SEARCH_TEXT;
+            case "tags" -> Operation.SEARCH_TAGS;
+            default -> Operation.valueOf(name.toUpperCase(Locale.ROOT));
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "seed=" + seed + " threads=" + threads + " duration=" + duration + " warmup=" + warmup
+                + " initialNotes=" + initialNotes + " keys=" + keys + " vocabulary=" + vocabulary + " tags=" + tags
+                + " skew=" + skew + " medianWords=" + medianWords + " compress=" + compress
+                + (memoryBudget > 0 ? " memoryBudget=" + memoryBudget : "") + " mix=" + mix;
+    }
+}
@@ -0,0 +1,52 @@
+package ru.mentee.power.tdd.perf;
+
+import java.util.SplittableRandom;
+
+/**
+ * Выбор номера от 0 до n - 1 по закону Ципфа: номер k выпадает с вероятностью, пропорциональной 1 / (k + 1)^s.
+ * Так выглядит реальная нагрузка: немногие «горячие» заметки, слова и теги встречаются в большинстве запросов.
+ * Функция распределения считается один раз, выбор — двоичный поиск по ней. Экземпляр неизменяемый,
+ * случайный источник передается при каждом выборе.
+ */
+final class ZipfianGenerator {
+
+    private final double[] cumulative;
+
+    /**
+     * @param n Число элементов.
+     * @param exponent Показатель s: 0 — равномерно, около 1 — типичная «длинная» асимметрия.
+     */
+    ZipfianGenerator(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Number of items must be positive: " + n);
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    int next(SplittableRandom random) {
+        double u = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < u) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    int size() {
+        return cumulative.length;
+    }
+}
@@ -3,9 +3,15 @@ package ru.mentee.power.tdd;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Collections;
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -115,4 +121,140 @@ class AdvancedCalculatorTest {
         // Проверь расчеты.
         assertThat(actualSum).isEqualTo(expectedSum);
     }
-}
\ No newline at end of file
+
+    // --- Суммирование массивов и буферов --- //
+
+    @Test
+    @DisplayName("Суммирование массива с игнорированием чисел > 1000")
+    void shouldSumArrayIgnoringNumbersGreaterThan1000() {
+        // Arrange
+        int[] numbers = {2, 1001, 5, 2000, 1000, -3};
+        long expectedSum = 1004;
+        // Act
+        long actualSum = calculator.sumIgnoringOver1000(numbers);
+        // Assert
+        assertThat(actualSum).isEqualTo(expectedSum);
+    }
+
+    @Test
+    @DisplayName("Граничный случай: null массив и null буфер")
+    void shouldReturnZeroForNullArrayAndBuffer() {
+        assertThat(calculator.sumIgnoringOver1000((int[]) null)).isZero();
+        assertThat(calculator.sumIgnoringOver1000((IntBuffer) null)).isZero();
+        assertThat(calculator.sumIgnoringOver1000Parallel(null)).isZero();
+    }
+
+    @Test
+    @DisplayName("Сумма массива не переполняется")
+    void shouldNotOverflowWhenSummingArray() {
+        // Arrange
+        int[] numbers = new int[3_000_000];
+        Arrays.fill(numbers, 1000);
+        long expectedSum = 3_000_000_000L;
+        // Act & Assert
+        assertThat(calculator.sumIgnoringOver1000(numbers)).isEqualTo(expectedSum);
+        assertThat(calculator.sumIgnoringOver1000Parallel(numbers)).isEqualTo(expectedSum);
+    }
+
+    @Test
+    @DisplayName("Переполнение int в списке приводит к исключению")
+    void shouldThrowWhenListSumOverflowsInt() {
+        // Arrange
+        List<Integer> numbers = List.of(Integer.MIN_VALUE, -1);
+        // Act & Assert
+        assertThatThrownBy(() -> calculator.sumIgnoringOver1000(numbers))
+                .isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    @DisplayName("Суммирование буфера учитывает position и limit")
+    void shouldSumBufferBetweenPositionAndLimit() {
+        // Arrange
+        IntBuffer heap = IntBuffer.wrap(new int[]{100, 1, 2, 5000, 3, 100});
+        heap.position(1).limit(5);
+        IntBuffer direct = ByteBuffer.allocateDirect(4 * 4).asIntBuffer();
+        direct.put(new int[]{7, 1001, 8, 9}).flip();
+        // Act & Assert
+        assertThat(calculator.sumIgnoringOver1000(heap)).isEqualTo(6);
+        assertThat(heap.position()).isEqualTo(1);
+        assertThat(calculator.sumIgnoringOver1000(direct)).isEqualTo(24);
+    }
+
+    @Test
+    @DisplayName("Параллельное суммирование совпадает с последовательным")
+    void shouldSumInParallelLikeSequential() {
+        // Arrange
+        int[] numbers = new Random(42).ints(AdvancedCalculator.PARALLEL_THRESHOLD * 3 + 17, -2000, 2000)
+                .toArray();
+        // Act
+        long sequential = calculator.sumIgnoringOver1000(numbers);
+        long parallel = calculator.sumIgnoringOver1000Parallel(numbers);
+        // Assert
+        assertThat(parallel).isEqualTo(sequential);
+    }
+
+    // --- Потоковое суммирование --- //
+
+    @Test
+    @DisplayName("Суммирование IntStream без сбора в список")
+    void shouldSumIntStream() {
+        // Arrange
+        IntStream numbers = IntStream.rangeClosed(995, 1005);
+        long expectedSum = 995 + 996 + 997 + 998 + 999 + 1000;
+        // Act
+        long actualSum = calculator.sumIgnoringOver1000(numbers);
+        // Assert
+        assertThat(actualSum).isEqualTo(expectedSum);
+        assertThat(calculator.sumIgnoringOver1000((IntStream) null)).isZero();
+    }
+
+    @Test
+    @DisplayName("Коллектор пропускает null и числа > 1000")
+    void shouldCollectStreamIgnoringNullsAndLargeNumbers() {
+        // Arrange
+        Stream<Integer> numbers = Stream.of(10, null, 20, 1001);
+        // Act
+        long actualSum = numbers.collect(AdvancedCalculator.summingIgnoringOver1000());
+        // Assert
+        assertThat(actualSum).isEqualTo(30);
+    }
+
+    @Test
+    @DisplayName("Коллектор работает с параллельным потоком")
+    void shouldCollectParallelStream() {
+        // Arrange
+        List<Integer> numbers = IntStream.range(0, 100_000).map(i -> i % 2000).boxed().toList();
+        long expectedSum = calculator.sumIgnoringOver1000(numbers);
+        // Act
+        long actualSum = numbers.parallelStream().collect(AdvancedCalculator.summingIgnoringOver1000());
+        // Assert
+        assertThat(actualSum).isEqualTo(expectedSum);
+    }
+
+    // --- Настраиваемые правила отбора --- //
+
+    @Test
+    @DisplayName("Суммирование списка и массива по правилу арендатора")
+    void shouldSumUsingTenantFilter() {
+        // Arrange
+        SumFilter filter = SumFilter.between(-100, 50).excludingNegatives();
+        List<Integer> list = Arrays.asList(-5, 10, null, 50, 51, 2000);
+        int[] array = {-5, 10, 50, 51, 2000};
+        long expectedSum = 60;
+        // Act & Assert
+        assertThat(calculator.sumMatching(list, filter)).isEqualTo(expectedSum);
+        assertThat(calculator.sumMatching(array, filter)).isEqualTo(expectedSum);
+        assertThat(calculator.sumMatching((int[]) null, filter)).isZero();
+    }
+
+    @Test
+    @DisplayName("Параллельное суммирование по правилу совпадает с последовательным")
+    void shouldSumMatchingInParallelLikeSequential() {
+        // Arrange
+        SumFilter filter = SumFilter.between(-700, 700);
+        int[] numbers = new Random(7).ints(AdvancedCalculator.PARALLEL_THRESHOLD * 2 + 3, -2000, 2000).toArray();
+        // Act & Assert
+        assertThat(calculator.sumMatchingParallel(numbers, filter))
+                .isEqualTo(calculator.sumMatching(numbers, filter));
+    }
+}
@@ -0,0 +1,177 @@
+package ru.mentee.power.tdd;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.tdd.notes.NoteService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Проверяет, сколько байт выделяет в куче один вызов ключевых методов, по счетчику выделений потока
+ * ({@link com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()}), и сравнивает с бюджетами
+ * из allocation-budgets.properties. Запускается отдельной задачей {@code ./gradlew allocationTest},
+ * обычный {@code test} эти замеры пропускает.
+ * Результат — медиана нескольких раундов замера: единичный раунд, в который попали перекомпиляция
+ * или деоптимизация метода (и временный отказ от скаляризации объектов), на нее не влияет.
+ */
+@Tag("allocation")
+@DisplayName("Бюджеты выделения памяти")
+class AllocationBudgetTest {
+
+    // Прогрев доводит методы до C2: замеряется то, что выделяет скомпилированный код
+    private static final int WARMUP_CALLS = 20_000;
+    private static final int MEASURED_CALLS = 10_000;
+    private static final int ROUNDS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final Properties BUDGETS = loadBudgets();
+    private static final TreeMap<String, Long> MEASURED = new TreeMap<>();
+
+    // Результаты вызовов сводятся сюда, чтобы JIT не выбросил их как неиспользуемые
+    private static volatile long sink;
+
+    private static NoteService noteService;
+
+    /**
+     * Замеряемый вызов; результат сводится к числу, чтобы сам замер ничего не упаковывал.
+     */
+    @FunctionalInterface
+    private interface Operation {
+        long run();
+    }
+
+    @BeforeAll
+    static void setUp() {
+        noteService = new NoteService();
+        for (int i = 0; i < 1000; i++) {
+            noteService.addNote("Заметка " + i, "Текст заметки номер " + i + " про отчет и планы",
+                    Set.of("tag" + i % 20, i % 100 == 0 ? "редкий" : "обычный"));
+        }
+    }
+
+    @AfterAll
+    static void writeReport() throws IOException {
+        String reportDir = System.getProperty("allocation.reportDir");
+        if (reportDir == null) {
+            return;
+        }
+        Path report = Path.of(reportDir, "measured.properties");
+        Files.createDirectories(report.getParent());
+        try (Writer writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : MEASURED.entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue() + System.lineSeparator());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("NoteService.findNotesByText")
+    void findNotesByText() {
+        assertWithinBudget("notes.findNotesByText", () -> noteService.findNotesByText("номер 12").size());
+    }
+
+    @Test
+    @DisplayName("NoteService.findNotesByTags")
+    void findNotesByTags() {
+        Set<String> tags = Set.of("редкий");
+        assertWithinBudget("notes.findNotesByTags", () -> noteService.findNotesByTags(tags).size());
+    }
+
+    @Test
+    @DisplayName("NoteService.getAllTags")
+    void getAllTags() {
+        assertWithinBudget("notes.getAllTags", () -> noteService.getAllTags().size());
+    }
+
+    @Test
+    @DisplayName("Student.getAverageGrade")
+    void getAverageGrade() {
+        Student student = new Student("Алиса");
+        for (int i = 0; i < 100; i++) {
+            student.addGrade(1 + i % 5);
+        }
+        assertWithinBudget("student.getAverageGrade", () -> Double.doubleToRawLongBits(student.getAverageGrade()));
+    }
+
+    @Test
+    @DisplayName("AdvancedCalculator.sumIgnoringOver1000")
+    void sumIgnoringOver1000() {
+        AdvancedCalculator calculator = new AdvancedCalculator();
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            numbers.add(i * 3 % 2000);
+        }
+        assertWithinBudget("calculator.sumIgnoringOver1000", () -> calculator.sumIgnoringOver1000(numbers));
+    }
+
+    @Test
+    @DisplayName("DiscountCalculator.calculateDiscountedPrice")
+    void calculateDiscountedPrice() {
+        DiscountCalculator calculator = new DiscountCalculator();
+        assertWithinBudget("discount.calculateDiscountedPrice",
+                () -> Double.doubleToRawLongBits(calculator.calculateDiscountedPrice(1234.56)));
+    }
+
+    private static void assertWithinBudget(String key, Operation operation) {
+        String budget = BUDGETS.getProperty(key);
+        assertThat(budget).as("No allocation budget for %s", key).isNotNull();
+
+        long bytesPerCall = bytesPerCall(operation);
+        MEASURED.put(key, bytesPerCall);
+
+        assertThat(bytesPerCall)
+                .as("%s allocates %d bytes per call, budget is %s", key, bytesPerCall, budget)
+                .isLessThanOrEqualTo(Long.parseLong(budget.trim()));
+    }
+
+    private static long bytesPerCall(Operation operation) {
+        long digest = 0;
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            digest += operation.run();
+        }
+        long[] rounds = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < MEASURED_CALLS; i++) {
+                digest += operation.run();
+            }
+            rounds[round] = (THREADS.getCurrentThreadAllocatedBytes() - before) / MEASURED_CALLS;
+        }
+        sink = digest;
+        Arrays.sort(rounds);
+        return rounds[ROUNDS / 2];
+    }
+
+    private static Properties loadBudgets() {
+        Properties budgets = new Properties();
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream("allocation-budgets.properties")) {
+            if (in == null) {
+                throw new IllegalStateException("allocation-budgets.properties is missing");
+            }
+            budgets.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return budgets;
+    }
+}
@@ -3,6 +3,13 @@ package ru.mentee.power.tdd;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.*;
 import static org.assertj.core.api.Assertions.offset;
 
@@ -101,4 +108,105 @@ class DiscountCalculatorTest {
         assertThat(actualPrice).isEqualTo(expectedPrice, offset(0.01));
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Расчет в копейках")
+    void shouldCalculateDiscountedPriceInMinorUnits() {
+        assertThat(calculator.calculateDiscountedPriceMinor(1000_10L)).isEqualTo(900_09L);
+        assertThat(calculator.calculateDiscountedPriceMinor(5000_10L)).isEqualTo(4000_08L);
+    }
+
+    @Test
+    @DisplayName("Замена таблицы уровней на лету")
+    void shouldUseReplacedTierTable() {
+        // Arrange
+        DiscountTierTable table = new DiscountTierTable(new long[]{100_00L}, new int[]{5000});
+        // Act
+        DiscountTierTable previous = calculator.replaceTierTable(table);
+        double actualPrice = calculator.calculateDiscountedPrice(200.0);
+        // Assert
+        assertThat(previous).isEqualTo(DiscountTierTable.DEFAULT);
+        assertThat(calculator.getTierTable()).isSameAs(table);
+        assertThat(actualPrice).isEqualTo(100.0, offset(0.01));
+    }
+
+    @Test
+    @DisplayName("Расчет не пишет в консоль")
+    void shouldNotPrintToConsole() {
+        // Arrange
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured));
+        try {
+            // Act
+            calculator.calculateDiscountedPrice(1200.0);
+        } finally {
+            System.setOut(originalOut);
+        }
+        // Assert
+        assertThat(captured.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Пакетный расчет массива сумм")
+    void shouldCalculateDiscountedPricesInBatch() {
+        // Arrange
+        double[] amounts = {800.0, 1200.0, 5000.1, 6000.0};
+        double[] out = new double[amounts.length];
+        long[] amountsMinor = {800_00L, 1200_00L, 5000_10L, 6000_00L};
+        // Act
+        calculator.calculateDiscountedPrices(amounts, out);
+        calculator.calculateDiscountedPrices(amountsMinor, amountsMinor);
+        // Assert
+        assertThat(out).containsExactly(new double[]{800.0, 1080.0, 4000.08, 4800.0}, offset(0.001));
+        assertThat(amountsMinor).containsExactly(800_00L, 1080_00L, 4000_08L, 4800_00L);
+    }
+
+    @Test
+    @DisplayName("Пакетный расчет с коротким массивом результатов")
+    void shouldRejectShortOutputArray() {
+        assertThatThrownBy(() -> calculator.calculateDiscountedPrices(new long[3], new long[2]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Подключаемый аудит получает каждый расчет")
+    void shouldNotifyAuditListener() {
+        // Arrange
+        List<long[]> records = new ArrayList<>();
+        calculator.setAuditListener((amount, rate, finalPrice) -> records.add(new long[]{amount, rate, finalPrice}));
+        // Act
+        calculator.calculateDiscountedPrice(1200.0);
+        calculator.calculateDiscountedPrices(new long[]{500_00L}, new long[1]);
+        calculator.setAuditListener(null);
+        calculator.calculateDiscountedPrice(6000.0);
+        // Assert
+        assertThat(records).containsExactly(new long[]{1200_00L, 1000, 1080_00L}, new long[]{500_00L, 0, 500_00L});
+    }
+
+    @Test
+    @DisplayName("Асинхронный журнал печатает записи в фоне")
+    void shouldWriteAuditLogAsynchronously() {
+        // Arrange
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(captured, true, StandardCharsets.UTF_8);
+        // Act
+        try (AsyncPricingAuditLog auditLog = new AsyncPricingAuditLog(out, 16)) {
+            calculator.setAuditListener(auditLog);
+            calculator.calculateDiscountedPrice(1200.0);
+        }
+        // Assert
+        assertThat(captured.toString(StandardCharsets.UTF_8)).contains("Итого: 1080");
+    }
+
+    @Test
+    @DisplayName("Закрытие журнала в прерванном потоке сохраняет флаг прерывания")
+    void shouldKeepInterruptFlagOnClose() {
+        // Arrange
+        AsyncPricingAuditLog auditLog = new AsyncPricingAuditLog(new PrintStream(new ByteArrayOutputStream()), 16);
+        // Act
+        Thread.currentThread().interrupt();
+        auditLog.close();
+        // Assert
+        assertThat(Thread.interrupted()).isTrue();
+    }
+}
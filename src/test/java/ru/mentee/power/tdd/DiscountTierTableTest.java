@@ -0,0 +1,86 @@
+package ru.mentee.power.tdd;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Тесты для DiscountTierTable")
+class DiscountTierTableTest {
+
+    @Test
+    @DisplayName("Таблица по умолчанию повторяет старые правила")
+    void shouldMatchOldRulesByDefault() {
+        DiscountTierTable table = DiscountTierTable.DEFAULT;
+
+        assertThat(table.rateFor(1000_00L)).isZero();
+        assertThat(table.rateFor(1000_01L)).isEqualTo(1000);
+        assertThat(table.rateFor(5000_00L)).isEqualTo(1000);
+        assertThat(table.rateFor(5000_01L)).isEqualTo(2000);
+    }
+
+    @Test
+    @DisplayName("Расчет в копейках с округлением скидки")
+    void shouldApplyRateInMinorUnits() {
+        // Arrange
+        DiscountTierTable table = new DiscountTierTable(new long[]{0}, new int[]{1250});
+        // Act & Assert
+        assertThat(table.apply(1000_00L)).isEqualTo(875_00L);
+        assertThat(table.apply(3L)).isEqualTo(3L); // скидка 0.375 копейки округляется до 0
+        assertThat(table.apply(4L)).isEqualTo(3L); // скидка 0.5 копейки округляется до 1
+    }
+
+    @Test
+    @DisplayName("Выбор уровня среди многих порогов")
+    void shouldFindTierAmongManyThresholds() {
+        // Arrange
+        long[] thresholds = new long[40];
+        int[] rates = new int[40];
+        for (int i = 0; i < thresholds.length; i++) {
+            thresholds[i] = (i + 1) * 100_00L;
+            rates[i] = (i + 1) * 10;
+        }
+        DiscountTierTable table = new DiscountTierTable(thresholds, rates);
+        // Act & Assert
+        assertThat(table.size()).isEqualTo(40);
+        assertThat(table.rateFor(100_00L)).isZero();
+        assertThat(table.rateFor(1234_56L)).isEqualTo(120);
+        assertThat(table.rateFor(Long.MAX_VALUE)).isEqualTo(400);
+    }
+
+    @Test
+    @DisplayName("Загрузка таблицы из текста")
+    void shouldLoadTableFromText() throws IOException {
+        // Arrange
+        String text = """
+                # порог ставка
+                5000 20%
+                1000.00 10
+
+                10000 12.5
+                """;
+        // Act
+        DiscountTierTable table = DiscountTierTable.load(new StringReader(text));
+        // Assert
+        assertThat(table.size()).isEqualTo(3);
+        assertThat(table.rateFor(1000_01L)).isEqualTo(1000);
+        assertThat(table.rateFor(5000_01L)).isEqualTo(2000);
+        assertThat(table.rateFor(10000_01L)).isEqualTo(1250);
+    }
+
+    @Test
+    @DisplayName("Ошибки в таблице")
+    void shouldRejectInvalidTables() {
+        assertThatThrownBy(() -> new DiscountTierTable(new long[]{500, 100}, new int[]{10, 20}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new DiscountTierTable(new long[]{100}, new int[]{10_001}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> DiscountTierTable.load(new StringReader("1000 10 extra")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> DiscountTierTable.load(new StringReader("1000.001 10")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
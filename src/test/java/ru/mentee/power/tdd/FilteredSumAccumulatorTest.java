@@ -0,0 +1,84 @@
+package ru.mentee.power.tdd;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Тесты для FilteredSumAccumulator")
+class FilteredSumAccumulatorTest {
+
+    private FilteredSumAccumulator accumulator;
+
+    @BeforeEach
+    void setUp() {
+        accumulator = new FilteredSumAccumulator();
+    }
+
+    @Test
+    @DisplayName("Накопление чисел по одному")
+    void shouldAccumulateSingleValues() {
+        // Act
+        accumulator.accept(10);
+        accumulator.accept(1001);
+        accumulator.accept((Integer) null);
+        accumulator.accept(-4);
+
+        // Assert
+        assertThat(accumulator.getSum()).isEqualTo(6);
+        assertThat(accumulator.getAcceptedCount()).isEqualTo(2);
+        assertThat(accumulator.getIgnoredCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Текущая сумма доступна между пачками")
+    void shouldExposeSumBetweenChunks() {
+        // Act & Assert
+        accumulator.acceptAll(new int[]{1, 2, 3, 5000});
+        assertThat(accumulator.getSum()).isEqualTo(6);
+
+        accumulator.acceptAll(new int[]{0, 1000, 7, 8}, 1, 3);
+        assertThat(accumulator.getSum()).isEqualTo(1013);
+
+        accumulator.acceptAll(null);
+        assertThat(accumulator.getSum()).isEqualTo(1013);
+    }
+
+    @Test
+    @DisplayName("Неверный диапазон пачки")
+    void shouldRejectInvalidChunkRange() {
+        assertThatThrownBy(() -> accumulator.acceptAll(new int[3], 2, 5))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    @DisplayName("Объединение накопителей из разных потоков")
+    void shouldMergeAccumulators() throws InterruptedException {
+        // Arrange
+        FilteredSumAccumulator other = new FilteredSumAccumulator();
+        Thread worker = new Thread(() -> other.acceptAll(new int[]{100, 2000, 200}));
+
+        // Act
+        worker.start();
+        accumulator.accept(5);
+        worker.join();
+        accumulator.merge(other);
+
+        // Assert
+        assertThat(accumulator.getSum()).isEqualTo(305);
+        assertThat(accumulator.getAcceptedCount()).isEqualTo(3);
+        assertThat(accumulator.getIgnoredCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Сброс накопителя")
+    void shouldResetAccumulator() {
+        accumulator.acceptAll(new int[]{1, 2, 3});
+
+        accumulator.reset();
+
+        assertThat(accumulator.getSum()).isZero();
+        assertThat(accumulator.getAcceptedCount()).isZero();
+    }
+}
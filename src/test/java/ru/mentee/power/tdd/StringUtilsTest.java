@@ -3,6 +3,15 @@ package ru.mentee.power.tdd;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -81,4 +90,75 @@ class StringUtilsTest {
         String actual = stringUtils.reverse(original);
         assertThat(actual).isEqualTo(expected);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Переворот строки с кириллицей и символами вне BMP")
+    void shouldReverseNonLatinStringKeepingSurrogatePairs() {
+        String original = "мир 😀!";
+        String expected = "!😀 рим";
+
+        String actual = stringUtils.reverse(original);
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    @DisplayName("Переворот в заранее выделенный массив")
+    void shouldReverseIntoCharArray() {
+        char[] dest = new char[6];
+
+        int written = stringUtils.reverse("ab😀", dest, 1);
+
+        assertThat(written).isEqualTo(4);
+        assertThat(new String(dest, 1, 4)).isEqualTo("😀ba");
+        assertThatThrownBy(() -> stringUtils.reverse("abc", new char[2], 0))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    @DisplayName("Переворот в CharBuffer")
+    void shouldReverseIntoCharBuffer() {
+        CharBuffer heap = CharBuffer.allocate(8).put('>');
+        CharBuffer direct = ByteBuffer.allocateDirect(16).asCharBuffer();
+
+        stringUtils.reverse("abc", heap);
+        stringUtils.reverse("a😀", direct);
+
+        assertThat(heap.flip().toString()).isEqualTo(">cba");
+        assertThat(direct.flip().toString()).isEqualTo("😀a");
+        assertThatThrownBy(() -> stringUtils.reverse("abcde", CharBuffer.allocate(4)))
+                .isInstanceOf(BufferOverflowException.class);
+    }
+
+    @Test
+    @DisplayName("Переворот по кластерам графем")
+    void shouldReverseByGraphemeClusters() {
+        String original = "e\u0301x🇷🇺";
+        String expected = "🇷🇺xe\u0301";
+
+        String actual = stringUtils.reverseGraphemes(original);
+
+        assertThat(actual).isEqualTo(expected);
+        assertThat(stringUtils.reverseGraphemes(null)).isNull();
+    }
+
+    @Test
+    @DisplayName("Переворот файла UTF-8 больше одного окна")
+    void shouldReverseUtf8FileInChunks(@TempDir Path dir) throws IOException {
+        // Arrange
+        StringBuilder text = new StringBuilder();
+        while (text.length() < StringUtils.FILE_CHUNK_SIZE) {
+            text.append("Привет, world € 😀 ");
+        }
+        Path source = dir.resolve("source.txt");
+        Path target = dir.resolve("target.txt");
+        Files.writeString(source, text, StandardCharsets.UTF_8);
+
+        // Act
+        stringUtils.reverseUtf8File(source, target);
+
+        // Assert
+        assertThat(Files.readString(target, StandardCharsets.UTF_8))
+                .isEqualTo(new StringBuilder(text).reverse().toString());
+    }
+}
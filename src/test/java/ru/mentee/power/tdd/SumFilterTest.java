@@ -0,0 +1,78 @@
+package ru.mentee.power.tdd;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Тесты для SumFilter")
+class SumFilterTest {
+
+    @Test
+    @DisplayName("Правило по умолчанию совпадает с sumIgnoringOver1000")
+    void shouldMatchHardCodedRuleByDefault() {
+        // Arrange
+        int[] numbers = {Integer.MIN_VALUE, -5, 0, 999, 1000, 1001, Integer.MAX_VALUE};
+        // Act
+        long actual = SumFilter.DEFAULT.sum(numbers);
+        // Assert
+        assertThat(actual).isEqualTo(new AdvancedCalculator().sumIgnoringOver1000(numbers));
+        assertThat(SumFilter.DEFAULT.test(1000)).isTrue();
+        assertThat(SumFilter.DEFAULT.test(1001)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Отрезок [min, max] включает обе границы")
+    void shouldIncludeBothBounds() {
+        // Arrange
+        SumFilter filter = SumFilter.between(-10, 10);
+        int[] numbers = {-11, -10, 0, 10, 11};
+        // Act & Assert
+        assertThat(filter.sum(numbers)).isEqualTo(0);
+        assertThat(filter.test(-10)).isTrue();
+        assertThat(filter.test(10)).isTrue();
+        assertThat(filter.test(-11)).isFalse();
+        assertThat(filter.test(11)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Исключение отрицательных чисел")
+    void shouldExcludeNegatives() {
+        // Arrange
+        SumFilter filter = SumFilter.atMost(500).excludingNegatives();
+        int[] numbers = {-300, 0, 200, 500, 501};
+        // Act & Assert
+        assertThat(filter).isEqualTo(SumFilter.between(0, 500));
+        assertThat(filter.sum(numbers)).isEqualTo(700);
+        assertThat(filter.excludingNegatives()).isSameAs(filter);
+    }
+
+    @Test
+    @DisplayName("Крайние значения int не ломают сравнение")
+    void shouldHandleExtremeBounds() {
+        // Arrange
+        SumFilter all = SumFilter.between(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        int[] numbers = {Integer.MIN_VALUE, Integer.MAX_VALUE, 1};
+        // Act & Assert
+        assertThat(all.sum(numbers)).isEqualTo((long) Integer.MIN_VALUE + Integer.MAX_VALUE + 1);
+        assertThat(SumFilter.between(Integer.MAX_VALUE, Integer.MAX_VALUE).sum(numbers))
+                .isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    @DisplayName("Пустой отрезок запрещен")
+    void shouldRejectEmptyRange() {
+        assertThatThrownBy(() -> SumFilter.between(5, 4))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Накопители с разными правилами не объединяются")
+    void shouldNotMergeAccumulatorsWithDifferentFilters() {
+        FilteredSumAccumulator first = new FilteredSumAccumulator(SumFilter.atMost(10));
+        FilteredSumAccumulator second = new FilteredSumAccumulator(SumFilter.atMost(20));
+
+        assertThatThrownBy(() -> first.merge(second))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
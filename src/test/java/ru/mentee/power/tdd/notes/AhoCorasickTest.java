@@ -0,0 +1,42 @@
+package ru.mentee.power.tdd.notes;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Тесты для AhoCorasick")
+class AhoCorasickTest {
+
+    @Test
+    @DisplayName("Поиск пересекающихся шаблонов за один проход")
+    void shouldFindOverlappingPatterns() {
+        AhoCorasick automaton = new AhoCorasick(List.of("he", "she", "his", "hers"));
+        BitSet found = new BitSet();
+
+        automaton.scan("ushers", found);
+
+        assertThat(found.stream().toArray()).containsExactly(0, 1, 3);
+    }
+
+    @Test
+    @DisplayName("Шаблон внутри другого шаблона находится по суффиксной ссылке")
+    void shouldFindPatternThroughSuffixLink() {
+        AhoCorasick automaton = new AhoCorasick(List.of("заметка", "метк"));
+        BitSet found = new BitSet();
+
+        automaton.scan("пометка", found);
+
+        assertThat(found.stream().toArray()).containsExactly(1);
+    }
+
+    @Test
+    @DisplayName("Пустой шаблон запрещен")
+    void shouldRejectEmptyPattern() {
+        assertThatThrownBy(() -> new AhoCorasick(List.of("a", "")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
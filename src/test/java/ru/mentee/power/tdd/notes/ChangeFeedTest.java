@@ -0,0 +1,121 @@
+package ru.mentee.power.tdd.notes;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Тесты для ChangeFeed")
+class ChangeFeedTest {
+
+    private final ChangeFeed feed = new ChangeFeed(4);
+
+    private void publishDeletes(int count) {
+        for (int i = 0; i < count; i++) {
+            feed.publish(sequence -> NoteEvent.deleted(sequence, (int) sequence));
+        }
+    }
+
+    @Test
+    @DisplayName("События читаются пачками по порядку")
+    void shouldPollEventsInBatches() {
+        publishDeletes(3);
+        ChangeFeed.Subscription subscription = feed.subscribe(1);
+
+        assertThat(subscription.poll(2)).extracting(NoteEvent::sequence).containsExactly(1L, 2L);
+        assertThat(subscription.lag()).isEqualTo(1);
+        assertThat(subscription.poll(10)).extracting(NoteEvent::sequence).containsExactly(3L);
+        assertThat(subscription.poll(10)).isEmpty();
+        assertThat(subscription.position()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Продолжение с заданного номера")
+    void shouldResumeFromSequence() {
+        publishDeletes(3);
+
+        ChangeFeed.Subscription subscription = feed.subscribe(3);
+
+        assertThat(subscription.poll(10)).extracting(NoteEvent::sequence).containsExactly(3L);
+    }
+
+    @Test
+    @DisplayName("Отставший подписчик получает ошибку")
+    void shouldDetectOverrunSubscriber() {
+        publishDeletes(2);
+        ChangeFeed.Subscription subscription = feed.subscribe(1);
+
+        publishDeletes(4);
+
+        assertThat(feed.getOldestAvailableSequence()).isEqualTo(3);
+        assertThatThrownBy(() -> subscription.poll(10)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> feed.subscribe(2)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> feed.subscribe(8)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Ожидание событий из другого потока")
+    void shouldWaitForEventsFromOtherThread() throws InterruptedException {
+        ChangeFeed large = new ChangeFeed(1024);
+        ChangeFeed.Subscription subscription = large.subscribe(1);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 500; i++) {
+                large.publish(sequence -> NoteEvent.deleted(sequence, (int) sequence));
+            }
+        });
+
+        writer.start();
+        List<NoteEvent> received = new ArrayList<>();
+        while (received.size() < 500) {
+            received.addAll(subscription.poll(64, 1, TimeUnit.SECONDS));
+        }
+        writer.join();
+
+        assertThat(received).extracting(NoteEvent::sequence)
+                .isEqualTo(LongStream.rangeClosed(1, 500).boxed().toList());
+    }
+
+    @Test
+    @DisplayName("Старые события вытесняются по объему раньше, чем по емкости")
+    void shouldEvictOldestEventsOverByteLimit() {
+        NoteEvent sample = NoteEvent.tagAdded(1, 1, "тег", 2);
+        ChangeFeed limited = new ChangeFeed(16, 3 * sample.estimatedBytes());
+        ChangeFeed.Subscription subscription = limited.subscribe(1);
+
+        for (int i = 0; i < 5; i++) {
+            limited.publish(sequence -> NoteEvent.tagAdded(sequence, 1, "тег", 2));
+        }
+
+        assertThat(limited.getRetainedBytes()).isEqualTo(3 * sample.estimatedBytes());
+        assertThat(limited.getOldestAvailableSequence()).isEqualTo(3);
+        assertThatThrownBy(() -> subscription.poll(10)).isInstanceOf(IllegalStateException.class);
+        assertThat(limited.subscribe(3).poll(10)).extracting(NoteEvent::sequence).containsExactly(3L, 4L, 5L);
+    }
+
+    @Test
+    @DisplayName("Выключенная лента только выделяет номера")
+    void shouldOnlyCountSequencesWhenDisabled() {
+        ChangeFeed disabled = new ChangeFeed(0);
+
+        disabled.publish(sequence -> {
+            throw new AssertionError("Event must not be created");
+        });
+
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(disabled.getLastSequence()).isEqualTo(1);
+        assertThat(disabled.getRetainedBytes()).isZero();
+        assertThatThrownBy(() -> disabled.subscribe(1)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("Емкость должна быть степенью двойки")
+    void shouldRejectInvalidCapacity() {
+        assertThatThrownBy(() -> new ChangeFeed(3)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ChangeFeed(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -4,7 +4,11 @@ import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.*;
 
 import static org.assertj.core.api.Assertions.*;
@@ -188,6 +192,16 @@ class NoteServiceTest {
             assertThat(addedStatus).isFalse();
         }
 
+        @Test
+        @DisplayName("Тест для addTagToNote с тегом в другом регистре")
+        void shouldNotAddExistTagInOtherCase() {
+            Note addedNote = noteService.addNote("Первая заметка", "Текст первой заметки", Set.of("java"));
+
+            assertThat(noteService.addTagToNote(addedNote.getId(), "JAVA")).isFalse();
+            assertThat(noteService.removeTagFromNote(addedNote.getId(), "Java")).isTrue();
+            assertThat(addedNote.getTags()).isEmpty();
+        }
+
         @Test
         @DisplayName("Тест для addTagToNote с несуществующей заметкой")
         void shouldAddTagToNotExistNote() {
@@ -352,6 +366,29 @@ class NoteServiceTest {
             assertThat(noteService.findNotesByText("Тест")).isEmpty();
         }
 
+        @Test
+        @DisplayName("Тест для поиска после изменения заметки в findNotesByText")
+        void shouldFindNotesByTextAfterUpdate() {
+            Note addedNote = noteService.addNote("Первая заметка", "Текст первой заметки", null);
+
+            noteService.updateNoteText(addedNote.getId(), "Список ПОКУПОК", "Молоко");
+
+            assertThat(noteService.findNotesByText("покупок")).containsExactly(addedNote);
+            assertThat(noteService.findNotesByText("первой")).isEmpty();
+        }
+
+        @Test
+        @DisplayName("Тест для поиска без учета диакритики в findNotesByText")
+        void shouldFindNotesByTextIgnoringAccents() {
+            NoteService service = new NoteService(TextNormalizer.CASE_AND_ACCENT_INSENSITIVE);
+            Note note = service.addNote("Café", "Ёлка в парке", null);
+
+            assertThat(service.findNotesByText("CAFE")).containsExactly(note);
+            assertThat(service.findNotesByText("елка")).containsExactly(note);
+            assertThat(noteService.addNote("Café", "Ёлка", null)).isNotNull();
+            assertThat(noteService.findNotesByText("cafe")).isEmpty();
+        }
+
         @Test
         @DisplayName("Тест для findNotesByTags")
         void shouldFindNotesByTags() {
@@ -384,6 +421,129 @@ class NoteServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("Тесты поиска по нескольким словам")
+    class FindByTermsTests {
+
+        private Note java;
+        private Note kotlin;
+        private Note both;
+
+        @BeforeEach
+        void setUpNotes() {
+            java = noteService.addNote("Java", "Потоки и коллекции", null);
+            kotlin = noteService.addNote("Kotlin", "Корутины вместо потоков", null);
+            both = noteService.addNote("Сравнение", "Java и Kotlin: потоки данных", null);
+        }
+
+        @Test
+        @DisplayName("Режим ANY возвращает найденные слова для каждой заметки")
+        void shouldFindNotesWithAnyTerm() {
+            List<TermMatch> matches = noteService.findNotesByTerms(List.of("JAVA", "kotlin"), TermMatchMode.ANY);
+
+            assertThat(matches).extracting(TermMatch::note).containsExactlyInAnyOrder(java, kotlin, both);
+            assertThat(matches).filteredOn(match -> match.note().equals(both))
+                    .singleElement()
+                    .extracting(TermMatch::matchedTerms)
+                    .isEqualTo(Set.of("JAVA", "kotlin"));
+        }
+
+        @Test
+        @DisplayName("Режим ALL ищет слова и в заголовке, и в тексте")
+        void shouldFindNotesWithAllTerms() {
+            List<TermMatch> matches = noteService.findNotesByTerms(List.of("java", "потоки"), TermMatchMode.ALL);
+
+            assertThat(matches).extracting(TermMatch::note).containsExactlyInAnyOrder(java, both);
+        }
+
+        @Test
+        @DisplayName("Режим PHRASE требует слова подряд")
+        void shouldFindNotesWithPhrase() {
+            assertThat(noteService.findNotesByTerms(List.of("потоки", "данных"), TermMatchMode.PHRASE))
+                    .extracting(TermMatch::note).containsExactly(both);
+            assertThat(noteService.findNotesByTerms(List.of("данных", "потоки"), TermMatchMode.PHRASE))
+                    .isEmpty();
+        }
+
+        @Test
+        @DisplayName("Повторы слов во фразе сохраняются")
+        void shouldKeepRepeatedWordsInPhrase() {
+            // Arrange
+            Note full = noteService.addNote("Гамлет", "to be or not to be", null);
+            noteService.addNote("Обрывок", "to be or not", null);
+
+            // Act
+            List<TermMatch> result = noteService.findNotesByTerms(
+                    List.of("to", "be", "or", "not", "to", "be"), TermMatchMode.PHRASE);
+
+            // Assert
+            assertThat(result).extracting(TermMatch::note).containsExactly(full);
+            assertThat(result.get(0).matchedTerms()).containsExactly("to be or not to be");
+        }
+
+        @Test
+        @DisplayName("Пустые слова игнорируются")
+        void shouldIgnoreBlankTerms() {
+            assertThat(noteService.findNotesByTerms(List.of(" ", ""), TermMatchMode.ANY)).isEmpty();
+            assertThat(noteService.findNotesByTerms(Arrays.asList(null, "корутины"), TermMatchMode.ALL))
+                    .extracting(TermMatch::note).containsExactly(kotlin);
+        }
+    }
+
+    @Nested
+    @DisplayName("Тесты автодополнения")
+    class SuggestionTests {
+
+        @Test
+        @DisplayName("Индекс заголовков следует за добавлением, обновлением и удалением")
+        void shouldKeepTitleIndexInSync() {
+            Note first = noteService.addNote("Java основы", "Текст", null);
+            Note second = noteService.addNote("Java основы", "Текст", null);
+            noteService.addNote("JavaScript", "Текст", null);
+
+            assertThat(noteService.completeTitles("JAVA", 1)).singleElement()
+                    .isEqualTo(new Suggestion("java основы", 2, 0));
+
+            noteService.updateNoteText(first.getId(), "Kotlin", "Текст");
+            noteService.deleteNote(second.getId());
+
+            assertThat(noteService.completeTitles("java", 10)).extracting(Suggestion::text)
+                    .containsExactly("javascript");
+            assertThat(noteService.completeTitles("kot", 10)).extracting(Suggestion::text)
+                    .containsExactly("kotlin");
+        }
+
+        @Test
+        @DisplayName("Индекс тегов следует за добавлением и удалением тегов")
+        void shouldKeepTagIndexInSync() {
+            Note note = noteService.addNote("Первая", "Текст", Set.of("java", "jvm"));
+            noteService.addNote("Вторая", "Текст", Set.of("java"));
+
+            noteService.addTagToNote(note.getId(), "Jakarta");
+            noteService.removeTagFromNote(note.getId(), "jvm");
+
+            assertThat(noteService.completeTags("j", 10)).extracting(Suggestion::text)
+                    .containsExactly("java", "jakarta");
+
+            noteService.deleteNote(note.getId());
+
+            assertThat(noteService.completeTags("j", 10)).singleElement()
+                    .isEqualTo(new Suggestion("java", 1, 0));
+        }
+
+        @Test
+        @DisplayName("Нечеткий поиск по заголовкам и тегам")
+        void shouldFindSimilarTitlesAndTags() {
+            noteService.addNote("Заметка", "Текст", Set.of("kotlin"));
+
+            assertThat(noteService.findSimilarTitles("заметко", 1, 5)).extracting(Suggestion::text)
+                    .containsExactly("заметка");
+            assertThat(noteService.findSimilarTags("kotiln", 2, 5)).extracting(Suggestion::text)
+                    .containsExactly("kotlin");
+            assertThat(noteService.findSimilarTags("kotiln", 1, 5)).isEmpty();
+        }
+    }
+
     @Nested
     @DisplayName("Тесты работы с тегами")
     class TagTests {
@@ -405,4 +565,902 @@ class NoteServiceTest {
             assertThat(tags).isEmpty();
         }
     }
-}
\ No newline at end of file
+
+    @Nested
+    @DisplayName("Тесты статистики тегов")
+    class TagStatisticsTests {
+
+        @Test
+        @DisplayName("Число заметок по тегу обновляется при изменениях")
+        void shouldTrackTagCounts() {
+            Note note1 = noteService.addNote("Первая", "Текст", Set.of("java", "test"));
+            noteService.addNote("Вторая", "Текст", Set.of("java"));
+
+            noteService.removeTagFromNote(note1.getId(), "java");
+            noteService.addTagToNote(note1.getId(), "code");
+
+            assertThat(noteService.getTagCount("JAVA")).isEqualTo(1);
+            assertThat(noteService.getTagCount("code")).isEqualTo(1);
+            assertThat(noteService.getTagCount("missing")).isZero();
+        }
+
+        @Test
+        @DisplayName("Фасеты для результата поиска")
+        void shouldFacetSearchResult() {
+            noteService.addNote("Java потоки", "Текст", Set.of("java", "threads"));
+            noteService.addNote("Java коллекции", "Текст", Set.of("java", "collections"));
+            noteService.addNote("Kotlin", "Текст", Set.of("kotlin", "threads"));
+
+            List<Note> result = noteService.findNotesByText("java");
+
+            assertThat(noteService.facetTags(result, 2))
+                    .containsExactly(new TagCount("java", 2), new TagCount("collections", 1));
+            assertThat(noteService.facetTags(NoteService.toIdBitmap(noteService.getAllNotes()), 1))
+                    .containsExactly(new TagCount("java", 2));
+        }
+
+        @Test
+        @DisplayName("Совместная встречаемость тегов")
+        void shouldTrackTagCoOccurrence() {
+            Note note1 = noteService.addNote("Первая", "Текст", Set.of("java", "test"));
+            Note note2 = noteService.addNote("Вторая", "Текст", Set.of("java", "test", "code"));
+
+            assertThat(noteService.getTagCoOccurrence("java", "test")).isEqualTo(2);
+            assertThat(noteService.getCoOccurringTags("code")).isEqualTo(Map.of("java", 1, "test", 1));
+
+            noteService.removeTagFromNote(note1.getId(), "test");
+            noteService.deleteNote(note2.getId());
+
+            assertThat(noteService.getTagCoOccurrence("java", "test")).isZero();
+            assertThat(noteService.getCoOccurringTags("java")).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("Тесты ленты изменений")
+    class ChangeFeedTests {
+
+        private final NoteService noteService = new NoteService(
+                NoteServiceOptions.defaults().withChangeFeedCapacity(16));
+
+        @Test
+        @DisplayName("Каждое изменение попадает в ленту по порядку")
+        void shouldPublishEventForEachChange() {
+            ChangeFeed.Subscription subscription = noteService.subscribeToChanges(1);
+
+            Note note = noteService.addNote("Заголовок", "Текст", Set.of("java"));
+            noteService.updateNoteText(note.getId(), "Новый", "Новый текст");
+            noteService.addTagToNote(note.getId(), "Code");
+            noteService.addTagToNote(note.getId(), "code");
+            noteService.removeTagFromNote(note.getId(), "java");
+            noteService.deleteNote(note.getId());
+            noteService.deleteNote(note.getId());
+
+            List<NoteEvent> events = subscription.poll(100);
+            assertThat(events).extracting(NoteEvent::type).containsExactly(
+                    NoteEvent.Type.ADDED, NoteEvent.Type.UPDATED, NoteEvent.Type.TAG_ADDED,
+                    NoteEvent.Type.TAG_REMOVED, NoteEvent.Type.DELETED);
+            assertThat(events).extracting(NoteEvent::sequence).containsExactly(1L, 2L, 3L, 4L, 5L);
+            assertThat(events.get(0).tags()).containsExactly("java");
+            assertThat(events.get(1).title()).isEqualTo("Новый");
+            assertThat(events.get(2).tag()).isEqualTo("code");
+            assertThat(noteService.getLastChangeSequence()).isEqualTo(5);
+        }
+
+        @Test
+        @DisplayName("Подписка с места остановки")
+        void shouldResumeFromLastProcessedEvent() {
+            noteService.addNote("Первая", "Текст", null);
+            noteService.addNote("Вторая", "Текст", null);
+            long lastProcessed = noteService.getLastChangeSequence();
+            noteService.addNote("Третья", "Текст", null);
+
+            List<NoteEvent> events = noteService.subscribeToChanges(lastProcessed + 1).poll(10);
+
+            assertThat(events).singleElement().extracting(NoteEvent::title).isEqualTo("Третья");
+        }
+
+        @Test
+        @DisplayName("По умолчанию лента выключена, но номера изменений считаются")
+        void shouldKeepFeedDisabledByDefault() {
+            NoteService plain = new NoteService();
+
+            plain.addNote("Заголовок", "Текст", null);
+
+            assertThat(plain.isChangeFeedEnabled()).isFalse();
+            assertThat(plain.getLastChangeSequence()).isEqualTo(1);
+            assertThatThrownBy(() -> plain.subscribeToChanges(1)).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Nested
+    @DisplayName("Тесты сжатого хранения текста")
+    class TextCompressionTests {
+
+        private final NoteService compressed = new NoteService(
+                NoteServiceOptions.defaults().withTextCompression(true).withTextCacheSize(2));
+
+        private String longText(int i) {
+            return ("Встреча с клиентом по проекту номер " + i + ". Обсудить договор и сроки релиза. ").repeat(3);
+        }
+
+        @Test
+        @DisplayName("Длинный текст хранится сжатым и читается без изменений")
+        void shouldStoreLongTextCompressed() {
+            // Arrange
+            String text = longText(1) + "Ünïcode 😀";
+
+            // Act
+            Note note = compressed.addNote("Заметка", text, null);
+            compressed.addNote("Короткая", "Короткий текст", null);
+
+            // Assert
+            assertThat(compressed.getNoteById(note.getId()).orElseThrow().getText()).isEqualTo(text);
+            TextStorageStats stats = compressed.getTextStorageStats();
+            assertThat(stats.notes()).isEqualTo(2);
+            assertThat(stats.compressedNotes()).isEqualTo(1);
+            assertThat(stats.storedBytes()).isLessThan(stats.originalBytes());
+        }
+
+        @Test
+        @DisplayName("Поиск находит слова в сжатом тексте")
+        void shouldFindTextInCompressedNotes() {
+            Note note = compressed.addNote("Заметка", longText(1) + "Срочно позвонить", null);
+            compressed.addNote("Другая", longText(2), null);
+
+            assertThat(compressed.findNotesByText("срочно ПОЗВОНИТЬ")).containsExactly(note);
+            assertThat(compressed.findNotesByTerms(List.of("договор", "позвонить"), TermMatchMode.ALL))
+                    .extracting(TermMatch::note).containsExactly(note);
+        }
+
+        @Test
+        @DisplayName("Поиск без учета диакритики по сжатому тексту не читает текст через кэш")
+        void shouldSearchCompressedTextWithAccentInsensitiveNormalizer() {
+            // Arrange
+            NoteService service = new NoteService(NoteServiceOptions.defaults()
+                    .withNormalizer(TextNormalizer.CASE_AND_ACCENT_INSENSITIVE).withTextCompression(true));
+            Note note = service.addNote("Заметка", longText(1) + "Résumé кандидата, café в Ёлкино", null);
+            service.addNote("Другая", longText(2), null);
+
+            // Act
+            List<Note> byText = service.findNotesByText("RESUME");
+            List<Note> byTerms = service.findNotesByTerms(List.of("cafe", "елкино"), TermMatchMode.ALL)
+                    .stream().map(TermMatch::note).toList();
+
+            // Assert
+            assertThat(byText).containsExactly(note);
+            assertThat(byTerms).containsExactly(note);
+            TextStorageStats stats = service.getTextStorageStats();
+            assertThat(stats.compressedNotes()).isEqualTo(2);
+            assertThat(stats.cacheMisses()).isZero();
+        }
+
+        @Test
+        @DisplayName("Повторное чтение текста берется из кэша")
+        void shouldCacheDecompressedText() {
+            Note note = compressed.addNote("Заметка", longText(1), null);
+
+            note.getText();
+            note.getText();
+
+            TextStorageStats stats = compressed.getTextStorageStats();
+            assertThat(stats.cacheMisses()).isEqualTo(1);
+            assertThat(stats.cacheHits()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("Обученный словарь улучшает сжатие и не портит тексты")
+        void shouldImproveCompressionWithTrainedDictionary() {
+            List<Note> notes = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                notes.add(compressed.addNote("Заметка " + i, longText(i), null));
+            }
+            long before = compressed.getTextStorageStats().storedBytes();
+
+            TextStorageStats after = compressed.trainTextCompression();
+
+            assertThat(after.dictionarySize()).isPositive();
+            assertThat(after.storedBytes()).isLessThan(before);
+            for (int i = 0; i < notes.size(); i++) {
+                assertThat(notes.get(i).getText()).isEqualTo(longText(i));
+            }
+        }
+
+        @Test
+        @DisplayName("Обновление сжатого текста")
+        void shouldUpdateCompressedText() {
+            Note note = compressed.addNote("Заметка", longText(1), null);
+
+            compressed.updateNoteText(note.getId(), "Заметка", "Новый текст");
+
+            assertThat(note.getText()).isEqualTo("Новый текст");
+            assertThat(compressed.findNotesByText("договор")).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("Тесты бюджета памяти")
+    class MemoryBudgetTests {
+
+        private static final long BUDGET = 200_000;
+
+        @TempDir
+        Path spillDirectory;
+
+        private NoteService limited;
+
+        @BeforeEach
+        void setUp() {
+            limited = new NoteService(NoteServiceOptions.defaults().withMemoryBudget(BUDGET, spillDirectory));
+        }
+
+        private String text(int i) {
+            return ("Текст заметки номер " + i + ". ").repeat(50);
+        }
+
+        private List<Note> addNotes(int count) {
+            List<Note> added = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                added.add(limited.addNote("Заметка " + i, text(i), Set.of("tag" + i % 3)));
+            }
+            return added;
+        }
+
+        @Test
+        @DisplayName("Сверх бюджета тексты вытесняются на диск")
+        void shouldSpillTextsOverBudget() {
+            // Act
+            addNotes(300);
+
+            // Assert
+            MemoryStats stats = limited.getMemoryStats();
+            assertThat(stats.residentBytes()).isLessThanOrEqualTo(BUDGET);
+            assertThat(stats.spilledNotes()).isPositive();
+            assertThat(stats.spills()).isGreaterThanOrEqualTo(stats.spilledNotes());
+            assertThat(stats.spillFileBytes()).isPositive();
+        }
+
+        @Test
+        @DisplayName("Недавно прочитанные заметки остаются в памяти")
+        void shouldKeepRecentlyAccessedNotesResident() {
+            List<Note> added = addNotes(300);
+
+            Note last = added.get(added.size() - 1);
+
+            assertThat(added.get(0).body().isSpilled()).isTrue();
+            assertThat(last.body().isSpilled()).isFalse();
+        }
+
+        @Test
+        @DisplayName("Прочитанная заметка переживает следующее вытеснение, непрочитанная — нет")
+        void shouldGiveRecentlyReadNoteSecondChance() {
+            // Arrange
+            limited = new NoteService(NoteServiceOptions.defaults().withMemoryBudget(2 * BUDGET, spillDirectory));
+            List<Note> added = addNotes(300);
+            Note unread = added.stream().filter(note -> !note.body().isSpilled()).findFirst().orElseThrow();
+            Note reread = limited.getNoteById(added.get(0).getId()).orElseThrow();
+
+            // Act
+            for (int i = 300; i < 320; i++) {
+                limited.addNote("Заметка " + i, text(i), null);
+            }
+
+            // Assert
+            assertThat(reread.body().isSpilled()).isFalse();
+            assertThat(unread.body().isSpilled()).isTrue();
+            assertThat(limited.getMemoryStats().residentBytes()).isLessThanOrEqualTo(2 * BUDGET);
+        }
+
+        @Test
+        @DisplayName("getNoteById загружает вытесненный текст обратно")
+        void shouldReloadSpilledNoteById() {
+            List<Note> added = addNotes(300);
+            Note cold = added.get(0);
+            assertThat(cold.body().isSpilled()).isTrue();
+
+            Note loaded = limited.getNoteById(cold.getId()).orElseThrow();
+
+            assertThat(loaded.body().isSpilled()).isFalse();
+            assertThat(loaded.getText()).isEqualTo(text(0));
+            assertThat(limited.getMemoryStats().reloads()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("Поиск видит вытесненные тексты и загружает найденные")
+        void shouldSearchSpilledNotes() {
+            List<Note> added = addNotes(300);
+
+            List<Note> found = limited.findNotesByText("номер 7.");
+
+            assertThat(found).containsExactly(added.get(7));
+            assertThat(found.get(0).body().isSpilled()).isFalse();
+            assertThat(limited.getMemoryStats().diskReads()).isPositive();
+        }
+
+        private long usedHeap() {
+            System.gc();
+            System.gc();
+            return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+
+        @Test
+        @DisplayName("Куча с заметками, индексами и лентой изменений не выходит за бюджет")
+        void shouldKeepHeapWithinBudget() {
+            // Arrange
+            long budget = 1 << 20;
+            long before = usedHeap();
+            NoteService service = new NoteService(NoteServiceOptions.defaults()
+                    .withMemoryBudget(budget, spillDirectory).withChangeFeedCapacity(1 << 10));
+
+            // Act
+            for (int i = 0; i < 300; i++) {
+                service.addNote("Заметка " + i, ("Длинный текст заметки номер " + i + ". ").repeat(300),
+                        Set.of("tag" + i % 10, "общий"));
+            }
+            long heap = usedHeap() - before;
+
+            // Assert
+            MemoryStats stats = service.getMemoryStats();
+            assertThat(heap).isLessThanOrEqualTo(budget * 5 / 4);
+            assertThat(stats.residentBytes()).isLessThanOrEqualTo(budget);
+            assertThat(stats.residentBytes()).isGreaterThanOrEqualTo(heap / 2);
+            assertThat(stats.indexBytes()).isPositive();
+            assertThat(stats.changeFeedBytes()).isPositive().isLessThanOrEqualTo(budget / 4);
+        }
+
+        @Test
+        @DisplayName("Учет памяти обнуляется после удаления всех заметок")
+        void shouldReleaseAccountedMemoryOnDelete() {
+            List<Note> added = addNotes(300);
+            limited.updateNoteText(added.get(0).getId(), "Новый заголовок", "Новый текст");
+            limited.addTagToNote(added.get(1).getId(), "новый");
+
+            added.forEach(note -> limited.deleteNote(note.getId()));
+
+            MemoryStats stats = limited.getMemoryStats();
+            assertThat(stats.residentBytes()).isZero();
+            assertThat(stats.spilledNotes()).isZero();
+            assertThat(added.get(0).getText()).isEqualTo("Новый текст");
+            assertThat(added.get(2).getText()).isEqualTo(text(2));
+        }
+    }
+
+    @Nested
+    @DisplayName("Тесты образа заметок")
+    class ImageTests {
+
+        @TempDir
+        Path directory;
+
+        private NoteService filled() {
+            NoteService service = new NoteService(TextNormalizer.CASE_AND_ACCENT_INSENSITIVE);
+            service.addNote("Café у дома", "Кофе и круассаны", Set.of("еда", "Город"));
+            service.addNote("Покупки", "Молоко, хлеб", Set.of("еда", "дом"));
+            Note deleted = service.addNote("Черновик", "Удалю", Set.of("черновик"));
+            service.addNote("Пустая", "", null);
+            service.deleteNote(deleted.getId());
+            return service;
+        }
+
+        @Test
+        @DisplayName("Открытый образ отвечает на запросы так же, как исходный сервис")
+        void shouldAnswerQueriesLikeOriginal() throws IOException {
+            // Arrange
+            NoteService original = filled();
+            Path image = directory.resolve("notes.img");
+            original.writeImage(image);
+
+            // Act
+            NoteService opened = NoteService.openImage(image, NoteServiceOptions.defaults());
+
+            // Assert
+            assertThat(opened.getAllNotes()).extracting(Note::getId, Note::getTitle, Note::getText, Note::getTags,
+                            Note::getCreationDate)
+                    .containsExactlyInAnyOrderElementsOf(original.getAllNotes().stream()
+                            .map(n -> tuple(n.getId(), n.getTitle(), n.getText(), n.getTags(), n.getCreationDate()))
+                            .toList());
+            assertThat(opened.findNotesByText("cafe")).extracting(Note::getTitle).containsExactly("Café у дома");
+            assertThat(opened.findNotesByText("хлеб")).extracting(Note::getTitle).containsExactly("Покупки");
+            assertThat(opened.findNotesByTags(Set.of("еда"))).hasSize(2);
+            assertThat(opened.getAllTags()).isEqualTo(original.getAllTags());
+            assertThat(opened.getTagCoOccurrence("еда", "город")).isEqualTo(1);
+            assertThat(opened.completeTags("е", 5)).isEqualTo(original.completeTags("е", 5));
+            assertThat(opened.completeTitles("п", 5)).isEqualTo(original.completeTitles("п", 5));
+        }
+
+        @Test
+        @DisplayName("Тексты из образа загружаются в память только при обращении")
+        void shouldLoadTextsLazily() throws IOException {
+            Path image = directory.resolve("notes.img");
+            filled().writeImage(image);
+
+            NoteService opened = NoteService.openImage(image, NoteServiceOptions.defaults());
+            Note note = opened.getAllNotes().get(0);
+            assertThat(note.body().isSpilled()).isTrue();
+
+            Note loaded = opened.getNoteById(note.getId()).orElseThrow();
+
+            assertThat(loaded.body().isSpilled()).isFalse();
+            assertThat(opened.getMemoryStats().reloads()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("Открытый образ можно менять, а новые ID продолжают старые")
+        void shouldAllowChangesAfterOpening() throws IOException {
+            NoteService original = filled();
+            Path image = directory.resolve("notes.img");
+            original.writeImage(image);
+            NoteService opened = NoteService.openImage(image, NoteServiceOptions.defaults());
+            int firstId = opened.getAllNotes().get(0).getId();
+
+            Note added = opened.addNote("Новая", "Текст", Set.of("еда"));
+            opened.updateNoteText(firstId, "Обновлена", "Другой текст");
+            opened.writeImage(image);
+            NoteService reopened = NoteService.openImage(image, NoteServiceOptions.defaults());
+
+            assertThat(added.getId()).isEqualTo(5);
+            assertThat(opened.getTagCount("еда")).isEqualTo(3);
+            assertThat(reopened.getNoteById(firstId)).get().extracting(Note::getText).isEqualTo("Другой текст");
+            assertThat(reopened.findNotesByTags(Set.of("еда"))).hasSize(3);
+        }
+
+        @Test
+        @DisplayName("Версии заметок сохраняются в образе, и старая версия после перезапуска дает конфликт")
+        void shouldKeepVersionsInImage() throws IOException {
+            // Arrange
+            NoteService original = filled();
+            Note note = original.getAllNotes().get(0);
+            original.updateNoteText(note.getId(), "Обновлена", "Другой текст");
+            original.addTagToNote(note.getId(), "важное");
+            Path image = directory.resolve("notes.img");
+            original.writeImage(image);
+
+            // Act
+            NoteService reopened = NoteService.openImage(image, NoteServiceOptions.defaults());
+            UpdateResult stale = reopened.updateNoteText(note.getId(), 1, "Старая", "Старый текст");
+
+            // Assert
+            assertThat(reopened.getNoteById(note.getId())).get().extracting(Note::getVersion).isEqualTo(3L);
+            assertThat(stale).isEqualTo(UpdateResult.CONFLICT);
+            for (Note other : original.getAllNotes()) {
+                assertThat(reopened.getNoteById(other.getId()).orElseThrow().getVersion()).isEqualTo(other.getVersion());
+            }
+        }
+
+        @Test
+        @DisplayName("Образ другой версии формата не открывается")
+        void shouldRejectUnsupportedVersion() throws IOException {
+            Path image = directory.resolve("notes.img");
+            filled().writeImage(image);
+            byte[] bytes = Files.readAllBytes(image);
+            bytes[7] = (byte) (NoteImage.VERSION + 1);
+            Files.write(image, bytes);
+
+            assertThatThrownBy(() -> NoteService.openImage(image, NoteServiceOptions.defaults()))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("version");
+        }
+
+        @Test
+        @DisplayName("Запись заметки с участком текста за пределами файла дает IOException")
+        void shouldRejectNoteRecordOutOfBounds() throws IOException {
+            Path image = directory.resolve("notes.img");
+            filled().writeImage(image);
+            byte[] bytes = Files.readAllBytes(image);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int firstNote = (int) buffer.getLong(48);
+            buffer.putInt(firstNote + 48, bytes.length);
+            Files.write(image, bytes);
+
+            assertThatThrownBy(() -> NoteService.openImage(image, NoteServiceOptions.defaults()))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("out of bounds");
+        }
+
+        @Test
+        @DisplayName("Ссылка заметки на тег вне словаря дает IOException")
+        void shouldRejectTagReferenceOutsideDictionary() throws IOException {
+            Path image = directory.resolve("notes.img");
+            filled().writeImage(image);
+            byte[] bytes = Files.readAllBytes(image);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int tagRefs = (int) buffer.getLong(32);
+            buffer.putInt(tagRefs, buffer.getInt(20));
+            Files.write(image, bytes);
+
+            assertThatThrownBy(() -> NoteService.openImage(image, NoteServiceOptions.defaults()))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("dictionary");
+        }
+    }
+
+    @Nested
+    @DisplayName("Тесты условных изменений по версии")
+    class VersionTests {
+
+        @Test
+        @DisplayName("Каждое изменение увеличивает версию заметки")
+        void shouldIncrementVersionOnChanges() {
+            // Arrange
+            Note note = noteService.addNote("Заголовок", "Текст", null);
+            long created = note.getVersion();
+
+            // Act
+            noteService.updateNoteText(note.getId(), "Новый", "Новый текст");
+            noteService.addTagToNote(note.getId(), "тег");
+            noteService.addTagToNote(note.getId(), "тег");
+
+            // Assert
+            assertThat(created).isEqualTo(1);
+            assertThat(note.getVersion()).isEqualTo(3);
+        }
+
+        @Test
+        @DisplayName("Изменение с устаревшей версией отклоняется и ничего не меняет")
+        void shouldRejectStaleVersion() {
+            Note note = noteService.addNote("Заголовок", "Текст", null);
+            long seen = note.getVersion();
+            noteService.updateNoteText(note.getId(), seen, "Первый", "Правка первого клиента");
+
+            UpdateResult result = noteService.updateNoteText(note.getId(), seen, "Второй", "Правка второго клиента");
+
+            assertThat(result).isEqualTo(UpdateResult.CONFLICT);
+            assertThat(note.getText()).isEqualTo("Правка первого клиента");
+            assertThat(noteService.completeTitles("втор", 5)).isEmpty();
+        }
+
+        @Test
+        @DisplayName("Условные изменения тегов проверяют версию")
+        void shouldCheckVersionForTags() {
+            Note note = noteService.addNote("Заголовок", "Текст", Set.of("работа"));
+
+            assertThat(noteService.addTagToNote(note.getId(), note.getVersion(), "срочно")).isEqualTo(UpdateResult.UPDATED);
+            assertThat(noteService.addTagToNote(note.getId(), note.getVersion(), "срочно")).isEqualTo(UpdateResult.UNCHANGED);
+            assertThat(noteService.removeTagFromNote(note.getId(), 1, "работа")).isEqualTo(UpdateResult.CONFLICT);
+            assertThat(noteService.removeTagFromNote(note.getId(), note.getVersion(), "работа")).isEqualTo(UpdateResult.UPDATED);
+            assertThat(noteService.removeTagFromNote(99, 1, "работа")).isEqualTo(UpdateResult.NOT_FOUND);
+            assertThat(note.getTags()).containsExactly("срочно");
+            assertThat(noteService.getTagCount("работа")).isZero();
+        }
+
+        @Test
+        @DisplayName("Конкурентные правки с повтором при конфликте не теряются")
+        void shouldNotLoseConcurrentUpdates() throws InterruptedException {
+            // Arrange
+            Note note = noteService.addNote("Счетчик", "0", null);
+            int threads = 4;
+            int incrementsPerThread = 200;
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                writers.add(new Thread(() -> {
+                    for (int i = 0; i < incrementsPerThread; i++) {
+                        UpdateResult result;
+                        do {
+                            Note current = noteService.getNoteById(note.getId()).orElseThrow();
+                            long version = current.getVersion();
+                            int value = Integer.parseInt(current.getText());
+                            result = noteService.updateNoteText(note.getId(), version, "Счетчик", String.valueOf(value + 1));
+                        } while (result == UpdateResult.CONFLICT);
+                    }
+                }));
+            }
+
+            // Act
+            writers.forEach(Thread::start);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+
+            // Assert
+            assertThat(note.getText()).isEqualTo(String.valueOf(threads * incrementsPerThread));
+            assertThat(note.getVersion()).isEqualTo(1 + threads * incrementsPerThread);
+        }
+    }
+
+    @Nested
+    @DisplayName("Тесты пакетных операций")
+    class BulkTests {
+
+        private Note work;
+        private Note urgent;
+        private Note home;
+
+        @BeforeEach
+        void setUp() {
+            work = noteService.addNote("Отчет", "Квартальный отчет", Set.of("работа", "срочно"));
+            urgent = noteService.addNote("Звонок", "Позвонить клиенту", Set.of("работа"));
+            home = noteService.addNote("Покупки", "Молоко", Set.of("дом"));
+        }
+
+        @Test
+        @DisplayName("Пакетное удаление по списку ID обновляет индексы и статистику")
+        void shouldDeleteByIds() {
+            // Act
+            int deleted = noteService.deleteNotes(List.of(work.getId(), home.getId(), 99));
+
+            // Assert
+            assertThat(deleted).isEqualTo(2);
+            assertThat(noteService.getAllNotes()).containsExactly(urgent);
+            assertThat(noteService.getAllTags()).containsExactly("работа");
+            assertThat(noteService.getTagCoOccurrence("работа", "срочно")).isZero();
+            assertThat(noteService.completeTags("", 10)).extracting(Suggestion::text).containsExactly("работа");
+            assertThat(noteService.completeTitles("от", 10)).isEmpty();
+        }
+
+        @Test
+        @DisplayName("Удаление по запросу удаляет то же, что нашел бы поиск")
+        void shouldDeleteByQuery() {
+            assertThat(noteService.deleteNotesByTags(Set.of("Работа", "срочно"))).isEqualTo(1);
+            assertThat(noteService.deleteNotesByText("молоко")).isEqualTo(1);
+            assertThat(noteService.deleteNotesByTags(Set.of())).isZero();
+
+            assertThat(noteService.getAllNotes()).containsExactly(urgent);
+        }
+
+        @Test
+        @DisplayName("Пакетное добавление и снятие тега возвращают число измененных заметок")
+        void shouldAddAndRemoveTagForSet() {
+            int added = noteService.addTagToNotes(List.of(work.getId(), urgent.getId(), home.getId()), "Срочно");
+            int removed = noteService.removeTagFromNotes(List.of(urgent.getId(), home.getId()), "работа");
+
+            assertThat(added).isEqualTo(2);
+            assertThat(removed).isEqualTo(1);
+            assertThat(noteService.getTagCount("срочно")).isEqualTo(3);
+            assertThat(noteService.getTagCoOccurrence("дом", "срочно")).isEqualTo(1);
+            assertThat(noteService.getTagCoOccurrence("работа", "срочно")).isEqualTo(1);
+            assertThat(urgent.getTags()).containsExactly("срочно");
+        }
+
+        @Test
+        @DisplayName("Глобальное переименование сливается с уже существующим тегом")
+        void shouldRenameTagGlobally() {
+            noteService.addTagToNote(urgent.getId(), "проект");
+
+            int renamed = noteService.renameTag("работа", "проект");
+
+            assertThat(renamed).isEqualTo(2);
+            assertThat(noteService.getAllTags()).containsExactlyInAnyOrder("проект", "срочно", "дом");
+            assertThat(noteService.getTagCount("проект")).isEqualTo(2);
+            assertThat(noteService.getTagCoOccurrence("проект", "срочно")).isEqualTo(1);
+            assertThat(noteService.completeTags("п", 10)).singleElement().isEqualTo(new Suggestion("проект", 2, 0));
+        }
+
+        @Test
+        @DisplayName("Глобальные снятие и добавление тега")
+        void shouldRemoveAndAddTagEverywhere() {
+            assertThat(noteService.removeTagEverywhere("работа")).isEqualTo(2);
+            assertThat(noteService.addTagToAllNotes("архив")).isEqualTo(3);
+
+            assertThat(noteService.getAllTags()).containsExactlyInAnyOrder("срочно", "дом", "архив");
+            assertThat(noteService.findNotesByTags(Set.of("архив"))).hasSize(3);
+            assertThat(noteService.getTagCoOccurrence("архив", "срочно")).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("Каждая измененная заметка попадает в ленту изменений")
+        void shouldPublishEventPerNote() {
+            long before = noteService.getLastChangeSequence();
+
+            noteService.renameTag("работа", "проект");
+
+            // Для каждой из двух заметок: снятие старого тега и добавление нового, версия растет на каждое событие
+            assertThat(noteService.getLastChangeSequence() - before).isEqualTo(4);
+            assertThat(work.getVersion()).isEqualTo(3);
+        }
+    }
+
+    @Nested
+    @DisplayName("Тесты архива старых заметок")
+    class ArchiveTests {
+
+        private Note work;
+        private Note urgent;
+        private Note home;
+
+        @BeforeEach
+        void setUp() {
+            work = noteService.addNote("Отчет", "Квартальный отчет", Set.of("работа", "срочно"));
+            urgent = noteService.addNote("Звонок", "Позвонить клиенту", Set.of("работа"));
+            home = noteService.addNote("Покупки", "Молоко", Set.of("дом"));
+            noteService.updateNoteText(work.getId(), "Отчет", "Годовой отчет");
+        }
+
+        private void archiveAll() {
+            noteService.archiveNotesCreatedBefore(LocalDate.now().plusDays(1));
+        }
+
+        @Test
+        @DisplayName("Запросы находят заметки архива так же, как до архивации")
+        void shouldFindArchivedNotes() {
+            // Act
+            int archived = noteService.archiveNotesCreatedBefore(LocalDate.now().plusDays(1));
+
+            // Assert
+            assertThat(archived).isEqualTo(3);
+            assertThat(noteService.getArchiveStats()).isEqualTo(new ArchiveStats(1, 3, 0, noteService.getArchiveStats().bytes()));
+            assertThat(noteService.getMemoryStats().notes()).isZero();
+            assertThat(noteService.getAllNotes()).containsExactlyInAnyOrder(work, urgent, home);
+            assertThat(noteService.findNotesByText("ГОДОВОЙ")).containsExactly(work);
+            assertThat(noteService.findNotesByTerms(List.of("позвонить", "клиенту"), TermMatchMode.PHRASE))
+                    .extracting(TermMatch::note).containsExactly(urgent);
+            assertThat(noteService.findNotesByTags(Set.of("работа"))).containsExactlyInAnyOrder(work, urgent);
+            assertThat(noteService.facetTags(List.of(work, home), 10))
+                    .containsExactlyInAnyOrder(new TagCount("работа", 1), new TagCount("срочно", 1), new TagCount("дом", 1));
+
+            Note found = noteService.getNoteById(work.getId()).orElseThrow();
+            assertThat(found.getTitle()).isEqualTo("Отчет");
+            assertThat(found.getText()).isEqualTo("Годовой отчет");
+            assertThat(found.getTags()).containsExactlyInAnyOrder("работа", "срочно");
+            assertThat(found.getCreationDate()).isEqualTo(work.getCreationDate());
+            assertThat(found.getVersion()).isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("Заметки новее границы остаются в изменяемой части")
+        void shouldKeepRecentNotes() {
+            // Act
+            int archived = noteService.archiveNotesCreatedBefore(LocalDate.now());
+
+            // Assert
+            assertThat(archived).isZero();
+            assertThat(noteService.getArchiveStats().segments()).isZero();
+            assertThat(noteService.getMemoryStats().notes()).isEqualTo(3);
+        }
+
+        @Test
+        @DisplayName("Изменение заметки архива возвращает ее в изменяемую часть с сохранением версии")
+        void shouldPromoteOnUpdate() {
+            // Arrange
+            archiveAll();
+
+            // Act
+            UpdateResult stale = noteService.updateNoteText(work.getId(), 1, "Черновик", "Текст");
+            UpdateResult updated = noteService.updateNoteText(work.getId(), 2, "Итоги", "Итоги года");
+
+            // Assert
+            assertThat(stale).isEqualTo(UpdateResult.CONFLICT);
+            assertThat(updated).isEqualTo(UpdateResult.UPDATED);
+            assertThat(noteService.getNoteById(work.getId()).orElseThrow().getVersion()).isEqualTo(3);
+            assertThat(noteService.findNotesByText("итоги года")).containsExactly(work);
+            assertThat(noteService.findNotesByText("годовой")).isEmpty();
+            assertThat(noteService.completeTitles("", 10)).extracting(Suggestion::text)
+                    .containsExactlyInAnyOrder("итоги", "звонок", "покупки");
+            assertThat(noteService.getMemoryStats().notes()).isEqualTo(1);
+            assertThat(noteService.getArchiveStats().notes()).isEqualTo(2);
+            assertThat(noteService.getArchiveStats().deletedNotes()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("Изменения тегов, которые ничего не меняют, не возвращают заметки из архива")
+        void shouldNotPromoteOnNoOpTagEdits() {
+            // Arrange
+            archiveAll();
+
+            // Act
+            boolean added = noteService.addTagToNote(work.getId(), "РАБОТА");
+            UpdateResult addedWithVersion = noteService.addTagToNote(work.getId(), 2, "срочно");
+            boolean removed = noteService.removeTagFromNote(home.getId(), "работа");
+            int removedFromSet = noteService.removeTagFromNotes(List.of(home.getId()), "срочно");
+            int renamed = noteService.renameTag(List.of(home.getId()), "работа", "проект");
+            int tagged = noteService.addTagToNotes(List.of(work.getId(), urgent.getId()), "работа");
+
+            // Assert
+            assertThat(added).isFalse();
+            assertThat(addedWithVersion).isEqualTo(UpdateResult.UNCHANGED);
+            assertThat(removed).isFalse();
+            assertThat(removedFromSet).isZero();
+            assertThat(renamed).isZero();
+            assertThat(tagged).isZero();
+            assertThat(noteService.getMemoryStats().notes()).isZero();
+            assertThat(noteService.getArchiveStats().notes()).isEqualTo(3);
+            assertThat(noteService.getArchiveStats().deletedNotes()).isZero();
+        }
+
+        @Test
+        @DisplayName("Тег для всех заметок возвращает из архива только заметки без этого тега")
+        void shouldPromoteOnlyChangedNotesWhenTaggingAll() {
+            // Arrange
+            archiveAll();
+
+            // Act
+            int tagged = noteService.addTagToAllNotes("работа");
+
+            // Assert
+            assertThat(tagged).isEqualTo(1);
+            assertThat(noteService.getMemoryStats().notes()).isEqualTo(1);
+            assertThat(noteService.getArchiveStats().notes()).isEqualTo(2);
+            assertThat(noteService.findNotesByTags(Set.of("работа"))).containsExactlyInAnyOrder(work, urgent, home);
+        }
+
+        @Test
+        @DisplayName("Удаление и пакетные операции работают с заметками архива")
+        void shouldDeleteAndTagArchivedNotes() {
+            // Arrange
+            archiveAll();
+
+            // Act
+            boolean deleted = noteService.deleteNote(home.getId());
+            int renamed = noteService.renameTag("работа", "проект");
+
+            // Assert
+            assertThat(deleted).isTrue();
+            assertThat(renamed).isEqualTo(2);
+            assertThat(noteService.getNoteById(home.getId())).isEmpty();
+            assertThat(noteService.getAllTags()).containsExactlyInAnyOrder("проект", "срочно");
+            assertThat(noteService.findNotesByTags(Set.of("проект", "срочно"))).containsExactly(work);
+            assertThat(noteService.getAllNotes()).hasSize(2);
+        }
+
+        @Test
+        @DisplayName("Повторная архивация собирает сегмент месяца заново без удаленных заметок")
+        void shouldCompactOnRearchive() {
+            // Arrange
+            archiveAll();
+            noteService.addTagToNote(urgent.getId(), "звонки");
+            noteService.deleteNote(home.getId());
+
+            // Act
+            int archived = noteService.archiveNotesCreatedBefore(LocalDate.now().plusDays(1));
+
+            // Assert
+            assertThat(archived).isEqualTo(1);
+            ArchiveStats stats = noteService.getArchiveStats();
+            assertThat(stats.segments()).isEqualTo(1);
+            assertThat(stats.notes()).isEqualTo(2);
+            assertThat(stats.deletedNotes()).isZero();
+            assertThat(noteService.findNotesByTags(Set.of("звонки"))).containsExactly(urgent);
+            MemoryStats memory = noteService.getMemoryStats();
+            assertThat(memory.archiveBytes()).isEqualTo(stats.bytes());
+            assertThat(memory.residentBytes()).isEqualTo(stats.bytes() + memory.indexBytes());
+        }
+
+        @Test
+        @DisplayName("Большой месяц делится на несколько сегментов ограниченного размера")
+        void shouldSplitLargeMonthIntoSegments() {
+            // Arrange
+            NoteService service = new NoteService();
+            int noteChars = NoteSegment.MAX_CHARS / 3;
+            List<Note> large = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                large.add(service.addNote("Большая " + i, "слово" + i + " " + "x".repeat(noteChars), null));
+            }
+
+            // Act
+            int archived = service.archiveNotesCreatedBefore(LocalDate.now().plusDays(1));
+            boolean updated = service.updateNoteText(large.get(3).getId(), "Маленькая", "Короткий текст");
+            int rearchived = service.archiveNotesCreatedBefore(LocalDate.now().plusDays(1));
+
+            // Assert
+            assertThat(archived).isEqualTo(4);
+            assertThat(updated).isTrue();
+            assertThat(rearchived).isEqualTo(1);
+            ArchiveStats stats = service.getArchiveStats();
+            assertThat(stats.segments()).isEqualTo(2);
+            assertThat(stats.notes()).isEqualTo(4);
+            assertThat(stats.deletedNotes()).isZero();
+            assertThat(service.findNotesByText("слово2")).containsExactly(large.get(2));
+            assertThat(service.findNotesByText("короткий")).containsExactly(large.get(3));
+            assertThat(service.getNoteById(large.get(0).getId()).orElseThrow().getText())
+                    .isEqualTo("слово0 " + "x".repeat(noteChars));
+        }
+
+        @Test
+        @DisplayName("При заданном возрасте старые заметки архивируются автоматически")
+        void shouldArchiveByAge() {
+            // Arrange
+            NoteService service = new NoteService(NoteServiceOptions.defaults().withArchiveAge(90));
+            LocalDate old = LocalDate.now().minusYears(1);
+            service.applyReplicated(new NoteEvent(1, NoteEvent.Type.ADDED, 1, "Старая", "Давняя заметка",
+                    Set.of("архив"), null, old, 1));
+
+            // Act
+            service.addNote("Новая", "Свежая заметка", null);
+
+            // Assert
+            assertThat(service.getArchiveStats().notes()).isEqualTo(1);
+            assertThat(service.getMemoryStats().notes()).isEqualTo(1);
+            assertThat(service.findNotesByText("заметка")).extracting(Note::getTitle)
+                    .containsExactlyInAnyOrder("Старая", "Новая");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ru.mentee.power.tdd.notes;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Тесты для PrefixIndex")
+class PrefixIndexTest {
+
+    private PrefixIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new PrefixIndex();
+        index.add("java");
+        index.add("java");
+        index.add("java");
+        index.add("javascript");
+        index.add("jakarta");
+        index.add("jakarta");
+        index.add("kotlin");
+    }
+
+    @Test
+    @DisplayName("Дополнение по префиксу от частых к редким")
+    void shouldCompleteByFrequency() {
+        assertThat(index.complete("ja", 10)).extracting(Suggestion::text)
+                .containsExactly("java", "jakarta", "javascript");
+        assertThat(index.complete("ja", 2)).extracting(Suggestion::frequency)
+                .containsExactly(3, 2);
+        assertThat(index.complete("py", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Удаление уменьшает частоту и убирает пустые строки")
+    void shouldDecrementAndRemoveKeys() {
+        index.remove("java");
+        index.remove("java");
+        index.remove("java");
+        index.remove("jakarta");
+
+        assertThat(index.count("java")).isZero();
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.complete("ja", 10)).extracting(Suggestion::text)
+                .containsExactly("jakarta", "javascript");
+        assertThat(index.complete("jav", 10)).extracting(Suggestion::text)
+                .containsExactly("javascript");
+    }
+
+    @Test
+    @DisplayName("Нечеткий поиск с одной и двумя правками")
+    void shouldFindWithinEditDistance() {
+        assertThat(index.fuzzy("jaav", 1, 10)).isEmpty();
+        assertThat(index.fuzzy("jaav", 2, 10)).extracting(Suggestion::text).containsExactly("java");
+        assertThat(index.fuzzy("kotln", 1, 10)).singleElement()
+                .isEqualTo(new Suggestion("kotlin", 1, 1));
+        assertThat(index.fuzzy("java", 0, 10)).extracting(Suggestion::distance).containsExactly(0);
+    }
+
+    @Test
+    @DisplayName("Слишком большое расстояние запрещено")
+    void shouldRejectTooManyEdits() {
+        assertThatThrownBy(() -> index.fuzzy("java", 3, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Записанное дерево восстанавливается с теми же частотами")
+    void shouldRoundTripThroughBytes() throws IOException {
+        // Arrange
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+        PrefixIndex restored = new PrefixIndex();
+
+        // Act
+        restored.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+
+        // Assert
+        assertThat(restored.size()).isEqualTo(index.size());
+        assertThat(restored.complete("", 10)).isEqualTo(index.complete("", 10));
+        assertThat(restored.fuzzy("kotln", 1, 10)).isEqualTo(index.fuzzy("kotln", 1, 10));
+        restored.remove("java");
+        assertThat(restored.count("java")).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Оценка памяти растет с узлами и обнуляется, когда строк не осталось")
+    void shouldEstimateHeapByNodes() throws IOException {
+        // Arrange
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+        PrefixIndex restored = new PrefixIndex();
+
+        // Act
+        restored.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+        long full = index.heapBytes();
+        index.remove("java", 3);
+        index.remove("javascript");
+        index.remove("jakarta", 2);
+        index.remove("kotlin");
+
+        // Assert
+        assertThat(full).isEqualTo(21L * PrefixIndex.NODE_BYTES);
+        assertThat(restored.heapBytes()).isEqualTo(full);
+        assertThat(index.heapBytes()).isZero();
+    }
+}
@@ -0,0 +1,276 @@
+package ru.mentee.power.tdd.notes;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Тесты для репликации NoteService")
+class ReplicationTest {
+
+    private final NoteService primary = new NoteService(NoteServiceOptions.defaults().withChangeFeedCapacity(8));
+    private final NoteService replica = new NoteService(NoteServiceOptions.defaults().withReadOnly(true));
+    private final InProcessTransport transport = new InProcessTransport(16);
+    private final ReplicationPrimary shipper = new ReplicationPrimary(primary, transport, 4);
+    private final ReplicationReplica applier = new ReplicationReplica(replica, transport);
+
+    private void replicate() throws Exception {
+        while (shipper.shipOnce() > 0) {
+            while (applier.applyNext(0, TimeUnit.MILLISECONDS)) {
+                // применяем все, что уже отправлено
+            }
+        }
+        while (applier.applyNext(0, TimeUnit.MILLISECONDS)) {
+            // последний кадр
+        }
+    }
+
+    private static void assertSameNotes(NoteService expected, NoteService actual) {
+        assertThat(actual.getAllNotes()).hasSameSizeAs(expected.getAllNotes());
+        for (Note note : expected.getAllNotes()) {
+            Note copy = actual.getNoteById(note.getId()).orElseThrow();
+            assertThat(copy.getTitle()).isEqualTo(note.getTitle());
+            assertThat(copy.getText()).isEqualTo(note.getText());
+            assertThat(copy.getTags()).isEqualTo(note.getTags());
+            assertThat(copy.getCreationDate()).isEqualTo(note.getCreationDate());
+            assertThat(copy.getVersion()).isEqualTo(note.getVersion());
+        }
+        assertThat(actual.getAllTags()).isEqualTo(expected.getAllTags());
+    }
+
+    @Test
+    @DisplayName("Реплика получает снимок, а затем все изменения")
+    void shouldReplicateSnapshotAndChanges() throws Exception {
+        Note first = primary.addNote("Покупки", "Молоко", Set.of("дом"));
+        replicate();
+        assertThat(applier.getSnapshotsApplied()).isEqualTo(1);
+        assertSameNotes(primary, replica);
+
+        Note second = primary.addNote("Java", "Записи по Java", Set.of("Java", "учеба"));
+        primary.updateNoteText(first.getId(), "Покупки на неделю", "Молоко, хлеб");
+        primary.addTagToNote(first.getId(), "срочно");
+        primary.removeTagFromNote(second.getId(), "учеба");
+        replicate();
+
+        assertSameNotes(primary, replica);
+        assertThat(replica.findNotesByText("хлеб")).extracting(Note::getId).containsExactly(first.getId());
+        assertThat(applier.getAppliedSequence()).isEqualTo(primary.getLastChangeSequence());
+        assertThat(applier.getLagEvents()).isZero();
+    }
+
+    @Test
+    @DisplayName("Удаление заметки доходит до реплики")
+    void shouldReplicateDeletes() throws Exception {
+        Note note = primary.addNote("Временная", "Текст", null);
+        replicate();
+
+        primary.deleteNote(note.getId());
+        replicate();
+
+        assertThat(replica.getNoteById(note.getId())).isEmpty();
+        assertThat(replica.getAllNotes()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Отставшая реплика догоняет первичный сервис снимком")
+    void shouldCatchUpWithSnapshotAfterOverrun() throws Exception {
+        replicate();
+        // Больше событий, чем помещается в ленту первичного сервиса
+        for (int i = 0; i < 20; i++) {
+            primary.addNote("Заметка " + i, "Текст " + i, Set.of("tag" + i % 3));
+        }
+
+        replicate();
+
+        assertThat(shipper.getSnapshotsSent()).isEqualTo(2);
+        assertSameNotes(primary, replica);
+        assertThat(applier.getAppliedSequence()).isEqualTo(primary.getLastChangeSequence());
+    }
+
+    @Test
+    @DisplayName("Версии заметок на реплике совпадают с первичным сервисом и после событий, и после снимка")
+    void shouldKeepPrimaryVersionsOnReplica() throws Exception {
+        // Arrange
+        Note note = primary.addNote("Отчет", "Черновик", Set.of("работа"));
+        replicate();
+
+        // Act
+        primary.renameTag("работа", "проект");
+        primary.updateNoteText(note.getId(), "Отчет", "Итог");
+        replicate();
+        NoteService lateReplica = new NoteService(NoteServiceOptions.defaults().withReadOnly(true));
+        lateReplica.loadSnapshot(primary.snapshot());
+
+        // Assert
+        assertThat(note.getVersion()).isEqualTo(4);
+        assertSameNotes(primary, replica);
+        assertSameNotes(primary, lateReplica);
+        long seenOnReplica = replica.getNoteById(note.getId()).orElseThrow().getVersion();
+        assertThat(primary.updateNoteText(note.getId(), seenOnReplica, "Отчет", "Финал")).isEqualTo(UpdateResult.UPDATED);
+    }
+
+    @Test
+    @DisplayName("Реплика не принимает изменения от клиентов")
+    void shouldRejectWritesOnReplica() {
+        assertThatThrownBy(() -> replica.addNote("Заголовок", "Текст", null))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> replica.deleteNote(1))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThat(replica.isReadOnly()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Отставание видно до применения пачки")
+    void shouldReportLag() throws Exception {
+        replicate();
+        for (int i = 0; i < 6; i++) {
+            primary.addNote("Заметка " + i, "Текст", null);
+        }
+        shipper.shipOnce();
+        shipper.shipOnce();
+
+        applier.applyNext(0, TimeUnit.MILLISECONDS);
+
+        assertThat(applier.getAppliedSequence()).isEqualTo(4);
+        assertThat(applier.getPrimarySequence()).isEqualTo(6);
+        assertThat(applier.getLagEvents()).isEqualTo(2);
+        assertThat(applier.getLagMillis()).isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Кадр переживает сжатие и разбор без потерь")
+    void shouldEncodeAndDecodeFrame() throws IOException {
+        String longText = "длинный текст ".repeat(10_000);
+        NoteEvent added = new NoteEvent(7, NoteEvent.Type.ADDED, 3, "Заголовок", longText,
+                Set.of("a", "b"), null, LocalDate.of(2024, 2, 29), 4);
+        NoteEvent tagged = NoteEvent.tagAdded(8, 3, "c", 5);
+        ReplicationFrame frame = ReplicationFrame.batch(8, List.of(added, tagged));
+
+        byte[] encoded = frame.encode();
+        ReplicationFrame decoded = ReplicationFrame.decode(encoded);
+
+        assertThat(decoded).isEqualTo(frame);
+        assertThat(encoded.length).isLessThan(longText.length() / 10);
+    }
+
+    @Test
+    @DisplayName("Поврежденный кадр отклоняется")
+    void shouldRejectCorruptedFrame() {
+        assertThatThrownBy(() -> ReplicationFrame.decode(new byte[]{1, 2, 3}))
+                .isInstanceOf(IOException.class);
+    }
+
+    /**
+     * Содержимое кадра с одним событием, сжатое как настоящий кадр: разбирается без ошибок сжатия,
+     * но поля события задаются вызывающим.
+     */
+    private static byte[] frameWithEvent(int count, int tagCount, long epochDay) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(ReplicationFrame.MAGIC);
+            out.writeByte(ReplicationFrame.VERSION);
+            out.writeByte(ReplicationFrame.Kind.BATCH.ordinal());
+            out.writeLong(1);
+            out.writeInt(0);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(count);
+            out.writeLong(1);
+            out.writeByte(NoteEvent.Type.ADDED.ordinal());
+            out.writeInt(1);
+            for (String value : new String[]{"Заголовок", "Текст"}) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+            out.writeInt(tagCount);
+            out.writeInt(-1);
+            out.writeLong(epochDay);
+            out.writeLong(1);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    @DisplayName("Кадр с нарушенной структурой отклоняется с IOException")
+    void shouldRejectStructurallyCorruptedFrame() throws IOException {
+        long today = LocalDate.now().toEpochDay();
+        assertThat(ReplicationFrame.decode(frameWithEvent(1, 0, today)).events()).hasSize(1);
+
+        assertThatThrownBy(() -> ReplicationFrame.decode(frameWithEvent(-5, 0, today)))
+                .isInstanceOf(IOException.class).hasMessageContaining("events");
+        assertThatThrownBy(() -> ReplicationFrame.decode(frameWithEvent(1, -1, today)))
+                .isInstanceOf(IOException.class).hasMessageContaining("incomplete ADDED");
+        assertThatThrownBy(() -> ReplicationFrame.decode(frameWithEvent(1, -7, today)))
+                .isInstanceOf(IOException.class).hasMessageContaining("tags");
+        assertThatThrownBy(() -> ReplicationFrame.decode(frameWithEvent(1, 0, Long.MAX_VALUE)))
+                .isInstanceOf(IOException.class).hasMessageContaining("creation day");
+    }
+
+    @Test
+    @DisplayName("Испорченный кадр останавливает фоновую репликацию с видимой ошибкой")
+    void shouldReportFailureOnCorruptedFrame() throws Exception {
+        transport.send(frameWithEvent(1, -1, LocalDate.now().toEpochDay()));
+
+        applier.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (applier.getFailure() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        applier.close();
+
+        assertThat(applier.getFailure()).isInstanceOf(IOException.class);
+        assertThat(replica.getAllNotes()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Первичный сервис без ленты изменений отклоняется")
+    void shouldRejectPrimaryWithoutChangeFeed() {
+        assertThatThrownBy(() -> new ReplicationPrimary(new NoteService(), transport, 4))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Репликация через сокет в фоновых потоках")
+    void shouldReplicateOverLoopbackSocket() throws Exception {
+        primary.addNote("До запуска", "Текст", Set.of("старое"));
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+            ReplicationPrimary socketShipper = new ReplicationPrimary(primary, new SocketTransport(accepted), 16);
+            ReplicationReplica socketApplier = new ReplicationReplica(replica, new SocketTransport(client));
+            socketShipper.start(5, TimeUnit.MILLISECONDS);
+            socketApplier.start();
+
+            for (int i = 0; i < 100; i++) {
+                Note note = primary.addNote("Заметка " + i, "Текст " + i, Set.of("tag" + i % 5));
+                if (i % 3 == 0) {
+                    primary.deleteNote(note.getId());
+                }
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (socketApplier.getAppliedSequence() < primary.getLastChangeSequence() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(socketShipper.getFailure()).isNull();
+            assertThat(socketApplier.getFailure()).isNull();
+            socketShipper.close();
+            socketApplier.close();
+        }
+
+        assertSameNotes(primary, replica);
+    }
+}
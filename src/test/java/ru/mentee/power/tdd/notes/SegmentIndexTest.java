@@ -0,0 +1,59 @@
+package ru.mentee.power.tdd.notes;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Тесты для SegmentIndex")
+class SegmentIndexTest {
+
+    private static NoteSegment segment(YearMonth month, int... ids) {
+        List<NoteSegment.Entry> entries = new ArrayList<>();
+        for (int id : ids) {
+            entries.add(new NoteSegment.Entry(id, "заметка", "заметка", "текст", "текст",
+                    month.atDay(1), Set.of(), 1));
+        }
+        return NoteSegment.split(month, entries, NoteSegment.MAX_CHARS).get(0);
+    }
+
+    @Test
+    @DisplayName("Находит сегмент по ID, в том числе при пересекающихся диапазонах")
+    void shouldFindSegmentWithOverlappingRanges() {
+        // Arrange
+        NoteSegment january = segment(YearMonth.of(2024, 1), 1, 2, 3, 10);
+        NoteSegment february = segment(YearMonth.of(2024, 2), 4, 5, 6);
+        NoteSegment march = segment(YearMonth.of(2024, 3), 20, 21);
+
+        // Act
+        SegmentIndex index = SegmentIndex.of(List.of(march, january, february));
+
+        // Assert
+        assertThat(index.find(1)).isSameAs(january);
+        assertThat(index.find(10)).isSameAs(january);
+        assertThat(index.find(5)).isSameAs(february);
+        assertThat(index.find(21)).isSameAs(march);
+        assertThat(index.find(7)).isNull();
+        assertThat(index.find(0)).isNull();
+        assertThat(index.find(22)).isNull();
+        assertThat(SegmentIndex.EMPTY.find(1)).isNull();
+    }
+
+    @Test
+    @DisplayName("Удаленная из сегмента заметка не находится")
+    void shouldSkipDeletedNotes() {
+        NoteSegment segment = segment(YearMonth.from(LocalDate.of(2024, 1, 1)), 1, 2);
+        SegmentIndex index = SegmentIndex.of(List.of(segment));
+
+        segment.delete(segment.positionOf(2));
+
+        assertThat(index.find(1)).isSameAs(segment);
+        assertThat(index.find(2)).isNull();
+    }
+}
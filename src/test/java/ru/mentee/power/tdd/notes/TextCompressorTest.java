@@ -0,0 +1,89 @@
+package ru.mentee.power.tdd.notes;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Тесты для TextCompressor")
+class TextCompressorTest {
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("Сжатие без словаря обратимо")
+    void shouldRoundTripWithoutDictionary() {
+        byte[] data = utf8("Текст заметки, текст заметки, текст заметки 😀");
+
+        byte[] compressed = TextCompressor.WITHOUT_DICTIONARY.compress(data);
+
+        assertThat(TextCompressor.WITHOUT_DICTIONARY.decompress(compressed, data.length)).isEqualTo(data);
+    }
+
+    @Test
+    @DisplayName("Словарь из частых слов корпуса сокращает короткие тексты")
+    void shouldCompressShortTextsBetterWithDictionary() {
+        List<String> corpus = List.of(
+                "обсудить договор с клиентом до понедельника",
+                "проверить договор и отправить клиенту",
+                "клиент просит перенести релиз на понедельник",
+                "релиз перенесен, договор подписан");
+        TextCompressor trained = TextCompressor.train(corpus);
+        byte[] data = utf8("клиент подписал договор, релиз в понедельник");
+
+        byte[] withDictionary = trained.compress(data);
+
+        assertThat(trained.dictionarySize()).isPositive();
+        assertThat(withDictionary.length).isLessThan(TextCompressor.WITHOUT_DICTIONARY.compress(data).length);
+        assertThat(trained.decompress(withDictionary, data.length)).isEqualTo(data);
+    }
+
+    @Test
+    @DisplayName("Словарь не превышает допустимый размер")
+    void shouldLimitDictionarySize() {
+        StringBuilder corpus = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            corpus.append("слово").append(i % 5000).append(' ');
+        }
+
+        TextCompressor trained = TextCompressor.train(List.of(corpus.toString()));
+
+        assertThat(trained.dictionarySize()).isLessThanOrEqualTo(TextCompressor.MAX_DICTIONARY_SIZE);
+    }
+
+    @Test
+    @DisplayName("Поврежденные данные распознаются")
+    void shouldDetectTruncatedData() {
+        byte[] data = utf8("текст ".repeat(100));
+        byte[] compressed = TextCompressor.WITHOUT_DICTIONARY.compress(data);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        assertThatThrownBy(() -> TextCompressor.WITHOUT_DICTIONARY.decompress(truncated, data.length))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("Объекты zlib из общего пула не переносят словарь и ошибку между сжатиями")
+    void shouldReusePooledZlibObjectsAcrossCompressors() {
+        TextCompressor trained = TextCompressor.train(List.of(
+                "договор клиент релиз понедельник", "договор клиент релиз понедельник"));
+        byte[] data = utf8("клиент подписал договор, релиз в понедельник");
+        byte[] broken = Arrays.copyOf(trained.compress(data), 3);
+
+        for (int i = 0; i < 3 * TextCompressor.POOL_SIZE; i++) {
+            assertThatThrownBy(() -> trained.decompress(broken, data.length))
+                    .isInstanceOf(IllegalStateException.class);
+            byte[] withDictionary = trained.compress(data);
+            byte[] plain = TextCompressor.WITHOUT_DICTIONARY.compress(data);
+
+            assertThat(trained.decompress(withDictionary, data.length)).isEqualTo(data);
+            assertThat(TextCompressor.WITHOUT_DICTIONARY.decompress(plain, data.length)).isEqualTo(data);
+        }
+    }
+}
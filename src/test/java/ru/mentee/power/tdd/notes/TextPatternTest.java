@@ -0,0 +1,73 @@
+package ru.mentee.power.tdd.notes;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("Тесты для TextPattern")
+class TextPatternTest {
+
+    @Test
+    @DisplayName("Поиск подстроки в начале, середине и конце")
+    void shouldFindPatternAnywhere() {
+        TextPattern pattern = new TextPattern("заметк");
+
+        assertThat(pattern.indexIn("заметка", 0)).isZero();
+        assertThat(pattern.indexIn("текст первой заметки", 0)).isEqualTo(13);
+        assertThat(pattern.indexIn("это заметк", 0)).isEqualTo(4);
+        assertThat(pattern.matches("замет")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Символы с одинаковым младшим байтом не ломают сдвиги")
+    void shouldHandleCharsWithSameLowByte() {
+        // 'Ā' (U+0100) и '\u0000' попадают в одну ячейку таблицы сдвигов
+        TextPattern pattern = new TextPattern("aĀb");
+
+        assertThat(pattern.matches("xx\u0000aĀb")).isTrue();
+        assertThat(pattern.matches("aĀĀb")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Результат совпадает с String.contains")
+    void shouldAgreeWithStringContains() {
+        Random random = new Random(42);
+        String alphabet = "abАБаб ";
+        for (int n = 0; n < 2000; n++) {
+            String text = randomString(random, alphabet, random.nextInt(30));
+            String query = randomString(random, alphabet, 1 + random.nextInt(5));
+
+            assertThat(new TextPattern(query).matches(text))
+                    .as("'%s' in '%s'", query, text)
+                    .isEqualTo(text.contains(query));
+        }
+    }
+
+    @Test
+    @DisplayName("Поиск в участке строки совпадает с поиском в подстроке")
+    void shouldMatchWithinRange() {
+        Random random = new Random(7);
+        String alphabet = "abАБаб ";
+        for (int n = 0; n < 2000; n++) {
+            String text = randomString(random, alphabet, random.nextInt(30));
+            String query = randomString(random, alphabet, random.nextInt(5));
+            int from = random.nextInt(text.length() + 1);
+            int to = from + random.nextInt(text.length() - from + 1);
+
+            assertThat(new TextPattern(query).matches(text, from, to))
+                    .as("'%s' in '%s'[%d, %d)", query, text, from, to)
+                    .isEqualTo(text.substring(from, to).contains(query));
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+}